@@ -0,0 +1,210 @@
+package projects.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import projects.entity.Project;
+import projects.http.ProjectApiServer;
+import projects.service.ProjectService;
+import projects.transfer.Json;
+import provided.util.LatencyHistogram;
+
+/*
+ * Closed-loop load test for the HTTP API. Each client is a virtual thread that sends one request at a time for the
+ * given number of seconds, mixing conditional GETs of single projects (with the ETag it last saw, so many come back
+ * 304), list pages, and PATCHes with If-Match. Without --url it starts H2 and an embedded ProjectApiServer first:
+ *
+ *   java -cp target/benchmarks.jar projects.benchmark.ApiLoadTest [--clients 200] [--seconds 30] [--projects 10000]
+ *       [--writes 10] [--url http://localhost:8080]
+ *
+ * --writes is the percentage of requests that are updates. Prints throughput, latency percentiles per request type,
+ * and a count per HTTP status.
+ */
+public class ApiLoadTest {
+
+	private static final int PAGE_PERCENT = 5;										// Share of requests that list a page
+
+	private final HttpClient client;
+	private final String baseUrl;
+	private final List<Integer> projectIds;
+	private final int writePercent;
+	private final Map<Integer, String> etags = new ConcurrentHashMap<>();			// Last ETag seen per project, shared by all clients
+	private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+	private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+	private ApiLoadTest(HttpClient client, String baseUrl, List<Integer> projectIds, int writePercent) {
+		this.client = client;
+		this.baseUrl = baseUrl;
+		this.projectIds = projectIds;
+		this.writePercent = writePercent;
+	}
+
+
+	public static void main(String[] args) throws Exception {
+
+		Map<String, String> options = new TreeMap<>();
+
+		for(int index = 0; index + 1 < args.length; index += 2) {
+			options.put(args[index].replaceFirst("^--", ""), args[index + 1]);
+		}
+
+		int clients = Integer.parseInt(options.getOrDefault("clients", "200"));
+		int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+		int projectCount = Integer.parseInt(options.getOrDefault("projects", "10000"));
+		int writePercent = Integer.parseInt(options.getOrDefault("writes", "10"));
+
+		HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+				.executor(Executors.newVirtualThreadPerTaskExecutor()).connectTimeout(Duration.ofSeconds(5)).build();
+
+		if(options.containsKey("url")) {
+			String baseUrl = options.get("url");
+			new ApiLoadTest(client, baseUrl, fetchProjectIds(client, baseUrl), writePercent).run(clients, seconds);
+			return;
+		}
+
+		try(ProjectApiServer server = startEmbedded()) {
+			List<Integer> projectIds = new ArrayList<>(projectCount);
+
+			for(Project project : H2Database.seed(projectCount)) {
+				projectIds.add(project.getProjectId());
+			}
+
+			new ApiLoadTest(client, "http://localhost:" + server.getPort(), projectIds, writePercent).run(clients, seconds);
+		} finally {
+			H2Database.stop();
+		}
+
+	}
+
+
+	private static ProjectApiServer startEmbedded() throws SQLException, IOException {
+		H2Database.start();
+		return new ProjectApiServer(0, new ProjectService());
+	}
+
+
+	// IDs from the first page of a running server, for --url runs
+	private static List<Integer> fetchProjectIds(HttpClient client, String baseUrl) throws IOException, InterruptedException {
+
+		HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/projects?limit=1000")).build(),
+				HttpResponse.BodyHandlers.ofString());
+		List<Integer> projectIds = new ArrayList<>();
+
+		for(Object project : Json.getArray(Json.asObject(Json.parse(response.body()), "page"), "projects")) {
+			projectIds.add(Json.getInteger(Json.asObject(project, "project"), "projectId"));
+		}
+
+		if(projectIds.isEmpty()) {
+			throw new IllegalStateException(baseUrl + " has no projects to load");
+		}
+
+		return projectIds;
+
+	}
+
+
+	private void run(int clients, int seconds) throws InterruptedException {
+
+		long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+		long startNanos = System.nanoTime();
+
+		try(ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+			for(int worker = 0; worker < clients; worker++) {
+				workers.submit(() -> {
+					while(System.nanoTime() < deadline) {
+						sendOne();
+					}
+					return null;
+				});
+			}
+		}																			// Closing waits for every client to finish
+
+		report(clients, (System.nanoTime() - startNanos) / 1_000_000_000.0);
+
+	}
+
+
+	private void sendOne() throws InterruptedException {
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int roll = random.nextInt(100);
+		Integer projectId = projectIds.get(random.nextInt(projectIds.size()));
+		String etag = etags.get(projectId);
+		URI uri = URI.create(baseUrl + "/projects/" + projectId);
+		HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30));
+		String type;
+
+		if(roll < writePercent) {
+			type = "PATCH /projects/{id}";
+			request.method("PATCH", HttpRequest.BodyPublishers.ofString("{\"actualHours\":" + random.nextInt(1, 100) + "}"));
+
+			if(etag != null) {
+				request.header("If-Match", etag);
+			}
+		} else if(roll < writePercent + PAGE_PERCENT) {
+			type = "GET /projects?limit=20";
+			request.uri(URI.create(baseUrl + "/projects?limit=20"));
+		} else {
+			type = "GET /projects/{id}";
+
+			if(etag != null) {
+				request.header("If-None-Match", etag);
+			}
+		}
+
+		long start = System.nanoTime();
+		int status;
+
+		try {
+			HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+			status = response.statusCode();
+			response.headers().firstValue("ETag").ifPresent(tag -> etags.put(projectId, tag));
+
+			if(status == 412) {
+				etags.remove(projectId);											// Someone else updated it; the next request refetches
+			}
+		} catch(IOException e) {
+			status = -1;															// Connection failure, counted apart from HTTP statuses
+		}
+
+		latencies.computeIfAbsent(type, name -> new LatencyHistogram()).record(System.nanoTime() - start);
+		statuses.computeIfAbsent(status, code -> new LongAdder()).increment();
+
+	}
+
+
+	private void report(int clients, double seconds) {
+
+		long total = statuses.values().stream().mapToLong(LongAdder::sum).sum();
+
+		System.out.printf("%d clients, %.1f s, %,d requests, %,.0f requests/s%n", clients, seconds, total, total / seconds);
+		System.out.printf("%-24s %10s %10s %10s %10s %10s%n", "request (ms)", "count", "p50", "p99", "p99.9", "max");
+
+		new TreeMap<>(latencies).forEach((type, latency) -> System.out.printf("%-24s %,10d %10.2f %10.2f %10.2f %10.2f%n", type,
+				latency.getCount(), millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(99)),
+				millis(latency.getValueAtPercentile(99.9)), millis(latency.getMax())));
+
+		new TreeMap<>(statuses).forEach((status, count) -> System.out.printf("HTTP %s: %,d%n",
+				status == -1 ? "connection error" : status.toString(), count.sum()));
+
+	}
+
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+}
@@ -0,0 +1,24 @@
+package projects.benchmark;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import provided.util.DaoBase;
+import provided.util.RowMapper;
+
+// Exposes the protected DaoBase helpers so they can be benchmarked directly
+public class BenchmarkDao extends DaoBase {
+
+	public <T> T extractRow(ResultSet rs, Class<T> classType) {
+		return extract(rs, classType);
+	}
+
+	public <T> RowMapper<T> mapperFor(ResultSet rs, Class<T> classType) throws SQLException {
+		return rowMapper(rs, classType);
+	}
+
+	public void bind(PreparedStatement stmt, int parameterIndex, Object value, Class<?> classType) throws SQLException {
+		setParameter(stmt, parameterIndex, value, classType);
+	}
+
+}
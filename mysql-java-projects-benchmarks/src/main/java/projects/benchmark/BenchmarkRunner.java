@@ -0,0 +1,36 @@
+package projects.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the benchmarks and writes results as JSON so runs can be diffed or fed to a tracking dashboard. Any standard JMH
+ * command-line option (for example a benchmark name pattern, or -rff to change the result file) can be passed as well.
+ */
+public class BenchmarkRunner {
+
+	private static final String RESULT_FILE = "target/jmh-result.json";
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLine);
+
+		if(commandLine.getIncludes().isEmpty()) {
+			options.include("projects\\.benchmark\\..*");
+		}
+
+		options.resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON));
+		options.result(commandLine.getResult().orElse(RESULT_FILE));
+
+		new Runner(options.build()).run();
+
+	}
+
+}
@@ -0,0 +1,99 @@
+package projects.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import projects.dao.DbConnection;
+import projects.dao.PoolSettings;
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.service.ProjectService;
+
+// In-memory H2 stand-in for MySQL. Points DbConnection at it and loads the schema and sample data.
+public class H2Database {
+
+	private static final String URL = "jdbc:h2:mem:projects;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+	// Recreate the schema and route every DbConnection.getConnection() call to H2
+	public static void start() throws SQLException, IOException {
+
+		DbConnection.configure(new PoolSettings().setJdbcUrl(URL).setMinSize(1).setMaxSize(4));	// H2 has no multi-statement support
+
+		try(Connection conn = DbConnection.getConnection(); Statement stmt = conn.createStatement()) {
+			for(String sql : readSchema().split(";")) {
+				if(!sql.isBlank()) {
+					stmt.execute(sql);
+				}
+			}
+		}
+
+	}
+
+
+	public static void stop() {
+		DbConnection.shutdown();
+	}
+
+
+	// Inserts the given number of projects, each with a few materials, steps, and a category
+	public static List<Project> seed(int projectCount) {
+
+		List<Project> projects = new ArrayList<>(projectCount);
+
+		for(int index = 0; index < projectCount; index++) {
+			projects.add(sampleProject(index));
+		}
+
+		new ProjectService().addProjects(projects);
+		return projects;
+
+	}
+
+
+	public static Project sampleProject(int index) {
+
+		Project project = new Project();
+		project.setProjectName("Project " + index);
+		project.setEstimatedHours(new BigDecimal("10.50"));
+		project.setActualHours(new BigDecimal("12.25"));
+		project.setDifficulty(index % 5 + 1);
+		project.setNotes("Notes for project " + index);
+
+		for(int child = 0; child < 3; child++) {
+			Material material = new Material();
+			material.setMaterialName("Material " + child);
+			material.setNumRequired(child + 1);
+			material.setCost(new BigDecimal("4.99"));
+			project.getMaterials().add(material);
+
+			Step step = new Step();
+			step.setStepText("Step " + child + " of project " + index);
+			project.getSteps().add(step);
+		}
+
+		Category category = new Category();
+		category.setCategoryId(index % 3 + 1);
+		project.getCategories().add(category);
+
+		return project;
+
+	}
+
+
+	private static String readSchema() throws IOException {
+
+		try(InputStream in = H2Database.class.getResourceAsStream("/benchmark-schema.sql")) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+
+	}
+
+}
@@ -0,0 +1,82 @@
+package projects.benchmark;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import projects.dao.ProjectDao;
+import projects.dao.ProjectSummaryBatch;
+import projects.entity.Project;
+
+/*
+ * Compares the heap retained by the same project summaries held as a list of Project entities and as one
+ * ProjectSummaryBatch. JMH measures time, not retained size, so this runs on its own:
+ * 
+ *   java -cp target/benchmarks.jar projects.benchmark.HeapFootprintReport [projectCount]
+ * 
+ * Figures come from heap usage after repeated full collections, so run it with nothing else in the JVM.
+ */
+public class HeapFootprintReport {
+
+	private static final int DEFAULT_PROJECT_COUNT = 100_000;
+
+	public static void main(String[] args) throws SQLException, IOException {
+
+		int projectCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PROJECT_COUNT;
+		ProjectDao projectDao = new ProjectDao();
+
+		H2Database.start();
+
+		try {
+			H2Database.seed(projectCount);
+
+			long entityBytes = retainedBytes(() -> {
+				try(Stream<Project> projects = projectDao.streamProjects(ProjectDao.DEFAULT_FETCH_SIZE,
+						ProjectDaoBenchmark.SUMMARY_COLUMNS)) {
+					return projects.toList();
+				}
+			});
+
+			long batchBytes = retainedBytes(() -> projectDao.fetchProjectSummaries(null, null, projectCount));
+
+			System.out.printf("%,d projects%n", projectCount);
+			System.out.printf("List<Project>:       %,12d bytes (%,d per project)%n", entityBytes, entityBytes / projectCount);
+			System.out.printf("ProjectSummaryBatch: %,12d bytes (%,d per project)%n", batchBytes, batchBytes / projectCount);
+			System.out.printf("Reduction:           %.1f%%%n", 100.0 * (entityBytes - batchBytes) / entityBytes);
+		} finally {
+			H2Database.stop();
+		}
+
+	}
+
+
+	// Heap still in use while the loaded value is reachable, minus the heap in use before loading it
+	private static long retainedBytes(Supplier<Object> loader) {
+
+		long before = usedHeap();
+		Object value = loader.get();
+		long after = usedHeap();
+
+		if(value instanceof List<?> list) {
+			System.out.println("Loaded " + list.size() + " projects");			// Keeps the value reachable until after measuring
+		} else if(value instanceof ProjectSummaryBatch batch) {
+			System.out.println("Loaded " + batch.size() + " summaries");
+		}
+
+		return after - before;
+	}
+
+
+	private static long usedHeap() {
+
+		Runtime runtime = Runtime.getRuntime();
+
+		for(int pass = 0; pass < 5; pass++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
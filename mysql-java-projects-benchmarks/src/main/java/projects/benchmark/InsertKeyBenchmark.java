@@ -0,0 +1,128 @@
+package projects.benchmark;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import projects.dao.BatchInsertResult;
+import projects.dao.DbConnection;
+import projects.dao.ProjectDao;
+import projects.entity.Project;
+
+/*
+ * Insert latency against tables of different sizes. ProjectDao reads generated keys back from the INSERT itself, so its
+ * time should stay flat as tableSize grows. The legacy variant follows the INSERT with the old
+ * "SELECT LAST_INSERT_ID() FROM project", which returns one row per row in the table, so its time grows with tableSize.
+ * Rows inserted during an iteration are deleted afterwards so the table stays at tableSize.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertKeyBenchmark {
+
+	private static final String FILL_SQL = ""
+			+ "INSERT INTO project (project_name, difficulty) SELECT CONCAT('Filler ', X), 1 FROM SYSTEM_RANGE(1, ?)";
+	private static final String LEGACY_INSERT_SQL = "INSERT INTO project (project_name, difficulty) VALUES (?, ?)";
+	private static final String LEGACY_KEY_SQL = "SELECT LAST_INSERT_ID() FROM project";
+	private static final String MAX_ID_SQL = "SELECT MAX(project_id) FROM project";
+	private static final String DELETE_INSERTED_SQL = "DELETE FROM project WHERE project_id > ?";
+
+	@Param({"1000", "100000"})
+	private int tableSize;
+
+	private final ProjectDao projectDao = new ProjectDao();
+	private int lastFillId;
+
+	@Setup(Level.Trial)
+	public void fill() throws SQLException, IOException {
+		H2Database.start();
+
+		try(Connection conn = DbConnection.getConnection()) {
+			try(PreparedStatement stmt = conn.prepareStatement(FILL_SQL)) {
+				stmt.setInt(1, tableSize);
+				stmt.executeUpdate();
+			}
+
+			try(Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(MAX_ID_SQL)) {
+				rs.next();
+				lastFillId = rs.getInt(1);
+			}
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void deleteInserted() throws SQLException {
+		try(Connection conn = DbConnection.getConnection(); PreparedStatement stmt = conn.prepareStatement(DELETE_INSERTED_SQL)) {
+			stmt.setInt(1, lastFillId);
+			stmt.executeUpdate();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		H2Database.stop();
+	}
+
+	@Benchmark
+	public Project insertWithGeneratedKeys() {
+		return projectDao.insertProject(newProject(0));
+	}
+
+	@Benchmark
+	public int insertWithLastInsertIdQuery() throws SQLException {
+		try(Connection conn = DbConnection.getConnection()) {
+			try(PreparedStatement stmt = conn.prepareStatement(LEGACY_INSERT_SQL)) {
+				stmt.setString(1, "Legacy");
+				stmt.setInt(2, 1);
+				stmt.executeUpdate();
+			}
+
+			try(Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(LEGACY_KEY_SQL)) {
+				rs.next();
+				return rs.getInt(1);
+			}
+		}
+	}
+
+	@Benchmark
+	public BatchInsertResult insertBatchWithGeneratedKeys() {
+		List<Project> projects = new ArrayList<>(100);
+
+		for(int index = 0; index < 100; index++) {
+			projects.add(newProject(index));
+		}
+
+		return projectDao.insertProjects(projects, 100);
+	}
+
+
+	// A project without children, so only the project insert and its key are measured
+	private static Project newProject(int index) {
+		Project project = new Project();
+		project.setProjectName("Inserted " + index);
+		project.setDifficulty(1);
+		return project;
+	}
+
+}
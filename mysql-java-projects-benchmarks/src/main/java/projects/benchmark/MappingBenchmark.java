@@ -0,0 +1,127 @@
+package projects.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import provided.util.RowMapper;
+
+/*
+ * Row mapping cost for each entity. Rows come from in-memory result sets so only mapping is measured, not a database.
+ * The extract* benchmarks go through DaoBase.extract per row; the map* benchmarks obtain the mapper once per result set the
+ * way ProjectDao does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+
+	@Param({"1000"})
+	private int rows;
+
+	private final BenchmarkDao dao = new BenchmarkDao();
+
+	private SimpleResultSet projectRows;
+	private SimpleResultSet materialRows;
+	private SimpleResultSet stepRows;
+	private SimpleResultSet categoryRows;
+
+	@Setup(Level.Trial)
+	public void createRows() {
+
+		projectRows = resultSet("project_id", Types.INTEGER, "project_name", Types.VARCHAR, "estimated_hours", Types.DECIMAL,
+				"actual_hours", Types.DECIMAL, "difficulty", Types.INTEGER, "notes", Types.VARCHAR);
+		materialRows = resultSet("material_id", Types.INTEGER, "project_id", Types.INTEGER, "material_name", Types.VARCHAR,
+				"num_required", Types.INTEGER, "cost", Types.DECIMAL);
+		stepRows = resultSet("step_id", Types.INTEGER, "project_id", Types.INTEGER, "step_text", Types.VARCHAR, "step_order",
+				Types.INTEGER);
+		categoryRows = resultSet("category_id", Types.INTEGER, "category_name", Types.VARCHAR);
+
+		for(int index = 0; index < rows; index++) {
+			projectRows.addRow(index, "Project " + index, new BigDecimal("10.50"), new BigDecimal("12.25"), 3, "Notes " + index);
+			materialRows.addRow(index, index, "Material " + index, 4, new BigDecimal("4.99"));
+			stepRows.addRow(index, index, "Step text " + index, index + 1);
+			categoryRows.addRow(index, "Category " + index);
+		}
+
+	}
+
+	@Benchmark
+	public void mapProjects(Blackhole blackhole) throws SQLException {
+		mapAll(projectRows, Project.class, blackhole);
+	}
+
+	@Benchmark
+	public void mapMaterials(Blackhole blackhole) throws SQLException {
+		mapAll(materialRows, Material.class, blackhole);
+	}
+
+	@Benchmark
+	public void mapSteps(Blackhole blackhole) throws SQLException {
+		mapAll(stepRows, Step.class, blackhole);
+	}
+
+	@Benchmark
+	public void mapCategories(Blackhole blackhole) throws SQLException {
+		mapAll(categoryRows, Category.class, blackhole);
+	}
+
+	@Benchmark
+	public void extractProjects(Blackhole blackhole) throws SQLException {
+		projectRows.beforeFirst();
+
+		while(projectRows.next()) {
+			blackhole.consume(dao.extractRow(projectRows, Project.class));
+		}
+	}
+
+	@Benchmark
+	public String camelCaseToSnakeCase() {
+		return RowMapper.camelCaseToSnakeCase("estimatedHours");
+	}
+
+
+	private <T> void mapAll(SimpleResultSet rs, Class<T> classType, Blackhole blackhole) throws SQLException {
+		rs.beforeFirst();
+		RowMapper<T> mapper = dao.mapperFor(rs, classType);
+
+		while(rs.next()) {
+			blackhole.consume(mapper.map(rs));
+		}
+	}
+
+
+	// Builds a rewindable result set from alternating column name / java.sql.Types pairs
+	private static SimpleResultSet resultSet(Object... columns) {
+		SimpleResultSet rs = new SimpleResultSet();
+		rs.setAutoClose(false);															// Allow beforeFirst() so one result set serves every invocation
+
+		for(int index = 0; index < columns.length; index += 2) {
+			rs.addColumn((String)columns[index], (Integer)columns[index + 1], 0, 0);
+		}
+
+		return rs;
+	}
+
+}
@@ -0,0 +1,64 @@
+package projects.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import projects.dao.DbConnection;
+
+// Cost of DaoBase.setParameter for the five project columns. Parameters are bound and cleared; nothing is executed.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterBindingBenchmark {
+
+	private static final BigDecimal HOURS = new BigDecimal("10.50");
+
+	private final BenchmarkDao dao = new BenchmarkDao();
+
+	private Connection conn;
+	private PreparedStatement stmt;
+
+	@Setup(Level.Trial)
+	public void prepare() throws SQLException, IOException {
+		H2Database.start();
+		conn = DbConnection.getConnection();
+		stmt = conn.prepareStatement("INSERT INTO project "
+				+ "(project_name, estimated_hours, actual_hours, difficulty, notes) VALUES (?, ?, ?, ?, ?)");
+	}
+
+	@TearDown(Level.Trial)
+	public void close() throws SQLException {
+		stmt.close();
+		conn.close();
+		H2Database.stop();
+	}
+
+	@Benchmark
+	public void bindProjectParameters() throws SQLException {
+		dao.bind(stmt, 1, "Hang a door", String.class);
+		dao.bind(stmt, 2, HOURS, BigDecimal.class);
+		dao.bind(stmt, 3, HOURS, BigDecimal.class);
+		dao.bind(stmt, 4, 3, Integer.class);
+		dao.bind(stmt, 5, null, String.class);
+		stmt.clearParameters();
+	}
+
+}
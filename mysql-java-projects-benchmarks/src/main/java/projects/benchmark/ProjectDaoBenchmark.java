@@ -0,0 +1,155 @@
+package projects.benchmark;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import projects.dao.BatchInsertResult;
+import projects.dao.CompactProjectDao;
+import projects.dao.ProjectColumn;
+import projects.dao.ProjectDao;
+import projects.dao.ProjectSummaryBatch;
+import projects.entity.CompactProject;
+import projects.entity.Project;
+
+/*
+ * End-to-end ProjectDao operations against an in-memory H2 database. Absolute numbers are not comparable to MySQL (no
+ * network, different engine) but the mapping, pooling, and statement overhead is the same code, so regressions show up.
+ * ProjectDao is used directly so the service-layer cache does not hide the database work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectDaoBenchmark {
+
+	static final ProjectColumn[] SUMMARY_COLUMNS = { ProjectColumn.PROJECT_ID, ProjectColumn.PROJECT_NAME,
+			ProjectColumn.ESTIMATED_HOURS, ProjectColumn.ACTUAL_HOURS, ProjectColumn.DIFFICULTY };
+
+	@Param({"1000"})
+	private int projectCount;
+
+	private final ProjectDao projectDao = new ProjectDao();
+	private final CompactProjectDao compactProjectDao = new CompactProjectDao();
+	private List<Integer> projectIds;
+	private String deepPageName;
+	private Integer deepPageId;
+
+	@Setup(Level.Trial)
+	public void seed() throws SQLException, IOException {
+		H2Database.start();
+		projectIds = new ArrayList<>();
+
+		for(Project project : H2Database.seed(projectCount)) {
+			projectIds.add(project.getProjectId());
+		}
+
+		List<Project> page = projectDao.fetchProjectsPage(null, null, projectCount * 9 / 10);	// Key 90% of the way in
+		Project last = page.get(page.size() - 1);
+		deepPageName = last.getProjectName();
+		deepPageId = last.getProjectId();
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		H2Database.stop();
+	}
+
+	@Benchmark
+	public Project fetchProjectByID() {
+		return projectDao.fetchProjectByID(randomId()).orElseThrow();
+	}
+
+	@Benchmark
+	public List<Project> fetchProjectsByIds() {
+		List<Integer> ids = new ArrayList<>(50);
+
+		for(int index = 0; index < 50; index++) {
+			ids.add(randomId());
+		}
+
+		return projectDao.fetchProjectsByIds(ids);
+	}
+
+	@Benchmark
+	public List<Project> fetchFirstPage() {
+		return projectDao.fetchProjectsPage(null, null, 20);
+	}
+
+	@Benchmark
+	public List<Project> fetchDeepPage() {
+		return projectDao.fetchProjectsPage(deepPageName, deepPageId, 20);
+	}
+
+	@Benchmark
+	public long streamProjectNames() {
+		try(Stream<Project> projects = projectDao.streamProjects(ProjectDao.DEFAULT_FETCH_SIZE, ProjectColumn.PROJECT_ID,
+				ProjectColumn.PROJECT_NAME)) {
+			return projects.count();
+		}
+	}
+
+	@Benchmark
+	public List<Project> listSummariesAsProjects() {
+		try(Stream<Project> projects = projectDao.streamProjects(ProjectDao.DEFAULT_FETCH_SIZE, SUMMARY_COLUMNS)) {
+			return projects.toList();
+		}
+	}
+
+	@Benchmark
+	public ProjectSummaryBatch listSummariesAsBatch() {
+		return projectDao.fetchProjectSummaries(null, null, Integer.MAX_VALUE);			// Every row, like the stream
+	}
+
+	@Benchmark
+	public List<CompactProject> listCompactProjects() {
+		return compactProjectDao.fetchProjectsPage(null, null, Integer.MAX_VALUE);
+	}
+
+	@Benchmark
+	public long sumMaterialCostCompact() {
+		long[] totalCents = new long[1];
+		compactProjectDao.scanMaterials(ProjectDao.DEFAULT_FETCH_SIZE, material -> totalCents[0] += material.getTotalCostCents());
+		return totalCents[0];
+	}
+
+	@Benchmark
+	public Project insertProject() {
+		return projectDao.insertProject(H2Database.sampleProject(0));
+	}
+
+	@Benchmark
+	public BatchInsertResult insertProjectsBatch() {
+		List<Project> projects = new ArrayList<>(100);
+
+		for(int index = 0; index < 100; index++) {
+			projects.add(H2Database.sampleProject(index));
+		}
+
+		return projectDao.insertProjects(projects, 100);
+	}
+
+
+	private Integer randomId() {
+		return projectIds.get(ThreadLocalRandom.current().nextInt(projectIds.size()));
+	}
+
+}
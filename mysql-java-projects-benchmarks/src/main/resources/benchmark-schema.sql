@@ -0,0 +1,71 @@
+-- Same tables as projects-schema.sql, written so H2 (MODE=MySQL) accepts them. TEXT columns are VARCHAR here because
+-- H2 returns TEXT as a Clob, which would not map onto the String fields.
+DROP TABLE IF EXISTS material;
+DROP TABLE IF EXISTS step;
+DROP TABLE IF EXISTS project_category;
+DROP TABLE IF EXISTS category;
+DROP TABLE IF EXISTS project;
+DROP TABLE IF EXISTS id_sequence;
+DROP TABLE IF EXISTS transfer_progress;
+
+CREATE TABLE project (
+	project_id INT AUTO_INCREMENT NOT NULL PRIMARY KEY,
+	project_name VARCHAR(128) NOT NULL,
+	estimated_hours DECIMAL(7,2),
+	actual_hours DECIMAL(7,2),
+	difficulty INT,
+	notes VARCHAR(4000),
+	version INT NOT NULL DEFAULT 0
+);
+
+CREATE INDEX idx_project_name_id ON project (project_name, project_id);
+
+CREATE TABLE category (
+	category_id INT AUTO_INCREMENT NOT NULL PRIMARY KEY,
+	category_name VARCHAR(128)
+);
+
+CREATE TABLE project_category (
+	project_id INT NOT NULL,
+	category_id INT NOT NULL,
+	FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE,
+	FOREIGN KEY (category_id) REFERENCES category (category_id) ON DELETE CASCADE,
+	UNIQUE (project_id, category_id)
+);
+
+CREATE INDEX idx_category_project ON project_category (category_id, project_id);
+
+CREATE TABLE step (
+	step_id INT AUTO_INCREMENT NOT NULL PRIMARY KEY,
+	project_id INT NOT NULL,
+	step_text VARCHAR(4000) NOT NULL,
+	step_order INT NOT NULL,
+	FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_step_project_order ON step (project_id, step_order);
+
+CREATE TABLE material (
+	material_id INT AUTO_INCREMENT NOT NULL PRIMARY KEY,
+	project_id INT NOT NULL,
+	material_name VARCHAR(128) NOT NULL,
+	num_required INT,
+	cost DECIMAL(7,2),
+	FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE
+);
+
+-- Next unused ID per sequence, read in blocks by IdAllocator when projects are sharded. Lives on the home shard.
+CREATE TABLE id_sequence (
+	sequence_name VARCHAR(40) NOT NULL PRIMARY KEY,
+	next_value INT NOT NULL
+);
+
+-- Records committed by each bulk import, keyed by file, written in the same transaction as the records. Lives on the home shard.
+CREATE TABLE transfer_progress (
+	transfer_key VARCHAR(512) NOT NULL PRIMARY KEY,
+	records BIGINT NOT NULL
+);
+
+INSERT INTO category (category_id, category_name) VALUES (1, 'Doors and Windows'), (2, 'Plumbing'), (3, 'Yardwork');
+
+INSERT INTO id_sequence (sequence_name, next_value) VALUES ('project', 1);
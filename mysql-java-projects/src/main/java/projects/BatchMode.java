@@ -0,0 +1,408 @@
+package projects;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import projects.dao.BatchInsertResult;
+import projects.dao.DbConnection;
+import projects.entity.Project;
+import projects.service.ProjectService;
+import projects.transfer.Json;
+import projects.transfer.JsonLinesFormat;
+
+/*
+ * Runs ProjectsApp operations from a script instead of the menu: ProjectsApp --batch [file] reads one JSON command per
+ * line from the file or stdin and prints one JSON result per line. Blank lines and lines starting with # are skipped.
+ *
+ *   {"cmd":"add","project":{"projectName":"Hang a door","difficulty":3,"steps":[{"stepText":"Measure"}]}}
+ *   {"cmd":"addAll","projects":[{...},{...}]}
+ *   {"cmd":"list","afterName":"Hang a door","afterId":1,"limit":100}
+ *   {"cmd":"select","projectId":1}
+ *   {"cmd":"selectAll","projectIds":[1,2,3]}
+ *   {"cmd":"update","projectId":1,"version":0,"set":{"actualHours":12.5}}
+ *   {"cmd":"delete","projectId":1}
+ *   {"cmd":"deleteAll","projectIds":[2,3]}
+ *   {"cmd":"commit"}
+ *
+ * update and delete act on the selected project when projectId is left out, like the menu does; version is optional
+ * and makes the update fail if the project changed since it was read. Results look like
+ * {"line":4,"cmd":"select","ok":true,"project":{...}} or {"line":5,"cmd":"update","ok":false,"error":"..."}.
+ *
+ * Commands run in groups of GROUP_SIZE in one unit of work, so a group borrows one connection and commits once; commit
+ * ends a group early. Results are printed after the group commits. If any command in a group fails, the group is rolled
+ * back and its commands are run again one at a time, so only the failing command reports an error.
+ */
+public class BatchMode {
+
+	private static final int GROUP_SIZE = 100;									// Commands per commit
+	private static final int DEFAULT_LIST_LIMIT = 100;
+
+	private final ProjectService projectService;
+	private final PrintStream out;
+	private final boolean grouped;												// Sharded units are per shard, so each command runs on its own
+	private Project curProject;													// Set by select, used by update and delete without an ID
+	private long commands;
+	private long failures;
+
+	public BatchMode(ProjectService projectService, PrintStream out) {
+		this.projectService = projectService;
+		this.out = out;
+		this.grouped = DbConnection.getShardRouter().isEmpty();
+	}
+
+
+	// Runs every command in the input. Returns true if all of them succeeded.
+	public boolean run(BufferedReader in) throws IOException {
+
+		long startNanos = System.nanoTime();
+		List<Command> group = new ArrayList<>(GROUP_SIZE);
+		String line;
+		int lineNumber = 0;
+
+		while(Objects.nonNull(line = in.readLine())) {
+			lineNumber++;
+
+			if(line.isBlank() || line.startsWith("#")) {
+				continue;
+			}
+
+			Command command = new Command(lineNumber, line);
+
+			if(command.isCommit()) {
+				runGroup(group);
+				group.clear();
+				continue;
+			}
+
+			group.add(command);
+
+			if(group.size() == GROUP_SIZE || !grouped) {
+				runGroup(group);
+				group.clear();
+			}
+		}
+
+		runGroup(group);
+
+		double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1_000_000_000.0;
+		System.err.println(String.format("%,d commands, %,d failed, %.1f s, %,.0f commands/s", commands, failures, seconds,
+				commands / seconds));
+
+		return failures == 0;
+
+	}
+
+
+	private void runGroup(List<Command> group) {
+
+		if(group.isEmpty()) {
+			return;
+		}
+
+		Project selectedBefore = curProject;
+		List<String> results = new ArrayList<>(group.size());
+
+		try {
+			inUnit(() -> {
+				for(Command command : group) {
+					results.add(execute(command));
+				}
+				return null;
+			});
+		} catch(RuntimeException e) {
+			if(group.size() == 1) {
+				curProject = selectedBefore;
+				print(List.of(group.get(0).result(false).append(",\"error\":").append(quote(describe(e))).append('}').toString()));
+				failures++;
+				commands++;
+				return;
+			}
+
+			curProject = selectedBefore;												// The rolled back group never happened
+
+			for(Command command : group) {
+				runGroup(List.of(command));
+			}
+
+			return;
+		}
+
+		print(results);
+		commands += group.size();
+
+	}
+
+
+	private <T> T inUnit(Supplier<T> work) {
+		return grouped ? projectService.inTransaction(work) : work.get();
+	}
+
+
+	// Runs one command and returns its result line. Failures are thrown so the whole group rolls back.
+	private String execute(Command command) {
+
+		Map<String, Object> fields = command.fields();
+		StringBuilder result = command.result(true);
+
+		switch(command.name()) {
+
+			case "add": {
+				Project project = JsonLinesFormat.readProject(Json.asObject(fields.get("project"), "project"));
+				BatchInsertResult inserted = projectService.addProjects(List.of(project), 1);	// Bulk path, so the children are written too
+				result.append(",\"projectId\":").append(project.getProjectId()).append(",\"rows\":").append(inserted.getTotalRows());
+				break;
+			}
+
+			case "addAll": {
+				List<Project> projects = new ArrayList<>();
+
+				for(Object value : Json.getArray(fields, "projects")) {
+					projects.add(JsonLinesFormat.readProject(Json.asObject(value, "project")));
+				}
+
+				BatchInsertResult inserted = projectService.addProjects(projects, Math.max(projects.size(), 1));
+				result.append(",\"projects\":").append(inserted.getProjects()).append(",\"rows\":").append(inserted.getTotalRows())
+						.append(",\"projectIds\":[");
+
+				for(int index = 0; index < projects.size(); index++) {
+					result.append(index == 0 ? "" : ",").append(projects.get(index).getProjectId());
+				}
+
+				result.append(']');
+				break;
+			}
+
+			case "list": {
+				Integer limit = Json.getInteger(fields, "limit");
+				List<Project> page = projectService.fetchProjectsPage(Json.getString(fields, "afterName"),
+						Json.getInteger(fields, "afterId"), Objects.isNull(limit) ? DEFAULT_LIST_LIMIT : limit);
+
+				result.append(",\"projects\":[");
+
+				for(int index = 0; index < page.size(); index++) {
+					Project project = page.get(index);
+					result.append(index == 0 ? "" : ",").append("{\"projectId\":").append(project.getProjectId())
+							.append(",\"projectName\":");
+					Json.writeString(result, project.getProjectName());
+					result.append('}');
+				}
+
+				result.append(']');
+				break;
+			}
+
+			case "select": {
+				curProject = projectService.fetchProjectByID(requireId(fields));
+				result.append(",\"project\":");
+				JsonLinesFormat.writeProject(result, curProject);
+				break;
+			}
+
+			case "selectAll": {
+				List<Integer> projectIds = new ArrayList<>();
+
+				for(Object value : Json.getArray(fields, "projectIds")) {
+					projectIds.add(toId(value));
+				}
+
+				List<Project> projects = projectService.fetchProjectsByIds(projectIds);
+				result.append(",\"projects\":[");
+
+				for(int index = 0; index < projects.size(); index++) {
+					result.append(index == 0 ? "" : ",");
+					JsonLinesFormat.writeProject(result, projects.get(index));
+				}
+
+				result.append(']');
+				break;
+			}
+
+			case "update": {
+				Project updatedProj = new Project();
+				updatedProj.setProjectId(targetId(fields));
+				updatedProj.setVersion(Json.getInteger(fields, "version"));
+				Map<String, Object> changes = Json.asObject(fields.get("set"), "set");
+
+				if(changes.containsKey("projectName"))
+					updatedProj.setProjectName(Json.getString(changes, "projectName"));
+				if(changes.containsKey("estimatedHours"))
+					updatedProj.setEstimatedHours(Json.getDecimal(changes, "estimatedHours"));
+				if(changes.containsKey("actualHours"))
+					updatedProj.setActualHours(Json.getDecimal(changes, "actualHours"));
+				if(changes.containsKey("difficulty"))
+					updatedProj.setDifficulty(Json.getInteger(changes, "difficulty"));
+				if(changes.containsKey("notes"))
+					updatedProj.setNotes(Json.getString(changes, "notes"));
+
+				projectService.modifyProjectDetails(updatedProj);
+				result.append(",\"projectId\":").append(updatedProj.getProjectId());
+
+				if(Objects.nonNull(updatedProj.getVersion())) {
+					result.append(",\"version\":").append(updatedProj.getVersion());
+				}
+
+				if(Objects.nonNull(curProject) && curProject.getProjectId().equals(updatedProj.getProjectId())) {
+					curProject = null;														// Stale now; select it again to see the changes
+				}
+				break;
+			}
+
+			case "delete": {
+				Integer projectId = targetId(fields);
+				projectService.deleteProject(projectId);
+				result.append(",\"projectId\":").append(projectId);
+
+				if(Objects.nonNull(curProject) && curProject.getProjectId().equals(projectId)) {
+					curProject = null;
+				}
+				break;
+			}
+
+			case "deleteAll": {
+				result.append(",\"projectIds\":[");
+				int count = 0;
+
+				for(Object value : Json.getArray(fields, "projectIds")) {
+					Integer projectId = toId(value);
+					projectService.deleteProject(projectId);
+					result.append(count++ == 0 ? "" : ",").append(projectId);
+
+					if(Objects.nonNull(curProject) && curProject.getProjectId().equals(projectId)) {
+						curProject = null;
+					}
+				}
+
+				result.append(']');
+				break;
+			}
+
+			default:
+				throw new IllegalArgumentException("Unknown command " + command.name());
+		}
+
+		return result.append('}').toString();
+
+	}
+
+
+	private static Integer requireId(Map<String, Object> fields) {
+
+		Integer projectId = Json.getInteger(fields, "projectId");
+
+		if(Objects.isNull(projectId)) {
+			throw new IllegalArgumentException("projectId is required");
+		}
+
+		return projectId;
+
+	}
+
+
+	// One element of a projectIds array
+	private static Integer toId(Object value) {
+
+		if(!(value instanceof BigDecimal)) {
+			throw new IllegalArgumentException("projectIds must hold numbers");
+		}
+
+		try {
+			return ((BigDecimal)value).intValueExact();
+		} catch(ArithmeticException e) {
+			throw new IllegalArgumentException("projectIds must hold whole numbers");
+		}
+
+	}
+
+
+	// The command's projectId, or the selected project's when it has none
+	private Integer targetId(Map<String, Object> fields) {
+
+		if(Objects.nonNull(fields.get("projectId"))) {
+			return requireId(fields);
+		}
+
+		if(Objects.isNull(curProject)) {
+			throw new IllegalArgumentException("projectId is required when no project is selected");
+		}
+
+		return curProject.getProjectId();
+
+	}
+
+
+	private void print(List<String> results) {
+		results.forEach(out::println);
+		out.flush();
+	}
+
+
+	private static String describe(RuntimeException e) {
+		return Objects.isNull(e.getMessage()) ? e.toString() : e.getMessage();
+	}
+
+
+	private static String quote(String text) {
+		StringBuilder quoted = new StringBuilder(text.length() + 2);
+		Json.writeString(quoted, text);
+		return quoted.toString();
+	}
+
+
+	// One input line. The JSON is parsed when the command runs, so a malformed line fails like any other command.
+	private static class Command {
+
+		private final int lineNumber;
+		private final String text;
+		private Map<String, Object> fields;
+		private String name;
+
+		Command(int lineNumber, String text) {
+			this.lineNumber = lineNumber;
+			this.text = text;
+		}
+
+		Map<String, Object> fields() {
+			if(Objects.isNull(fields)) {
+				fields = Json.asObject(Json.parse(text), "command");
+				name = Json.getString(fields, "cmd");
+			}
+			return fields;
+		}
+
+		String name() {
+			fields();
+			return String.valueOf(name);
+		}
+
+		// Only a well-formed commit line ends a group; anything else that fails to parse is reported when it runs
+		boolean isCommit() {
+			try {
+				return "commit".equals(name());
+			} catch(IllegalArgumentException e) {
+				return false;
+			}
+		}
+
+		// Start of the result line: {"line":N,"cmd":"...","ok":true|false
+		StringBuilder result(boolean ok) {
+			StringBuilder result = new StringBuilder(128).append("{\"line\":").append(lineNumber).append(",\"cmd\":");
+
+			try {
+				Json.writeString(result, name());
+			} catch(IllegalArgumentException e) {
+				result.append("null");
+			}
+
+			return result.append(",\"ok\":").append(ok);
+		}
+
+	}
+
+}
@@ -1,16 +1,35 @@
 package projects;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import projects.dao.DaoMetrics;
+import projects.dao.DbConnection;
+import projects.dao.ProjectRollup;
+import projects.entity.CategoryCount;
 import projects.entity.Project;
+import projects.entity.ProjectSearchResult;
 import projects.exception.DbException;
+import projects.exception.StaleProjectException;
 import projects.service.ProjectService;
+import projects.service.RollupTotals;
 
 public class ProjectsApp {
 
 	private Scanner scanner = new Scanner(System.in);
 	private ProjectService projectService = new ProjectService();
 	private Project curProject;										// Variable to track currently selected project
+	private static final int PAGE_SIZE = 20;						// Projects shown per page when listing
+	private static final int SEARCH_LIMIT = 20;						// Search results shown
 
 	// @formatter: off
 	private List<String> operations = List.of(						// List of options for the user
@@ -18,7 +37,12 @@ public class ProjectsApp {
 			"2) List projects",										// Displays all projects currently in table projects
 			"3) Select a project",									// Allows user to select existing project to access details of project
 			"4) Update project details",							// Update an existing project's details
-			"5) Delete a project"									// Delete an existing project
+			"5) Delete a project",									// Delete an existing project
+			"6) Search projects",									// Find projects by words in their name, notes, steps, or materials
+			"7) Browse projects by category",						// List projects in one category, or in all of several categories
+			"8) Show cost and hours totals",						// Material cost, child counts, and hours for all projects and the current one
+			"9) Edit project steps",								// Add, move, or delete steps of the current project
+			"10) Show database metrics"								// Latency percentiles, errors, slow queries, and pool counters
 			);
 	// @formatter: on
 
@@ -58,6 +82,26 @@ public class ProjectsApp {
 						deleteProject();							// User enters 5 - Will allow a user to delete an existing project and all associated details
 						break;
 						
+					case 6:											// User enters 6 - Will search projects by keyword and list the best matches
+						searchProjects();
+						break;
+						
+					case 7:											// User enters 7 - Will list categories, then the projects in the chosen categories
+						browseCategories();
+						break;
+						
+					case 8:											// User enters 8 - Will show rollups for all projects and the selected project
+						showRollups();
+						break;
+						
+					case 9:											// User enters 9 - Will add, move, or delete a step of the selected project
+						editSteps();
+						break;
+						
+					case 10:										// User enters 10 - Will print DAO latency percentiles and pool counters
+						showMetrics();
+						break;
+						
 					default:										// User makes an invalid selection
 						System.out.println("\n" + selection + " is not a valid selection. Try again.");
 				}
@@ -172,16 +216,31 @@ public class ProjectsApp {
 	}
 
 	
-	// Switch case 2 - Will display each project ID and name in projects table
+	// Switch case 2 - Will display each project ID and name in projects table, one page at a time
 	private void listProjects() {
 
-		List<Project> projects = projectService.fetchAllProjects();
-		
 		System.out.println("\nProjects:");
 		
-		projects.forEach(project -> System.out.println("   " + project.getProjectId() + ": " + project.getProjectName()));
+		String afterName = null;													// Key of the last project shown; null starts at the first page
+		Integer afterId = null;
+		
+		while(true) {
+			// Ask for one extra row to find out whether another page exists without a second query
+			List<Project> page = projectService.fetchProjectsPage(afterName, afterId, PAGE_SIZE + 1);
+			boolean morePages = page.size() > PAGE_SIZE;
 			
+			for(Project project : page.subList(0, Math.min(page.size(), PAGE_SIZE))) {
+				System.out.println("   " + project.getProjectId() + ": " + project.getProjectName());
+				afterName = project.getProjectName();
+				afterId = project.getProjectId();
+			}
+			
+			if(!morePages || Objects.nonNull(getStringInput("Press the Enter key for more projects, or type anything to stop"))) {
+				break;
+			}
 		}
+			
+	}
 	
 
 	// Switch case 3 - Asks user for an integer to select an existing project
@@ -218,21 +277,49 @@ public class ProjectsApp {
 		
 		Project updatedProj = new Project();											// Stores updates entered by user
 		
-		// Check each input for null, replace with existing value if null
+		// Set only the values the user changed. The version makes the update fail if someone else changed the project meanwhile.
 		updatedProj.setProjectId(curProject.getProjectId());
-		updatedProj.setProjectName(Objects.isNull(projName) ? curProject.getProjectName() : projName);
-		updatedProj.setEstimatedHours(Objects.isNull(projEstHours) ? curProject.getEstimatedHours() : projEstHours);
-		updatedProj.setActualHours(Objects.isNull(projActHours) ? curProject.getActualHours() : projActHours);
-		updatedProj.setDifficulty(Objects.isNull(projDifficulty) ? curProject.getDifficulty() : projDifficulty);
-		updatedProj.setNotes(Objects.isNull(projNotes) ? curProject.getNotes() : projNotes);
+		updatedProj.setVersion(curProject.getVersion());
+		
+		if(Objects.nonNull(projName) && !projName.equals(curProject.getProjectName()))
+			updatedProj.setProjectName(projName);
+		if(Objects.nonNull(projEstHours) && !isSameNumber(projEstHours, curProject.getEstimatedHours()))
+			updatedProj.setEstimatedHours(projEstHours);
+		if(Objects.nonNull(projActHours) && !isSameNumber(projActHours, curProject.getActualHours()))
+			updatedProj.setActualHours(projActHours);
+		if(Objects.nonNull(projDifficulty) && !projDifficulty.equals(curProject.getDifficulty()))
+			updatedProj.setDifficulty(projDifficulty);
+		if(Objects.nonNull(projNotes) && !projNotes.equals(curProject.getNotes()))
+			updatedProj.setNotes(projNotes);
+		
+		if(updatedProj.getDirtyFields() == 0) {
+			System.out.println("\nNo changes entered.");
+			return;
+		}
 		
-		projectService.modifyProjectDetails(updatedProj);								// Send updated values/project to service layer to be updated
+		Integer projectId = curProject.getProjectId();
 		
-		curProject = projectService.fetchProjectByID(curProject.getProjectId());		// Fetch newly updated project values as they appear in the table after update
+		try {
+			// Update and re-read on one connection with one commit
+			curProject = projectService.inProjectTransaction(projectId, () -> {
+				projectService.modifyProjectDetails(updatedProj);						// Send updated values/project to service layer to be updated
+				return projectService.fetchProjectByID(projectId);						// Fetch newly updated project values as they appear in the table after update
+			});
+		} catch(StaleProjectException e) {
+			System.out.println("\n" + e.getMessage() + " The latest version has been loaded - please enter your changes again.");
+			curProject = projectService.fetchProjectByID(projectId);
+		}
 		
 	}
 
 
+	// Compares decimals by value, so 4 and 4.00 are the same number of hours
+	private boolean isSameNumber(BigDecimal value, BigDecimal current) {
+		
+		return Objects.nonNull(current) && value.compareTo(current) == 0;
+	}
+
+
 	// Switch case 5 - Deletes the currently selected project and all associated details
 	private void deleteProject() {
 		
@@ -250,8 +337,203 @@ public class ProjectsApp {
 	}
 
 
+	// Switch case 6 - Asks user for search words and lists the best matching projects
+	private void searchProjects() {
+		
+		String terms = getStringInput("Enter words to search for");
+		
+		if(Objects.isNull(terms)) {
+			return;
+		}
+		
+		List<ProjectSearchResult> results = projectService.searchProjects(terms, SEARCH_LIMIT);
+		
+		if(results.isEmpty()) {
+			System.out.println("\nNo projects match \"" + terms + "\".");
+			return;
+		}
+		
+		System.out.println("\nBest matches:");
+		results.forEach(result -> System.out.println("   " + result.getProjectId() + ": " + result.getProjectName()));
+		
+	}
+
+
+	// Switch case 7 - Lists categories with project counts, then pages through the projects in every chosen category
+	private void browseCategories() {
+		
+		System.out.println("\nCategories:");
+		
+		for(CategoryCount count : projectService.fetchCategoryCounts()) {
+			System.out.println("   " + count.getCategoryId() + ": " + count.getCategoryName() + " (" + count.getProjectCount() + " projects)");
+		}
+		
+		String input = getStringInput("Enter one or more category IDs separated by commas");
+		
+		if(Objects.isNull(input)) {
+			return;
+		}
+		
+		List<Integer> categoryIds = new ArrayList<>();
+		
+		for(String part : input.split(",")) {
+			try {
+				categoryIds.add(projectService.fetchCategoryByID(Integer.valueOf(part.trim())).getCategoryId());
+			} catch(NumberFormatException e) {
+				throw new DbException(part.trim() + " is not a valid number.");
+			}
+		}
+		
+		System.out.println("\nProjects:");
+		
+		Integer afterId = null;														// ID of the last project shown; null starts at the first page
+		
+		while(true) {
+			// Ask for one extra row to find out whether another page exists without a second query
+			List<Project> page = projectService.fetchProjectsInAllCategories(categoryIds, afterId, PAGE_SIZE + 1);
+			boolean morePages = page.size() > PAGE_SIZE;
+			
+			if(page.isEmpty() && Objects.isNull(afterId)) {
+				System.out.println("   No projects are in every selected category.");
+			}
+			
+			for(Project project : page.subList(0, Math.min(page.size(), PAGE_SIZE))) {
+				System.out.println("   " + project.getProjectId() + ": " + project.getProjectName());
+				afterId = project.getProjectId();
+			}
+			
+			if(!morePages || Objects.nonNull(getStringInput("Press the Enter key for more projects, or type anything to stop"))) {
+				break;
+			}
+		}
+		
+	}
+
+
+	// Switch case 8 - Shows totals across all projects and for the current project, with an option to recompute them
+	private void showRollups() {
+		
+		if(Objects.nonNull(getStringInput("Press the Enter key to show totals, or type anything to recompute them first"))) {
+			projectService.rebuildRollups();
+		}
+		
+		RollupTotals totals = projectService.fetchRollupTotals();
+		
+		System.out.println("\nAll projects:");
+		System.out.println("   Projects: " + totals.getProjectCount());
+		System.out.println("   Materials: " + totals.getMaterialCount() + ", total cost: " + totals.getTotalCost());
+		System.out.println("   Steps: " + totals.getStepCount());
+		System.out.println("   Estimated hours: " + totals.getEstimatedHours() + ", actual hours: " + totals.getActualHours());
+		System.out.println("   Hours over estimate: " + totals.getHoursVariance() + " (projects with both hours: " + totals.getVarianceProjectCount() + ")");
+		
+		if(Objects.nonNull(curProject)) {
+			ProjectRollup rollup = projectService.fetchProjectRollup(curProject.getProjectId());
+			
+			System.out.println("\n" + curProject.getProjectName() + ":");
+			System.out.println("   Materials: " + rollup.getMaterialCount() + ", total cost: " + rollup.getTotalCost());
+			System.out.println("   Steps: " + rollup.getStepCount());
+			System.out.println("   Hours over estimate: " + rollup.getHoursVariance());
+		}
+		
+	}
+
+
+	// Switch case 9 - Lists the steps of the current project and adds, moves, or deletes one
+	private void editSteps() {
+		
+		if(Objects.isNull(curProject)) {
+			System.out.println("\nPlease select a project (option 3) first.");
+			return;
+		}
+		
+		System.out.println("\nSteps:");
+		curProject.getSteps().forEach(step -> System.out.println("   " + step.getStepId() + ": " + step.getStepText()));
+		
+		String action = getStringInput("Enter a to add, m to move, or d to delete a step");
+		Integer projectId = curProject.getProjectId();
+		
+		if(Objects.isNull(action)) {
+			return;
+		}
+		
+		switch(action.toLowerCase()) {
+		
+			case "a":
+				String stepText = getStringInput("Enter the step text");
+				
+				if(Objects.nonNull(stepText)) {
+					projectService.addStep(projectId, stepText, getIntInput("Enter the ID of the step to add it before [end]"));
+				}
+				break;
+				
+			case "m":
+				Integer stepId = getIntInput("Enter the ID of the step to move");
+				
+				if(Objects.nonNull(stepId)) {
+					projectService.moveStep(projectId, stepId, getIntInput("Enter the ID of the step to move it before [end]"));
+				}
+				break;
+				
+			case "d":
+				Integer deleteId = getIntInput("Enter the ID of the step to delete");
+				
+				if(Objects.nonNull(deleteId)) {
+					projectService.deleteStep(projectId, deleteId);
+				}
+				break;
+				
+			default:
+				System.out.println("\n" + action + " is not a valid selection.");
+				return;
+		}
+		
+		curProject = projectService.fetchProjectByID(projectId);					// Reload to show the steps in their new order
+		
+	}
+
+
+	// Switch case 10 - Prints latency percentiles for connection borrows, DAO methods, and statements, then the pool counters
+	private void showMetrics() {
+		
+		System.out.println("\n" + DaoMetrics.dump());
+		System.out.println("Connection pool: " + DbConnection.getPoolMetrics());
+		DbConnection.getReadRouter().ifPresent(router -> System.out.println("Read replicas: " + router));
+		
+	}
+
+
+	// ProjectsApp runs the menu. ProjectsApp --batch [file] runs JSON commands from the file, or stdin, instead (see BatchMode).
 	public static void main(String[] args) {
+		
+		DbConnection.configureShardsFromProperty();									// -Dprojects.shards=... splits the data across databases
+		
+		if(args.length > 0 && "--batch".equals(args[0])) {
+			runBatch(args.length > 1 ? args[1] : null);
+			return;
+		}
+		
+		DaoMetrics.registerMBean();													// Same numbers as option 10, readable from JConsole
 		new ProjectsApp().processUserSelections();
+		DbConnection.shutdown();													// Close pooled connections before exiting
+	}
+	
+	
+	private static void runBatch(String file) {
+		
+		boolean succeeded = false;
+		
+		try(BufferedReader in = Objects.isNull(file) ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+				: Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8)) {
+			PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false,
+					StandardCharsets.UTF_8);											// BatchMode flushes after each group
+			succeeded = new BatchMode(new ProjectService(), out).run(in);
+		} catch(IOException e) {
+			System.err.println("Cannot read " + (Objects.isNull(file) ? "stdin" : file) + ": " + e.getMessage());
+		} finally {
+			DbConnection.shutdown();
+		}
+		
+		System.exit(succeeded ? 0 : 1);												// 1 if any command failed
 	}
 	
 }
@@ -0,0 +1,55 @@
+package projects.dao;
+
+// Row counts and elapsed time for a bulk insert, used to report ingest throughput
+public class BatchInsertResult {
+
+	private final int projects;
+	private final int materials;
+	private final int steps;
+	private final int categories;
+	private final long elapsedNanos;
+
+	public BatchInsertResult(int projects, int materials, int steps, int categories, long elapsedNanos) {
+		this.projects = projects;
+		this.materials = materials;
+		this.steps = steps;
+		this.categories = categories;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public int getProjects() {
+		return projects;
+	}
+
+	public int getMaterials() {
+		return materials;
+	}
+
+	public int getSteps() {
+		return steps;
+	}
+
+	public int getCategories() {
+		return categories;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	// Every inserted row counts: projects plus material, step, and project_category rows
+	public int getTotalRows() {
+		return projects + materials + steps + categories;
+	}
+
+	public double getRowsPerSecond() {
+		return elapsedNanos == 0 ? 0 : getTotalRows() * 1_000_000_000.0 / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("projects=%d, materials=%d, steps=%d, categories=%d, elapsedMs=%.1f, rowsPerSecond=%.0f", projects,
+				materials, steps, categories, elapsedNanos / 1_000_000.0, getRowsPerSecond());
+	}
+
+}
@@ -0,0 +1,305 @@
+package projects.dao;
+
+import java.sql.*;
+import java.util.*;
+import java.util.function.Consumer;
+import projects.entity.CompactMaterial;
+import projects.entity.CompactProject;
+import projects.exception.DbException;
+import provided.util.DaoBase;
+
+/*
+ * Opt-in data access for CompactProject and CompactMaterial. DECIMAL(7,2) columns are scaled to hundredths in SQL
+ * (CAST(x * 100 AS SIGNED)) so they arrive as integers and are read with getLong, and written back as "? * 0.01" from a
+ * bound long. Rows are read with primitive getters and wasNull, and bound with DaoBase.setInt and setLong, so no BigDecimal
+ * or boxed Integer is created per value in either direction.
+ */
+public class CompactProjectDao extends DaoBase {
+
+	private static final String MATERIAL_TABLE = "material";
+	private static final String PROJECT_TABLE = "project";
+
+	private static final String PROJECT_COLUMNS = ""
+			+ "project_id, project_name, CAST(estimated_hours * 100 AS SIGNED), CAST(actual_hours * 100 AS SIGNED), "
+			+ "difficulty, notes, version";
+	
+	private static final String MATERIAL_COLUMNS = ""
+			+ "material_id, project_id, material_name, num_required, CAST(cost * 100 AS SIGNED)";
+
+	// @formatter:off
+	private static final String FETCH_FIRST_PAGE_SQL = ""
+			+ "SELECT " + PROJECT_COLUMNS + " FROM " + PROJECT_TABLE + " "
+			+ "ORDER BY project_name, project_id "
+			+ "LIMIT ?";
+	
+	private static final String FETCH_NEXT_PAGE_SQL = ""
+			+ "SELECT " + PROJECT_COLUMNS + " FROM " + PROJECT_TABLE + " "
+			+ "WHERE (project_name, project_id) > (?, ?) "
+			+ "ORDER BY project_name, project_id "
+			+ "LIMIT ?";
+	
+	private static final String SCAN_MATERIALS_SQL = ""
+			+ "SELECT " + MATERIAL_COLUMNS + " FROM " + MATERIAL_TABLE + " ORDER BY project_id, material_id";
+	
+	private static final String INSERT_PROJECT_SQL = ""
+			+ "INSERT INTO " + PROJECT_TABLE + " "
+			+ "(project_name, estimated_hours, actual_hours, difficulty, notes) "
+			+ "VALUES "
+			+ "(?, ? * 0.01, ? * 0.01, ?, ?)";
+	
+	private static final String INSERT_PROJECT_WITH_ID_SQL = ""				// For IDs handed out by a global allocator, e.g. when sharded
+			+ "INSERT INTO " + PROJECT_TABLE + " "
+			+ "(project_name, estimated_hours, actual_hours, difficulty, notes, project_id) "
+			+ "VALUES "
+			+ "(?, ? * 0.01, ? * 0.01, ?, ?, ?)";
+	
+	private static final String INSERT_MATERIAL_SQL = ""
+			+ "INSERT INTO " + MATERIAL_TABLE + " "
+			+ "(project_id, material_name, num_required, cost) "
+			+ "VALUES "
+			+ "(?, ?, ?, ? * 0.01)";
+	// @formatter:on
+
+	private static final int MAX_IDS_PER_QUERY = 5000;						// Well under MySQL's 65,535 placeholder limit
+
+
+	// One page of projects in (project_name, project_id) order. Nulls start at the first page.
+	public List<CompactProject> fetchProjectsPage(String afterName, Integer afterId, int limit) {
+		
+		boolean firstPage = Objects.isNull(afterName) || Objects.isNull(afterId);
+		
+		try(Connection conn = DbConnection.getReadConnection()) {
+			
+			try(PreparedStatement stmt = conn.prepareStatement(firstPage ? FETCH_FIRST_PAGE_SQL : FETCH_NEXT_PAGE_SQL)) {
+				int parameterIndex = 1;
+				
+				if(!firstPage) {
+					setParameter(stmt, parameterIndex++, afterName, String.class);
+					setInt(stmt, parameterIndex++, afterId, false);
+				}
+				
+				setInt(stmt, parameterIndex, limit, false);
+				stmt.setFetchSize(Math.min(limit, ProjectDao.DEFAULT_FETCH_SIZE));
+				
+				try(ResultSet rs = stmt.executeQuery()) {
+					List<CompactProject> projects = new ArrayList<>(Math.min(limit, ProjectDao.DEFAULT_FETCH_SIZE));
+					
+					while(rs.next()) {
+						CompactProject project = new CompactProject();
+						readProject(rs, project);
+						projects.add(project);
+					}
+					
+					return projects;
+				}
+			}
+			
+		} catch(SQLException e) {
+			throw new DbException(e);
+		}
+		
+	}
+
+
+	// Materials of the given projects, grouped by project in material ID order
+	public List<CompactMaterial> fetchMaterials(Collection<Integer> projectIds) {
+		
+		List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(projectIds));
+		ids.removeIf(Objects::isNull);
+		
+		List<CompactMaterial> materials = new ArrayList<>();
+		
+		try(Connection conn = DbConnection.getReadConnection()) {
+			
+			for(int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+				List<Integer> chunk = ids.subList(from, Math.min(from + MAX_IDS_PER_QUERY, ids.size()));
+				String sql = "SELECT " + MATERIAL_COLUMNS + " FROM " + MATERIAL_TABLE + " WHERE project_id IN "
+						+ ProjectDao.placeholders(chunk.size()) + " ORDER BY project_id, material_id";
+				
+				try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+					for(int index = 0; index < chunk.size(); index++) {
+						setInt(stmt, index + 1, chunk.get(index), false);
+					}
+					
+					try(ResultSet rs = stmt.executeQuery()) {
+						while(rs.next()) {
+							CompactMaterial material = new CompactMaterial();
+							readMaterial(rs, material);
+							materials.add(material);
+						}
+					}
+				}
+			}
+			
+			return materials;
+			
+		} catch(SQLException e) {
+			throw new DbException(e);
+		}
+		
+	}
+
+
+	/*
+	 * Reads every material through a server-side cursor and hands each row to the consumer, for aggregations that do not
+	 * fit in SQL. The same CompactMaterial instance is refilled for every row, so the scan allocates nothing per row;
+	 * consumers must copy any values they keep.
+	 */
+	public void scanMaterials(int fetchSize, Consumer<CompactMaterial> consumer) {
+		
+		try(Connection conn = DbConnection.getReadConnection()) {
+			
+			try(PreparedStatement stmt = conn.prepareStatement(SCAN_MATERIALS_SQL)) {
+				stmt.setFetchSize(fetchSize);
+				
+				try(ResultSet rs = stmt.executeQuery()) {
+					CompactMaterial material = new CompactMaterial();
+					
+					while(rs.next()) {
+						readMaterial(rs, material);
+						consumer.accept(material);
+					}
+				}
+			}
+			
+		} catch(SQLException e) {
+			throw new DbException(e);
+		}
+		
+	}
+
+
+	// Inserts a project with its materials in one transaction and sets the generated IDs
+	public CompactProject insertProject(CompactProject project, List<CompactMaterial> materials) {
+		
+		return insertProject(project, materials, false);
+	}
+
+
+	// Same as insertProject, keeping the project ID already set instead of taking one from AUTO_INCREMENT
+	public CompactProject insertProjectWithId(CompactProject project, List<CompactMaterial> materials) {
+		
+		return insertProject(project, materials, true);
+	}
+
+
+	private CompactProject insertProject(CompactProject project, List<CompactMaterial> materials, boolean assignedId) {
+		
+		try(Connection conn = DbConnection.getConnection()) {
+			
+			startTransaction(conn);
+			
+			try {
+				try(PreparedStatement stmt = assignedId ? conn.prepareStatement(INSERT_PROJECT_WITH_ID_SQL)
+						: conn.prepareStatement(INSERT_PROJECT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+					setParameter(stmt, 1, project.getProjectName(), String.class);
+					setLong(stmt, 2, project.getEstimatedHoursHundredths(), !project.hasEstimatedHours());
+					setLong(stmt, 3, project.getActualHoursHundredths(), !project.hasActualHours());
+					setInt(stmt, 4, project.getDifficulty(), !project.hasDifficulty());
+					setParameter(stmt, 5, project.getNotes(), String.class);
+					
+					if(assignedId) {
+						setInt(stmt, 6, project.getProjectId(), false);
+					}
+					
+					stmt.executeUpdate();
+					
+					if(!assignedId) {
+						project.setProjectId(getGeneratedKeys(stmt, 1)[0]);
+					}
+				}
+				
+				if(!materials.isEmpty()) {
+					try(PreparedStatement stmt = conn.prepareStatement(INSERT_MATERIAL_SQL, Statement.RETURN_GENERATED_KEYS)) {
+						for(CompactMaterial material : materials) {
+							material.setProjectId(project.getProjectId());
+							setInt(stmt, 1, project.getProjectId(), false);
+							setParameter(stmt, 2, material.getMaterialName(), String.class);
+							setInt(stmt, 3, material.getNumRequired(), !material.hasNumRequired());
+							setLong(stmt, 4, material.getCostCents(), !material.hasCost());
+							stmt.addBatch();
+						}
+						
+						stmt.executeBatch();
+						int[] materialIds = getGeneratedKeys(stmt, materials.size());
+						
+						for(int index = 0; index < materialIds.length; index++) {
+							materials.get(index).setMaterialId(materialIds[index]);
+						}
+					}
+				}
+				
+				commitTransaction(conn);
+				project.setVersion(0);
+				return project;
+				
+			} catch(Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}
+			
+		} catch(SQLException e) {
+			throw new DbException(e);
+		}
+		
+	}
+
+
+	private void readProject(ResultSet rs, CompactProject project) throws SQLException {
+		
+		project.setProjectId(rs.getInt(1));
+		project.setProjectName(rs.getString(2));
+		
+		long estimatedHours = rs.getLong(3);
+		
+		if(rs.wasNull()) {
+			project.clearEstimatedHours();
+		} else {
+			project.setEstimatedHoursHundredths(estimatedHours);
+		}
+		
+		long actualHours = rs.getLong(4);
+		
+		if(rs.wasNull()) {
+			project.clearActualHours();
+		} else {
+			project.setActualHoursHundredths(actualHours);
+		}
+		
+		int difficulty = rs.getInt(5);
+		
+		if(rs.wasNull()) {
+			project.clearDifficulty();
+		} else {
+			project.setDifficulty(difficulty);
+		}
+		
+		project.setNotes(rs.getString(6));
+		project.setVersion(rs.getInt(7));
+	}
+
+
+	private void readMaterial(ResultSet rs, CompactMaterial material) throws SQLException {
+		
+		material.setMaterialId(rs.getInt(1));
+		material.setProjectId(rs.getInt(2));
+		material.setMaterialName(rs.getString(3));
+		
+		int numRequired = rs.getInt(4);
+		
+		if(rs.wasNull()) {
+			material.clearNumRequired();
+		} else {
+			material.setNumRequired(numRequired);
+		}
+		
+		long cost = rs.getLong(5);
+		
+		if(rs.wasNull()) {
+			material.clearCost();
+		} else {
+			material.setCostCents(cost);
+		}
+	}
+
+}
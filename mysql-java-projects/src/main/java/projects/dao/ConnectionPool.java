@@ -0,0 +1,784 @@
+package projects.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import projects.exception.DbException;
+
+/*
+ * Bounded JDBC connection pool. Callers borrow a Connection and close it as usual - closing the returned handle puts the
+ * physical connection back in the pool instead of tearing down the socket, so try-with-resources call sites keep working.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+	private final PoolSettings settings;
+	private final Semaphore permits;												// One permit per connection that may be handed out
+	private final LinkedBlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();	// Most recently returned first so warm connections are reused
+	private final Set<PooledEntry> borrowed = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger totalConnections = new AtomicInteger();
+	private final ScheduledExecutorService housekeeper;
+
+	private final LongAdder borrowCount = new LongAdder();
+	private final LongAdder totalWaitNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder created = new LongAdder();
+	private final LongAdder destroyed = new LongAdder();
+	private final LongAdder validationFailures = new LongAdder();
+	private final LongAdder leaksDetected = new LongAdder();
+	private final LongAdder statementCacheHits = new LongAdder();
+	private final LongAdder statementCacheMisses = new LongAdder();
+
+	private volatile boolean closed;
+	private volatile long lastWriteAt;											// When a write was last committed or returned; 0 if never
+
+	public ConnectionPool(PoolSettings settings) {
+		if(Objects.isNull(settings.getJdbcUrl())) {
+			throw new IllegalArgumentException("A JDBC URL is required");
+		}
+
+		if(settings.getMinSize() < 0 || settings.getMaxSize() < 1 || settings.getMinSize() > settings.getMaxSize()) {
+			throw new IllegalArgumentException("Invalid pool size: min=" + settings.getMinSize() + ", max=" + settings.getMaxSize());
+		}
+
+		this.settings = settings;
+		this.permits = new Semaphore(settings.getMaxSize(), true);					// Fair so waiting callers are served in arrival order
+
+		housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+			thread.setDaemon(true);													// Never keep the JVM alive just for the pool
+			return thread;
+		});
+
+		long interval = settings.getHousekeepingIntervalMillis();
+		housekeeper.scheduleWithFixedDelay(this::housekeep, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+
+	// Borrow a connection, waiting up to the borrow timeout when every connection is in use
+	public Connection borrow() {
+
+		if(closed) {
+			throw new DbException("Connection pool has been shut down");
+		}
+
+		long start = System.nanoTime();
+
+		try {
+			if(!permits.tryAcquire(settings.getBorrowTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+				timeouts.increment();
+				throw new DbException("Timed out after " + settings.getBorrowTimeoutMillis()
+						+ " ms waiting for a connection (active=" + borrowed.size() + ", max=" + settings.getMaxSize() + ")");
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException(e);
+		}
+
+		try {
+			PooledEntry entry = takeIdleOrCreate(start);
+
+			if(settings.getLeakDetectionThresholdMillis() > 0) {
+				entry.borrowSite = new Exception("Connection borrowed here");		// Only captured when leak detection is on
+			}
+
+			entry.borrowedAt = System.currentTimeMillis();
+			entry.leakReported = false;
+			borrowed.add(entry);
+
+			recordWait(System.nanoTime() - start);
+			return entry.newHandle();
+
+		} catch(RuntimeException e) {
+			permits.release();														// Give the permit back if no connection could be produced
+			throw e;
+		}
+
+	}
+
+
+	public PoolSettings getSettings() {
+		return settings;
+	}
+
+
+	// Settings of the pool that lent the connection, or null if it did not come from a ConnectionPool
+	public static PoolSettings settingsOf(Connection conn) {
+
+		if(Proxy.isProxyClass(conn.getClass()) && Proxy.getInvocationHandler(conn) instanceof Handle) {
+			return ((Handle)Proxy.getInvocationHandler(conn)).getPoolSettings();
+		}
+
+		return null;
+
+	}
+
+
+	// Time (System.currentTimeMillis) a borrower last committed, or returned in auto-commit mode, after running a statement
+	// other than a SELECT. Zero if that never happened. Read routing uses it to keep reads on this pool for a while after a write.
+	public long getLastWriteAt() {
+		return lastWriteAt;
+	}
+
+
+	// Snapshot of pool counters
+	public PoolMetrics getMetrics() {
+
+		return new PoolMetrics(borrowed.size(), idle.size(), totalConnections.get(), borrowCount.sum(), totalWaitNanos.sum(),
+				maxWaitNanos.get(), timeouts.sum(), created.sum(), destroyed.sum(), validationFailures.sum(),
+				leaksDetected.sum(), statementCacheHits.sum(), statementCacheMisses.sum());
+	}
+
+
+	// Close idle connections and stop housekeeping. Borrowed connections are closed as they are returned.
+	@Override
+	public void close() {
+
+		closed = true;
+		housekeeper.shutdownNow();
+
+		PooledEntry entry;
+
+		while((entry = idle.pollFirst()) != null) {
+			destroy(entry);
+		}
+
+	}
+
+
+	private PooledEntry takeIdleOrCreate(long start) {
+
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(settings.getBorrowTimeoutMillis());
+
+		while(true) {
+			PooledEntry entry = idle.pollFirst();
+
+			if(Objects.nonNull(entry)) {
+				if(isUsable(entry)) {
+					return entry;
+				}
+
+				destroy(entry);														// Dead connection - drop it and try the next one
+				continue;
+			}
+
+			if(reserveSlot()) {
+				return create();
+			}
+
+			/*
+			 * The housekeeper is mid-way through topping up the pool; wait for it to hand over a connection rather than
+			 * exceeding maxSize.
+			 */
+			try {
+				long remaining = deadline - System.nanoTime();
+				entry = idle.pollFirst(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DbException(e);
+			}
+
+			if(Objects.isNull(entry)) {
+				timeouts.increment();
+				throw new DbException("Timed out waiting for a connection");
+			}
+
+			idle.offerFirst(entry);													// Loop round so it is validated like any other idle connection
+		}
+
+	}
+
+
+	// Validation on borrow, skipped for connections that were in use a moment ago
+	private boolean isUsable(PooledEntry entry) {
+
+		if(!settings.isValidateOnBorrow()) {
+			return true;
+		}
+
+		if(System.currentTimeMillis() - entry.lastReturnedAt < settings.getValidationBypassMillis()) {
+			return true;
+		}
+
+		try {
+			if(entry.physical.isValid(settings.getValidationTimeoutSeconds())) {
+				return true;
+			}
+		} catch(SQLException e) {
+			// Treated the same as an invalid connection
+		}
+
+		validationFailures.increment();
+		return false;
+
+	}
+
+
+	// Claim room for one more physical connection without going over maxSize
+	private boolean reserveSlot() {
+
+		while(true) {
+			int current = totalConnections.get();
+
+			if(current >= settings.getMaxSize()) {
+				return false;
+			}
+
+			if(totalConnections.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+
+	}
+
+
+	// Open a new physical connection. The caller must already hold a slot from reserveSlot.
+	private PooledEntry create() {
+
+		try {
+			Connection conn = DriverManager.getConnection(settings.getJdbcUrl(), driverProperties());
+			created.increment();
+			return new PooledEntry(conn);
+		} catch(SQLException e) {
+			totalConnections.decrementAndGet();
+			System.out.println("Error getting connection");
+			throw new DbException(e);
+		}
+
+	}
+
+
+	// Extra driver properties. Server-side prepare makes MySQL parse each statement once per connection instead of per execution.
+	private Properties driverProperties() {
+
+		Properties properties = new Properties();
+
+		if(settings.isServerPreparedStatements()) {
+			properties.setProperty("useServerPrepStmts", "true");
+			properties.setProperty("cachePrepStmts", "true");
+			properties.setProperty("prepStmtCacheSize", String.valueOf(Math.max(settings.getStatementCacheSize(), 25)));
+			properties.setProperty("prepStmtCacheSqlLimit", "2048");
+		}
+
+		return properties;
+
+	}
+
+
+	private void destroy(PooledEntry entry) {
+
+		totalConnections.decrementAndGet();
+		destroyed.increment();
+
+		try {
+			entry.physical.close();
+		} catch(SQLException e) {
+			// Nothing useful to do with a failure closing a connection that is being discarded
+		}
+
+	}
+
+
+	// Called when a handle is closed. Resets transaction state so the next borrower gets a clean connection.
+	private void release(PooledEntry entry) {
+
+		borrowed.remove(entry);
+		entry.borrowSite = null;
+
+		try {
+			boolean reusable = !closed && !entry.physical.isClosed();
+
+			if(reusable && !entry.physical.getAutoCommit()) {
+				entry.physical.rollback();											// Discard anything the borrower left uncommitted
+				entry.physical.setAutoCommit(true);
+				entry.wrote = false;
+			}
+
+			entry.recordWrite();													// Auto-commit writes are already durable
+
+			if(reusable && entry.sessionChanged) {
+				entry.physical.setReadOnly(false);									// The next borrower gets the connection as it was opened
+				entry.physical.setTransactionIsolation(entry.defaultIsolation);
+				entry.sessionChanged = false;
+			}
+
+			if(reusable) {
+				entry.resetStatements();
+				entry.lastReturnedAt = System.currentTimeMillis();
+				idle.offerFirst(entry);
+			} else {
+				destroy(entry);
+			}
+
+		} catch(SQLException e) {
+			destroy(entry);
+		} finally {
+			permits.release();
+		}
+
+	}
+
+
+	// Calls the driver's method and surfaces the driver's own exception rather than the reflection wrapper
+	private static Object invokePhysical(Object target, Method method, Object[] args) throws Throwable {
+
+		try {
+			return method.invoke(target, args);
+		} catch(InvocationTargetException e) {
+			throw e.getCause();
+		}
+
+	}
+
+
+	private void recordWait(long waitNanos) {
+
+		borrowCount.increment();
+		totalWaitNanos.add(waitNanos);
+		maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+
+	}
+
+
+	// Periodic maintenance: evict long-idle connections, top up to minSize, and report leaks
+	private void housekeep() {
+
+		try {
+			long now = System.currentTimeMillis();
+
+			for(Iterator<PooledEntry> it = idle.descendingIterator(); it.hasNext();) {	// Oldest idle connections are at the tail
+				PooledEntry entry = it.next();
+
+				if(totalConnections.get() <= settings.getMinSize()) {
+					break;
+				}
+
+				if(now - entry.lastReturnedAt > settings.getIdleTimeoutMillis() && idle.remove(entry)) {
+					destroy(entry);
+				}
+			}
+
+			while(!closed && totalConnections.get() < settings.getMinSize() && reserveSlot()) {
+				idle.offerLast(create());
+			}
+
+			long threshold = settings.getLeakDetectionThresholdMillis();
+
+			if(threshold > 0) {
+				for(PooledEntry entry : borrowed) {
+					Exception site = entry.borrowSite;
+
+					if(!entry.leakReported && Objects.nonNull(site) && now - entry.borrowedAt > threshold) {
+						entry.leakReported = true;
+						leaksDetected.increment();
+						System.out.println("Possible connection leak: connection held for " + (now - entry.borrowedAt) + " ms");
+						site.printStackTrace();
+					}
+				}
+			}
+
+		} catch(RuntimeException e) {
+			System.out.println("Connection pool housekeeping failed: " + e);	// Keep the schedule alive; try again next run
+		}
+
+	}
+
+
+	// A physical connection plus the bookkeeping the pool needs for it
+	private class PooledEntry {
+
+		private final Connection physical;
+		private volatile long borrowedAt;
+		private volatile long lastReturnedAt;
+		private volatile Exception borrowSite;
+		private volatile boolean leakReported;
+		private boolean sessionChanged;												// Borrower changed isolation or read-only; reset on release
+		private int defaultIsolation = -1;											// Isolation the connection was opened with, read on first change
+		private boolean wrote;														// A non-SELECT statement ran since the last commit or rollback
+
+		// Prepared statements kept open on this connection, least recently used first. Only the borrowing thread touches it.
+		private final LinkedHashMap<StatementKey, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+		private PooledEntry(Connection physical) {
+			this.physical = physical;
+		}
+
+		// Hands out the cached statement for this SQL if it is free, otherwise prepares (and caches) a new one
+		private PreparedStatement prepareCached(Method method, Object[] args) throws Throwable {
+
+			int autoGeneratedKeys = args.length == 2 ? (Integer)args[1] : Statement.NO_GENERATED_KEYS;
+			StatementKey key = new StatementKey((String)args[0], autoGeneratedKeys);
+			CachedStatement cached = statements.get(key);
+
+			if(Objects.nonNull(cached) && !cached.inUse) {
+				statementCacheHits.increment();
+				cached.inUse = true;
+				return cached.proxy;
+			}
+
+			statementCacheMisses.increment();
+			PreparedStatement stmt = (PreparedStatement)invokePhysical(physical, method, args);
+
+			if(Objects.nonNull(cached)) {
+				return traced(this, stmt, key.sql);									// Same SQL already open on this connection - use a plain statement
+			}
+
+			cached = new CachedStatement(this, key, stmt);
+			statements.put(key, cached);
+			evictStatements();
+			return cached.proxy;
+
+		}
+
+		// Close least recently used statements that are not in use until the cache is back within its size
+		private void evictStatements() {
+
+			Iterator<CachedStatement> it = statements.values().iterator();
+
+			while(it.hasNext() && statements.size() > settings.getStatementCacheSize()) {
+				CachedStatement cached = it.next();
+
+				if(!cached.inUse) {
+					it.remove();
+					cached.closePhysical();
+				}
+			}
+
+		}
+
+		// Called when the connection goes back to the pool. Statements the borrower forgot to close become free again.
+		private void resetStatements() {
+
+			for(CachedStatement cached : statements.values()) {
+				if(cached.inUse) {
+					cached.reset();
+				}
+			}
+
+		}
+
+		// Called once the borrower's writes are durable
+		private void recordWrite() {
+
+			if(wrote) {
+				wrote = false;
+				lastWriteAt = System.currentTimeMillis();
+			}
+
+		}
+
+		// A fresh proxy per borrow so a stale reference cannot use or return the connection twice
+		private Connection newHandle() {
+			return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+					new Handle(this));
+		}
+
+	}
+
+
+	// Cache key: the SQL text plus whether generated keys were requested
+	private static class StatementKey {
+
+		private final String sql;
+		private final int autoGeneratedKeys;
+
+		private StatementKey(String sql, int autoGeneratedKeys) {
+			this.sql = sql;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+		}
+
+		@Override
+		public int hashCode() {
+			return sql.hashCode() * 31 + autoGeneratedKeys;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof StatementKey)) {
+				return false;
+			}
+
+			StatementKey other = (StatementKey)obj;
+			return autoGeneratedKeys == other.autoGeneratedKeys && sql.equals(other.sql);
+		}
+
+	}
+
+
+	// Wraps a statement that is not cached so its executions are timed like cached ones
+	private PreparedStatement traced(PooledEntry entry, PreparedStatement stmt, String sql) {
+		return (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+				new Class<?>[] {PreparedStatement.class}, new TracedStatement(entry, stmt, sql));
+	}
+
+
+	/*
+	 * Times every execute call and remembers the bind values of the current execution, so a statement slower than the
+	 * slow query threshold can be logged with its parameters. Bind values are kept by reference in an array that is reused
+	 * between executions; nothing is formatted unless the statement is slow. Only the time until execute returns is
+	 * measured - rows read afterwards from a streaming result set are not included. Executing anything but a SELECT marks
+	 * the connection as having written, for getLastWriteAt.
+	 */
+	private class TracedStatement implements InvocationHandler {
+
+		protected final PooledEntry entry;
+		protected final PreparedStatement physical;
+		private final String sql;
+		private final boolean write;
+		private Object[] binds = new Object[8];
+		private int bindCount;
+
+		private TracedStatement(PooledEntry entry, PreparedStatement physical, String sql) {
+			this.entry = entry;
+			this.physical = physical;
+			this.sql = sql;
+			this.write = !sql.stripLeading().regionMatches(true, 0, "SELECT", 0, 6);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+			String name = method.getName();
+
+			switch(name) {
+
+				case "equals":
+					return proxy == args[0];
+
+				case "hashCode":
+					return System.identityHashCode(proxy);
+
+				case "clearParameters":
+					clearBinds();
+					break;
+
+				default:
+					if(name.startsWith("execute")) {
+						return execute(method, args);
+					}
+
+					if(name.startsWith("set") && Objects.nonNull(args) && args.length >= 2 && args[0] instanceof Integer) {
+						bind((Integer)args[0], name.equals("setNull") ? null : args[1]);
+					}
+			}
+
+			return invokePhysical(physical, method, args);
+
+		}
+
+		protected void clearBinds() {
+			Arrays.fill(binds, 0, bindCount, null);
+			bindCount = 0;
+		}
+
+		private void bind(int parameterIndex, Object value) {
+
+			if(parameterIndex > binds.length) {
+				binds = Arrays.copyOf(binds, Math.max(parameterIndex, binds.length * 2));
+			}
+
+			binds[parameterIndex - 1] = value;
+			bindCount = Math.max(bindCount, parameterIndex);
+
+		}
+
+		private Object execute(Method method, Object[] args) throws Throwable {
+
+			long start = System.nanoTime();
+			entry.wrote |= write;
+
+			try {
+				return invokePhysical(physical, method, args);
+			} catch(Throwable e) {
+				DaoMetrics.STATEMENT.recordError();
+				throw e;
+			} finally {
+				long elapsed = System.nanoTime() - start;
+				DaoMetrics.STATEMENT.record(start);
+
+				long threshold = settings.getSlowQueryThresholdMillis();
+
+				if(threshold > 0 && elapsed >= TimeUnit.MILLISECONDS.toNanos(threshold)) {
+					DaoMetrics.slowQuery(sql, binds, bindCount, elapsed);
+				}
+			}
+
+		}
+
+	}
+
+
+	// A prepared statement that stays open between uses. Closing the proxy clears its parameters and marks it free.
+	private class CachedStatement extends TracedStatement {
+
+		private final StatementKey key;
+		private final PreparedStatement proxy;
+		private boolean inUse = true;
+
+		private CachedStatement(PooledEntry entry, StatementKey key, PreparedStatement physical) {
+			super(entry, physical, key.sql);
+			this.key = key;
+			this.proxy = (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] {PreparedStatement.class}, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+			switch(method.getName()) {
+
+				case "close":
+					if(inUse) {
+						reset();
+					}
+					return null;
+
+				case "isClosed":
+					return !inUse || physical.isClosed();
+
+				case "toString":
+					return "Cached" + physical;
+
+				default:
+					if(!inUse) {
+						throw new SQLException("Statement has been closed");
+					}
+			}
+
+			return super.invoke(proxy, method, args);
+
+		}
+
+		// Make the statement ready for the next caller, or drop it from the cache if that fails
+		private void reset() {
+
+			inUse = false;
+			clearBinds();
+
+			try {
+				physical.clearParameters();
+				physical.clearBatch();
+				physical.clearWarnings();
+			} catch(SQLException e) {
+				entry.statements.remove(key);
+				closePhysical();
+			}
+
+		}
+
+		private void closePhysical() {
+
+			try {
+				physical.close();
+			} catch(SQLException e) {
+				// Statement is being discarded anyway
+			}
+
+		}
+
+	}
+
+
+	// Forwards calls to the physical connection; close() returns it to the pool
+	private class Handle implements InvocationHandler {
+
+		private final PooledEntry entry;
+		private boolean returned;
+
+		private Handle(PooledEntry entry) {
+			this.entry = entry;
+		}
+
+		private PoolSettings getPoolSettings() {
+			return settings;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+			switch(method.getName()) {
+
+				case "close":
+					if(!returned) {
+						returned = true;
+						release(entry);
+					}
+					return null;
+
+				case "isClosed":
+					return returned || entry.physical.isClosed();
+
+				case "equals":
+					return proxy == args[0];
+
+				case "hashCode":
+					return System.identityHashCode(proxy);
+
+				case "toString":
+					return "Pooled" + entry.physical;
+
+				default:
+					break;
+			}
+
+			if(returned) {
+				throw new SQLException("Connection has already been returned to the pool");
+			}
+
+			if(method.getName().equals("setTransactionIsolation") || method.getName().equals("setReadOnly")) {
+				if(entry.defaultIsolation < 0) {
+					entry.defaultIsolation = entry.physical.getTransactionIsolation();
+				}
+
+				entry.sessionChanged = true;
+			}
+
+			if(method.getName().equals("prepareStatement")) {
+				return isCacheable(args) ? entry.prepareCached(method, args)
+						: traced(entry, (PreparedStatement)invokePhysical(entry.physical, method, args), (String)args[0]);
+			}
+
+			Object result = invokePhysical(entry.physical, method, args);
+
+			if(method.getName().equals("commit")) {
+				entry.recordWrite();
+			} else if(method.getName().equals("rollback") && Objects.isNull(args)) {
+				entry.wrote = false;
+			}
+
+			return result;
+
+		}
+
+
+		// Only prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys) are cached. Other variants (scrollable or
+		// cursor-fetched result sets, key column lists) are rare and carry state that would leak into the next user.
+		private boolean isCacheable(Object[] args) {
+			return settings.getStatementCacheSize() > 0 && (args.length == 1 || (args.length == 2 && args[1] instanceof Integer));
+		}
+
+	}
+
+}
@@ -0,0 +1,252 @@
+package projects.dao;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import projects.exception.DbException;
+import provided.util.DaoBase;
+import provided.util.LatencyHistogram;
+import provided.util.RowMapper;
+
+/*
+ * Latency histograms and error counts for connection borrows, DAO methods, and JDBC statements, plus a log of slow
+ * statements with their bind values. Timers are created once as constants; recording only bumps counters, so the hot
+ * path does not allocate. Read the numbers with dump() or over JMX after registerMBean().
+ */
+public class DaoMetrics {
+
+	private static final String OBJECT_NAME = "projects:type=DaoMetrics";
+	private static final int SLOW_QUERY_HISTORY = 50;								// Most recent slow statements kept for dump() and JMX
+
+	private static final List<Timer> TIMERS = new CopyOnWriteArrayList<>();		// Registration order, which is the dump order
+	private static final ArrayDeque<String> recentSlowQueries = new ArrayDeque<>(SLOW_QUERY_HISTORY);
+	private static final LongAdder slowQueryCount = new LongAdder();
+
+	public static final Timer CONNECTION = timer("DbConnection.getConnection");
+	public static final Timer STATEMENT = timer("JDBC execute");					// Every statement execution, from any DAO
+
+	private static boolean registered;
+
+	private DaoMetrics() {
+	}
+
+
+	// Creates a named timer. Call once per operation and keep the result in a constant.
+	public static Timer timer(String name) {
+		Timer timer = new Timer(name);
+		TIMERS.add(timer);
+		return timer;
+	}
+
+
+	public static List<OperationStats> getOperations() {
+		List<OperationStats> operations = new ArrayList<>(TIMERS.size() + 1);
+
+		for(Timer timer : TIMERS) {
+			operations.add(timer.snapshot());
+		}
+
+		operations.add(new OperationStats("DaoBase.extract", DaoBase.getExtractLatency(), 0));
+		return operations;
+	}
+
+
+	public static long getRowsMapped() {
+		return RowMapper.getRowsMapped();
+	}
+
+
+	public static long getSlowQueryCount() {
+		return slowQueryCount.sum();
+	}
+
+
+	public static List<String> getRecentSlowQueries() {
+		synchronized(recentSlowQueries) {
+			return new ArrayList<>(recentSlowQueries);
+		}
+	}
+
+
+	// Called by the connection pool when a statement ran longer than the slow query threshold. Only this path allocates.
+	static void slowQuery(String sql, Object[] binds, int bindCount, long nanos) {
+
+		StringBuilder entry = new StringBuilder(sql.length() + 64);
+		entry.append(String.format("Slow query (%.1f ms): ", nanos / 1_000_000.0)).append(sql.replaceAll("\\s+", " ").trim());
+
+		if(bindCount > 0) {
+			entry.append(" [");
+
+			for(int index = 0; index < bindCount; index++) {
+				entry.append(index == 0 ? "" : ", ").append(index + 1).append('=').append(formatBind(binds[index]));
+			}
+
+			entry.append(']');
+		}
+
+		String message = entry.toString();
+		slowQueryCount.increment();
+
+		synchronized(recentSlowQueries) {
+			if(recentSlowQueries.size() == SLOW_QUERY_HISTORY) {
+				recentSlowQueries.removeFirst();
+			}
+
+			recentSlowQueries.addLast(message);
+		}
+
+		System.out.println(message);
+
+	}
+
+
+	// Text table of every timer plus row and slow query counts
+	public static String dump() {
+
+		StringBuilder out = new StringBuilder();
+		out.append(String.format("%-40s %9s %7s %10s %10s %10s %10s %10s %10s%n", "operation (us)", "count", "errors", "mean",
+				"p50", "p90", "p99", "p99.9", "max"));
+
+		for(OperationStats operation : getOperations()) {
+			if(operation.getCount() > 0 || operation.getErrors() > 0) {
+				out.append(operation).append(System.lineSeparator());
+			}
+		}
+
+		out.append("Rows mapped: ").append(getRowsMapped()).append(System.lineSeparator());
+		out.append("Slow queries: ").append(getSlowQueryCount()).append(System.lineSeparator());
+
+		for(String slowQuery : getRecentSlowQueries()) {
+			out.append("   ").append(slowQuery).append(System.lineSeparator());
+		}
+
+		return out.toString();
+
+	}
+
+
+	public static void reset() {
+
+		for(Timer timer : TIMERS) {
+			timer.reset();
+		}
+
+		DaoBase.getExtractLatency().reset();
+		slowQueryCount.reset();
+
+		synchronized(recentSlowQueries) {
+			recentSlowQueries.clear();
+		}
+
+	}
+
+
+	// Publishes the metrics to the platform MBean server. Calling it again does nothing.
+	public static synchronized void registerMBean() {
+
+		if(registered) {
+			return;
+		}
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(new MXBean(), new ObjectName(OBJECT_NAME));
+			registered = true;
+		} catch(JMException e) {
+			throw new DbException(e);
+		}
+
+	}
+
+
+	// Strings are quoted and cut short so a large notes field does not flood the log
+	private static String formatBind(Object value) {
+
+		if(!(value instanceof CharSequence)) {
+			return String.valueOf(value);
+		}
+
+		String text = value.toString();
+		return "'" + (text.length() > 100 ? text.substring(0, 100) + "..." : text) + "'";
+
+	}
+
+
+	// Latency and error counts for one operation
+	public static class Timer {
+
+		private final String name;
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final LongAdder errors = new LongAdder();
+
+		private Timer(String name) {
+			this.name = name;
+		}
+
+		// Records the time since start, a System.nanoTime() value taken when the operation began
+		public void record(long start) {
+			latency.record(System.nanoTime() - start);
+		}
+
+		public void recordError() {
+			errors.increment();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public OperationStats snapshot() {
+			return new OperationStats(name, latency, errors.sum());
+		}
+
+		private void reset() {
+			latency.reset();
+			errors.reset();
+		}
+
+	}
+
+
+	private static class MXBean implements DaoMetricsMXBean {
+
+		@Override
+		public List<OperationStats> getOperations() {
+			return DaoMetrics.getOperations();
+		}
+
+		@Override
+		public long getRowsMapped() {
+			return DaoMetrics.getRowsMapped();
+		}
+
+		@Override
+		public long getSlowQueryCount() {
+			return DaoMetrics.getSlowQueryCount();
+		}
+
+		@Override
+		public List<String> getRecentSlowQueries() {
+			return DaoMetrics.getRecentSlowQueries();
+		}
+
+		@Override
+		public String dump() {
+			return DaoMetrics.dump();
+		}
+
+		@Override
+		public void reset() {
+			DaoMetrics.reset();
+		}
+
+	}
+
+}
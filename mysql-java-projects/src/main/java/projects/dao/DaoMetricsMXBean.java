@@ -0,0 +1,20 @@
+package projects.dao;
+
+import java.util.List;
+
+// JMX view of DaoMetrics, registered as projects:type=DaoMetrics
+public interface DaoMetricsMXBean {
+
+	List<OperationStats> getOperations();
+
+	long getRowsMapped();
+
+	long getSlowQueryCount();
+
+	List<String> getRecentSlowQueries();
+
+	String dump();
+
+	void reset();
+
+}
@@ -1,34 +1,229 @@
 package projects.dao;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
-
-import projects.exception.DbException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 
 public class DbConnection {
+	public static final String SHARDS_PROPERTY = "projects.shards";				// JDBC URLs of the shards, separated by spaces
 	private static final String SCHEMA = "projects";
 	private static final String USER = "projects";
 	private static final String PASSWORD = "projects";
 	private static final String HOST = "localhost";
 	private static final int PORT = 3306;
 
+	private static final DaoMetrics.Timer READ_CONNECTION = DaoMetrics.timer("DbConnection.getReadConnection");
+
+	private static volatile ConnectionPool pool;
+	private static volatile ReadRouter router;										// Null unless read replicas are configured
+	private static volatile ShardRouter shards;										// Null unless the data is sharded
+
+	/*
+	 * Connections come from a shared pool. Closing the returned connection hands it back to the pool. Inside a UnitOfWork
+	 * every call gets the unit's connection instead, so the calls share one transaction. Inside ShardRouter.onShard the
+	 * connection comes from that shard. Borrow time, including any wait for a free connection, is recorded in
+	 * DaoMetrics.CONNECTION.
+	 */
 	public static Connection getConnection() {
-		String url = String.format("jdbc:mysql://%s:%d/%s?user=%s&password=%s&useSSL=false", HOST, PORT, SCHEMA, USER, PASSWORD);
-	
-//		System.out.println("Connecting with url=" + url);
-		
+		Connection shared = UnitOfWork.currentConnection();
+
+		if(Objects.nonNull(shared)) {
+			return shared;
+		}
+
+		ConnectionPool shard = ShardRouter.currentPool();
+		long start = System.nanoTime();
+
+		try {
+			return Objects.isNull(shard) ? getPool().borrow() : shard.borrow();
+		} catch(RuntimeException e) {
+			DaoMetrics.CONNECTION.recordError();
+			throw e;
+		} finally {
+			DaoMetrics.CONNECTION.record(start);
+		}
+	}
+
+
+	/*
+	 * A connection for queries that only read. With read replicas configured it comes from a replica, unless the primary
+	 * took a write within the read-your-writes window or no replica is reachable; otherwise it is the same as
+	 * getConnection(). Inside a UnitOfWork it is the unit's connection, so a read-write unit reads its own changes. Shards
+	 * have no replicas, so inside ShardRouter.onShard this is also getConnection().
+	 */
+	public static Connection getReadConnection() {
+		Connection shared = UnitOfWork.currentConnection();
+
+		if(Objects.nonNull(shared)) {
+			return shared;
+		}
+
+		ReadRouter current = router;
+
+		if(Objects.isNull(current) || Objects.nonNull(ShardRouter.currentPool())) {
+			return getConnection();
+		}
+
+		long start = System.nanoTime();
+
 		try {
-			Connection conn = DriverManager.getConnection(url);
-			System.out.println("Successfully obtained connection");
-			return conn;
-		} catch (SQLException e) {
-			System.out.println("Error getting connection");
-			throw new DbException(e);
+			return current.borrowRead();
+		} catch(RuntimeException e) {
+			READ_CONNECTION.recordError();
+			throw e;
+		} finally {
+			READ_CONNECTION.record(start);
+		}
+	}
+
+
+	// Replace the pool with one built from the given settings. Existing idle connections are closed, as are any replicas or shards.
+	public static synchronized void configure(PoolSettings settings) {
+		ConnectionPool old = pool;
+		pool = new ConnectionPool(settings);
+
+		if(Objects.nonNull(old)) {
+			old.close();
+		}
+
+		closeRouter();
+		closeShards();
+	}
+
+
+	// Splits the data across the given databases. The first one is the home shard, which also serves unsharded calls.
+	public static synchronized void configureShards(List<PoolSettings> shardSettings) {
+		ShardRouter next = new ShardRouter(shardSettings);
+		ConnectionPool old = pool;
+
+		closeRouter();
+		closeShards();
+
+		shards = next;
+		pool = next.getHomePool();
+
+		if(Objects.nonNull(old)) {
+			old.close();
+		}
+	}
+
+
+	/*
+	 * Shards the data across the databases named in the projects.shards system property, if it is set. The first URL is the
+	 * home shard. Each shard gets the driver options of the default settings. Entry points call this before any other use:
+	 *
+	 *   java -Dprojects.shards="jdbc:mysql://db0:3306/projects?user=projects&password=projects
+	 *       jdbc:mysql://db1:3306/projects?user=projects&password=projects" projects.ProjectsApp
+	 */
+	public static void configureShardsFromProperty() {
+		String urls = System.getProperty(SHARDS_PROPERTY, "").trim();
+
+		if(urls.isEmpty()) {
+			return;
+		}
+
+		List<PoolSettings> shardSettings = new ArrayList<>();
+
+		for(String url : urls.split("\\s+")) {
+			shardSettings.add(new PoolSettings().setJdbcUrl(url).copyDriverOptions(defaultSettings()));
+		}
+
+		configureShards(shardSettings);
+	}
+
+
+	public static Optional<ShardRouter> getShardRouter() {
+		return Optional.ofNullable(shards);
+	}
+
+
+	// Same as configure(settings), then routes getReadConnection() to the given replicas
+	public static synchronized void configure(PoolSettings settings, ReplicaSettings replicas) {
+		configure(settings);
+		router = new ReadRouter(pool, replicas);
+	}
+
+
+	// Replica routing counters, if read replicas are configured
+	public static Optional<ReadRouter> getReadRouter() {
+		return Optional.ofNullable(router);
+	}
+
+
+	// True when several queries can be sent over this connection in one round trip and read back as multiple result sets.
+	// Decided by the pool that lent it, since a replica or shard may be set up differently from the primary.
+	public static boolean isMultiStatementEnabled(Connection conn) {
+		PoolSettings settings = ConnectionPool.settingsOf(conn);
+		return Objects.nonNull(settings) && settings.isMultiStatements();
+	}
+
+
+	// Settings of the active pool, e.g. to size other limits to the number of connections
+	public static PoolSettings getPoolSettings() {
+		return getPool().getSettings();
+	}
+
+
+	public static PoolMetrics getPoolMetrics() {
+		return getPool().getMetrics();
+	}
+
+
+	public static synchronized void shutdown() {
+		if(Objects.nonNull(pool)) {
+			pool.close();
+			pool = null;
 		}
 
-		
-	
+		closeRouter();
+		closeShards();
+	}
+
+
+	// Default settings point at the local projects schema
+	public static PoolSettings defaultSettings() {
+		// allowMultiQueries: aggregate loads in one round trip. useCursorFetch: streaming reads. rewriteBatchedStatements: bulk inserts.
+		String url = String.format("jdbc:mysql://%s:%d/%s?user=%s&password=%s&useSSL=false"
+				+ "&allowMultiQueries=true&useCursorFetch=true&rewriteBatchedStatements=true", HOST, PORT, SCHEMA, USER, PASSWORD);
+
+//		System.out.println("Connecting with url=" + url);
+
+		return new PoolSettings().setJdbcUrl(url).setMultiStatements(true).setServerPreparedStatements(true);
+	}
+
+
+	private static void closeRouter() {
+		if(Objects.nonNull(router)) {
+			router.close();
+			router = null;
+		}
+	}
+
+
+	private static void closeShards() {
+		if(Objects.nonNull(shards)) {
+			shards.close();
+			shards = null;
+		}
+	}
+
+
+	private static ConnectionPool getPool() {
+		ConnectionPool current = pool;
+
+		if(Objects.nonNull(current)) {
+			return current;														// Fast path - no locking once the pool exists
+		}
+
+		synchronized(DbConnection.class) {
+			if(Objects.isNull(pool)) {
+				pool = new ConnectionPool(defaultSettings());					// Created on first use so nothing connects until needed
+			}
+
+			return pool;
+		}
 	}
 
 }
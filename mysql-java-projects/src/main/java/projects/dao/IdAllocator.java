@@ -0,0 +1,101 @@
+package projects.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import projects.exception.DbException;
+import provided.util.DaoBase;
+
+/*
+ * Hands out IDs that are unique across all shards, so rows are inserted with their final ID instead of relying on each
+ * node's AUTO_INCREMENT. IDs are reserved from a row of the id_sequence table on the home shard in blocks (hi/lo): one
+ * short transaction per block, then every ID in the block comes from memory. IDs are unique but only roughly ordered
+ * across processes, and IDs left in a block when the process stops are never used.
+ */
+public class IdAllocator extends DaoBase {
+
+	private static final String LOCK_SEQUENCE_SQL = "SELECT next_value FROM id_sequence WHERE sequence_name = ? FOR UPDATE";
+	private static final String ADVANCE_SEQUENCE_SQL = "UPDATE id_sequence SET next_value = ? WHERE sequence_name = ?";
+
+	private final ConnectionPool pool;
+	private final String sequenceName;
+	private final int blockSize;
+	private final ReentrantLock lock = new ReentrantLock();						// Not synchronized: a virtual thread waiting on the database inside a monitor pins its carrier
+	private int next;															// Next ID to hand out
+	private int limit;															// First ID past the current block
+
+	IdAllocator(ConnectionPool pool, String sequenceName, int blockSize) {
+		this.pool = pool;
+		this.sequenceName = sequenceName;
+		this.blockSize = blockSize;
+	}
+
+
+	public int nextId() {
+
+		lock.lock();
+
+		try {
+			if(next >= limit) {
+				reserveBlock();
+			}
+
+			return next++;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+
+	// Borrowed straight from the pool, not through DbConnection, so a reserved block commits even if the caller's unit of
+	// work rolls back. Otherwise two processes could be handed the same block.
+	private void reserveBlock() {
+
+		try(Connection conn = pool.borrow()) {
+
+			startTransaction(conn);
+
+			try {
+				int first;
+
+				try(PreparedStatement stmt = conn.prepareStatement(LOCK_SEQUENCE_SQL)) {
+					setParameter(stmt, 1, sequenceName, String.class);
+
+					try(ResultSet rs = stmt.executeQuery()) {
+						if(!rs.next()) {
+							throw new DbException("No id_sequence row named " + sequenceName);
+						}
+
+						first = rs.getInt(1);
+					}
+				}
+
+				try(PreparedStatement stmt = conn.prepareStatement(ADVANCE_SEQUENCE_SQL)) {
+					setParameter(stmt, 1, Math.addExact(first, blockSize), Integer.class);
+					setParameter(stmt, 2, sequenceName, String.class);
+					stmt.executeUpdate();
+				}
+
+				commitTransaction(conn);
+				next = first;
+				limit = first + blockSize;
+
+			} catch(DbException e) {
+				rollbackTransaction(conn);
+				throw e;
+			} catch(Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}
+
+		} catch(SQLException e) {
+			throw new DbException(e);
+		}
+
+	}
+
+}
@@ -0,0 +1,72 @@
+package projects.dao;
+
+import provided.util.LatencyHistogram;
+
+// Point-in-time snapshot of one DaoMetrics timer. Latencies are in microseconds.
+public class OperationStats {
+
+	private final String name;
+	private final long count;
+	private final long errors;
+	private final double meanMicros;
+	private final double p50Micros;
+	private final double p90Micros;
+	private final double p99Micros;
+	private final double p999Micros;
+	private final double maxMicros;
+
+	public OperationStats(String name, LatencyHistogram latency, long errors) {
+		this.name = name;
+		this.count = latency.getCount();
+		this.errors = errors;
+		this.meanMicros = latency.getMean() / 1_000.0;
+		this.p50Micros = latency.getValueAtPercentile(50.0) / 1_000.0;
+		this.p90Micros = latency.getValueAtPercentile(90.0) / 1_000.0;
+		this.p99Micros = latency.getValueAtPercentile(99.0) / 1_000.0;
+		this.p999Micros = latency.getValueAtPercentile(99.9) / 1_000.0;
+		this.maxMicros = latency.getMax() / 1_000.0;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	public double getMeanMicros() {
+		return meanMicros;
+	}
+
+	public double getP50Micros() {
+		return p50Micros;
+	}
+
+	public double getP90Micros() {
+		return p90Micros;
+	}
+
+	public double getP99Micros() {
+		return p99Micros;
+	}
+
+	public double getP999Micros() {
+		return p999Micros;
+	}
+
+	public double getMaxMicros() {
+		return maxMicros;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-40s %9d %7d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f", name, count, errors, meanMicros,
+				p50Micros, p90Micros, p99Micros, p999Micros, maxMicros);
+	}
+
+}
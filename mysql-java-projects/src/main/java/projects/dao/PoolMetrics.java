@@ -0,0 +1,106 @@
+package projects.dao;
+
+// Point-in-time snapshot of ConnectionPool counters
+public class PoolMetrics {
+
+	private final int active;
+	private final int idle;
+	private final int total;
+	private final long borrowCount;
+	private final long totalWaitNanos;
+	private final long maxWaitNanos;
+	private final long timeouts;
+	private final long created;
+	private final long destroyed;
+	private final long validationFailures;
+	private final long leaksDetected;
+	private final long statementCacheHits;
+	private final long statementCacheMisses;
+
+	public PoolMetrics(int active, int idle, int total, long borrowCount, long totalWaitNanos, long maxWaitNanos,
+			long timeouts, long created, long destroyed, long validationFailures, long leaksDetected, long statementCacheHits,
+			long statementCacheMisses) {
+		this.active = active;
+		this.idle = idle;
+		this.total = total;
+		this.borrowCount = borrowCount;
+		this.totalWaitNanos = totalWaitNanos;
+		this.maxWaitNanos = maxWaitNanos;
+		this.timeouts = timeouts;
+		this.created = created;
+		this.destroyed = destroyed;
+		this.validationFailures = validationFailures;
+		this.leaksDetected = leaksDetected;
+		this.statementCacheHits = statementCacheHits;
+		this.statementCacheMisses = statementCacheMisses;
+	}
+
+	public int getActive() {
+		return active;
+	}
+
+	public int getIdle() {
+		return idle;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public long getBorrowCount() {
+		return borrowCount;
+	}
+
+	public double getAverageWaitMillis() {
+		return borrowCount == 0 ? 0 : totalWaitNanos / 1_000_000.0 / borrowCount;
+	}
+
+	public double getMaxWaitMillis() {
+		return maxWaitNanos / 1_000_000.0;
+	}
+
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	public long getDestroyed() {
+		return destroyed;
+	}
+
+	public long getValidationFailures() {
+		return validationFailures;
+	}
+
+	public long getLeaksDetected() {
+		return leaksDetected;
+	}
+
+	// Prepared statements reused from the per-connection cache
+	public long getStatementCacheHits() {
+		return statementCacheHits;
+	}
+
+	// Prepared statements that had to be prepared by the driver
+	public long getStatementCacheMisses() {
+		return statementCacheMisses;
+	}
+
+	public double getStatementCacheHitRate() {
+		long prepares = statementCacheHits + statementCacheMisses;
+		return prepares == 0 ? 0 : (double)statementCacheHits / prepares;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("active=%d, idle=%d, total=%d, borrows=%d, avgWaitMs=%.3f, maxWaitMs=%.3f, timeouts=%d, "
+				+ "created=%d, destroyed=%d, validationFailures=%d, leaks=%d, statementHits=%d, statementMisses=%d, "
+				+ "statementHitRate=%.3f", active, idle, total, borrowCount, getAverageWaitMillis(), getMaxWaitMillis(), timeouts,
+				created, destroyed, validationFailures, leaksDetected, statementCacheHits, statementCacheMisses,
+				getStatementCacheHitRate());
+	}
+
+}
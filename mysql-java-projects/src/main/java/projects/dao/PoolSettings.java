@@ -0,0 +1,189 @@
+package projects.dao;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Tunable settings for ConnectionPool. Defaults suit the single-user console app; servers should raise maxSize.
+public class PoolSettings {
+
+	private static final String MYSQL_URL_PREFIX = "jdbc:mysql:";
+	private static final List<String> DRIVER_URL_OPTIONS = List.of("allowMultiQueries", "useCursorFetch", "rewriteBatchedStatements");
+
+	private String jdbcUrl;
+	private int minSize = 2;										// Connections kept open even when idle
+	private int maxSize = 10;										// Hard upper bound on open connections
+	private long idleTimeoutMillis = 10 * 60 * 1000;				// Idle connections above minSize are closed after this long
+	private long borrowTimeoutMillis = 30 * 1000;					// How long a caller waits for a free connection before failing
+	private boolean validateOnBorrow = true;						// Check idle connections with Connection.isValid before handing them out
+	private int validationTimeoutSeconds = 2;
+	private long validationBypassMillis = 500;						// Skip validation for connections returned within this window
+	private long leakDetectionThresholdMillis = 60 * 1000;			// Report connections held longer than this (0 disables)
+	private long housekeepingIntervalMillis = 30 * 1000;			// How often idle eviction and leak detection run
+	private int statementCacheSize = 64;							// Prepared statements kept open per connection (0 disables)
+	private boolean serverPreparedStatements;						// Ask the MySQL driver for server-side prepare (useServerPrepStmts, cachePrepStmts)
+	private boolean multiStatements;								// The URL lets one statement carry several queries (allowMultiQueries)
+	private long slowQueryThresholdMillis = 500;					// Statements running longer are logged with their bind values (0 disables)
+
+	public String getJdbcUrl() {
+		return jdbcUrl;
+	}
+
+	public PoolSettings setJdbcUrl(String jdbcUrl) {
+		this.jdbcUrl = jdbcUrl;
+		return this;
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public PoolSettings setMinSize(int minSize) {
+		this.minSize = minSize;
+		return this;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public PoolSettings setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		return this;
+	}
+
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	public PoolSettings setIdleTimeoutMillis(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		return this;
+	}
+
+	public long getBorrowTimeoutMillis() {
+		return borrowTimeoutMillis;
+	}
+
+	public PoolSettings setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		return this;
+	}
+
+	public boolean isValidateOnBorrow() {
+		return validateOnBorrow;
+	}
+
+	public PoolSettings setValidateOnBorrow(boolean validateOnBorrow) {
+		this.validateOnBorrow = validateOnBorrow;
+		return this;
+	}
+
+	public int getValidationTimeoutSeconds() {
+		return validationTimeoutSeconds;
+	}
+
+	public PoolSettings setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+		return this;
+	}
+
+	public long getValidationBypassMillis() {
+		return validationBypassMillis;
+	}
+
+	public PoolSettings setValidationBypassMillis(long validationBypassMillis) {
+		this.validationBypassMillis = validationBypassMillis;
+		return this;
+	}
+
+	public long getLeakDetectionThresholdMillis() {
+		return leakDetectionThresholdMillis;
+	}
+
+	public PoolSettings setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis) {
+		this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+		return this;
+	}
+
+	public long getHousekeepingIntervalMillis() {
+		return housekeepingIntervalMillis;
+	}
+
+	public PoolSettings setHousekeepingIntervalMillis(long housekeepingIntervalMillis) {
+		this.housekeepingIntervalMillis = housekeepingIntervalMillis;
+		return this;
+	}
+
+	public boolean isMultiStatements() {
+		return multiStatements;
+	}
+
+	public PoolSettings setMultiStatements(boolean multiStatements) {
+		this.multiStatements = multiStatements;
+		return this;
+	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	public PoolSettings setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+		return this;
+	}
+
+	public boolean isServerPreparedStatements() {
+		return serverPreparedStatements;
+	}
+
+	public PoolSettings setServerPreparedStatements(boolean serverPreparedStatements) {
+		this.serverPreparedStatements = serverPreparedStatements;
+		return this;
+	}
+
+	/*
+	 * Takes the driver options the DAOs depend on from another pool's settings: the multiStatements and
+	 * serverPreparedStatements flags, and the allowMultiQueries, useCursorFetch and rewriteBatchedStatements URL
+	 * parameters when that URL sets them and this one does not. Used to give read replicas the primary's options. The
+	 * options belong to the MySQL driver, so nothing is copied unless both URLs are MySQL URLs.
+	 */
+	public PoolSettings copyDriverOptions(PoolSettings from) {
+
+		if(!jdbcUrl.startsWith(MYSQL_URL_PREFIX) || !from.getJdbcUrl().startsWith(MYSQL_URL_PREFIX)) {
+			return this;
+		}
+
+		serverPreparedStatements = from.isServerPreparedStatements();
+
+		for(String option : DRIVER_URL_OPTIONS) {
+			Matcher source = urlOption(option).matcher(from.getJdbcUrl());
+
+			if(source.find() && !urlOption(option).matcher(jdbcUrl).find()) {
+				jdbcUrl += (jdbcUrl.indexOf('?') < 0 ? "?" : "&") + option + "=" + source.group(1);
+			}
+		}
+
+		Matcher allowMultiQueries = urlOption("allowMultiQueries").matcher(jdbcUrl);
+		multiStatements = from.isMultiStatements() && allowMultiQueries.find() && allowMultiQueries.group(1).equals("true");	// A URL that turns it off wins
+
+		return this;
+
+	}
+
+
+	private static Pattern urlOption(String option) {
+		return Pattern.compile("[?&;]" + option + "=([^&;]*)");
+	}
+
+
+	public long getSlowQueryThresholdMillis() {
+		return slowQueryThresholdMillis;
+	}
+
+	public PoolSettings setSlowQueryThresholdMillis(long slowQueryThresholdMillis) {
+		this.slowQueryThresholdMillis = slowQueryThresholdMillis;
+		return this;
+	}
+
+}
@@ -0,0 +1,24 @@
+package projects.dao;
+
+// Columns of the project table a caller can ask for when streaming projects. Fixed names keep the SQL safe to build.
+public enum ProjectColumn {
+
+	PROJECT_ID("project_id"),
+	PROJECT_NAME("project_name"),
+	ESTIMATED_HOURS("estimated_hours"),
+	ACTUAL_HOURS("actual_hours"),
+	DIFFICULTY("difficulty"),
+	NOTES("notes"),
+	VERSION("version");
+
+	private final String columnName;
+
+	private ProjectColumn(String columnName) {
+		this.columnName = columnName;
+	}
+
+	public String getColumnName() {
+		return columnName;
+	}
+
+}
@@ -3,13 +3,23 @@ package projects.dao;
 import java.math.BigDecimal;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import projects.entity.Category;
+import projects.entity.CategoryCount;
 import projects.entity.Material;
 import projects.entity.Project;
+import projects.entity.ProjectSearchResult;
 import projects.entity.Step;
+import projects.exception.BulkInsertException;
 import projects.exception.DbException;
+import projects.exception.StaleProjectException;
 import provided.util.DaoBase;
+import provided.util.RowMapper;
 
 public class ProjectDao extends DaoBase {
 
@@ -19,274 +29,1785 @@ public class ProjectDao extends DaoBase {
 	private static final String PROJECT_CATEGORY_TABLE  = "project_category";
 	private static final String STEP_TABLE  = "step";
 	
+	// @formatter:off
+	private static final String INSERT_PROJECT_SQL = ""
+			+ "INSERT INTO " + PROJECT_TABLE + " "
+			+ "(project_name, estimated_hours, actual_hours, difficulty, notes) "
+			+ "VALUES "
+			+ "(?, ?, ?, ?, ?)";
 	
-	// Switch case 1 - Allow user to add a project to the database and collect details for new project
+	private static final String INSERT_PROJECT_WITH_ID_SQL = ""				// For IDs handed out by a global allocator, e.g. when sharded
+			+ "INSERT INTO " + PROJECT_TABLE + " "
+			+ "(project_name, estimated_hours, actual_hours, difficulty, notes, project_id) "
+			+ "VALUES "
+			+ "(?, ?, ?, ?, ?, ?)";
+	
+	private static final String FETCH_ALL_PROJECTS_SQL = "SELECT * FROM " + PROJECT_TABLE + " ORDER BY project_name, project_id";
+	
+	private static final String FETCH_FIRST_PAGE_SQL = ""
+			+ "SELECT project_id, project_name FROM " + PROJECT_TABLE + " "		// Both columns are in the index, so no row lookups
+			+ "ORDER BY project_name, project_id "
+			+ "LIMIT ?";
+	
+	private static final String FETCH_NEXT_PAGE_SQL = ""
+			+ "SELECT project_id, project_name FROM " + PROJECT_TABLE + " "
+			+ "WHERE (project_name, project_id) > (?, ?) "
+			+ "ORDER BY project_name, project_id "
+			+ "LIMIT ?";
+	
+	private static final String FETCH_PROJECT_IDS_SQL = ""
+			+ "SELECT project_id FROM " + PROJECT_TABLE + " "
+			+ "WHERE project_id > ? "
+			+ "ORDER BY project_id "
+			+ "LIMIT ?";
+	
+	private static final String FETCH_FIRST_SUMMARY_PAGE_SQL = ""
+			+ "SELECT project_id, project_name, estimated_hours, actual_hours, difficulty FROM " + PROJECT_TABLE + " "
+			+ "ORDER BY project_name, project_id "
+			+ "LIMIT ?";
+	
+	private static final String FETCH_NEXT_SUMMARY_PAGE_SQL = ""
+			+ "SELECT project_id, project_name, estimated_hours, actual_hours, difficulty FROM " + PROJECT_TABLE + " "
+			+ "WHERE (project_name, project_id) > (?, ?) "
+			+ "ORDER BY project_name, project_id "
+			+ "LIMIT ?";
+	
+	// The same name-ordered queries with each name's collation sort key, for merging rows from several shards
+	private static final String FETCH_ALL_PROJECTS_KEYED_SQL = withNameKey(FETCH_ALL_PROJECTS_SQL);
+	private static final String FETCH_FIRST_PAGE_KEYED_SQL = withNameKey(FETCH_FIRST_PAGE_SQL);
+	private static final String FETCH_NEXT_PAGE_KEYED_SQL = withNameKey(FETCH_NEXT_PAGE_SQL);
+	private static final String FETCH_FIRST_SUMMARY_PAGE_KEYED_SQL = withNameKey(FETCH_FIRST_SUMMARY_PAGE_SQL);
+	private static final String FETCH_NEXT_SUMMARY_PAGE_KEYED_SQL = withNameKey(FETCH_NEXT_SUMMARY_PAGE_SQL);
+	
+	private static final String FETCH_VERSION_SQL = "SELECT version FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+	
+	private static final String DELETE_PROJECT_SQL = "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+	
+	private static final String SEARCH_PROJECTS_SQL = ""
+			+ "SELECT p.project_id, p.project_name, SUM(hit.score) AS score FROM ("
+			+ "(SELECT project_id, 2 * MATCH(project_name, notes) AGAINST (? IN BOOLEAN MODE) AS score "
+			+ "FROM " + PROJECT_TABLE + " WHERE MATCH(project_name, notes) AGAINST (? IN BOOLEAN MODE) "
+			+ "ORDER BY score DESC LIMIT ?) "
+			+ "UNION ALL "
+			+ "(SELECT project_id, MATCH(step_text) AGAINST (? IN BOOLEAN MODE) AS score "
+			+ "FROM " + STEP_TABLE + " WHERE MATCH(step_text) AGAINST (? IN BOOLEAN MODE) "
+			+ "ORDER BY score DESC LIMIT ?) "
+			+ "UNION ALL "
+			+ "(SELECT project_id, MATCH(material_name) AGAINST (? IN BOOLEAN MODE) AS score "
+			+ "FROM " + MATERIAL_TABLE + " WHERE MATCH(material_name) AGAINST (? IN BOOLEAN MODE) "
+			+ "ORDER BY score DESC LIMIT ?)"
+			+ ") hit "
+			+ "JOIN " + PROJECT_TABLE + " p USING (project_id) "
+			+ "GROUP BY p.project_id, p.project_name "
+			+ "ORDER BY score DESC, p.project_name "
+			+ "LIMIT ?";
+	
+	private static final String FETCH_ALL_CATEGORIES_SQL = "SELECT * FROM " + CATEGORY_TABLE + " ORDER BY category_name";
+	
+	private static final String FETCH_CATEGORY_COUNTS_SQL = ""
+			+ "SELECT c.category_id, c.category_name, COUNT(pc.project_id) AS project_count "
+			+ "FROM " + CATEGORY_TABLE + " c "
+			+ "LEFT JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
+			+ "GROUP BY c.category_id, c.category_name "
+			+ "ORDER BY c.category_name";
+	
+	private static final String FETCH_ALL_ROLLUPS_SQL = ""
+			+ "SELECT p.project_id, p.estimated_hours, p.actual_hours, "
+			+ "COALESCE(m.material_count, 0) AS material_count, COALESCE(m.total_cost, 0) AS total_cost, "
+			+ "COALESCE(s.step_count, 0) AS step_count "
+			+ "FROM " + PROJECT_TABLE + " p "
+			+ "LEFT JOIN (SELECT project_id, COUNT(*) AS material_count, SUM(num_required * cost) AS total_cost "
+			+ "FROM " + MATERIAL_TABLE + " GROUP BY project_id) m USING (project_id) "
+			+ "LEFT JOIN (SELECT project_id, COUNT(*) AS step_count "
+			+ "FROM " + STEP_TABLE + " GROUP BY project_id) s USING (project_id)";
+	
+	private static final String FETCH_ROLLUP_SQL = ""
+			+ "SELECT p.project_id, p.estimated_hours, p.actual_hours, "
+			+ "(SELECT COUNT(*) FROM " + MATERIAL_TABLE + " m WHERE m.project_id = p.project_id) AS material_count, "
+			+ "(SELECT COALESCE(SUM(m.num_required * m.cost), 0) FROM " + MATERIAL_TABLE + " m "
+			+ "WHERE m.project_id = p.project_id) AS total_cost, "
+			+ "(SELECT COUNT(*) FROM " + STEP_TABLE + " s WHERE s.project_id = p.project_id) AS step_count "
+			+ "FROM " + PROJECT_TABLE + " p "
+			+ "WHERE p.project_id = ?";
+	
+	private static final String INSERT_MATERIAL_SQL = ""
+			+ "INSERT INTO " + MATERIAL_TABLE + " "
+			+ "(project_id, material_name, num_required, cost) "
+			+ "VALUES "
+			+ "(?, ?, ?, ?)";
+	
+	private static final String INSERT_STEP_SQL = ""
+			+ "INSERT INTO " + STEP_TABLE + " "
+			+ "(project_id, step_text, step_order) "
+			+ "VALUES "
+			+ "(?, ?, ?)";
+	
+	private static final String LOCK_PROJECT_SQL = "SELECT project_id FROM " + PROJECT_TABLE + " WHERE project_id = ? FOR UPDATE";
+	
+	private static final String FETCH_STEP_ORDER_SQL = ""
+			+ "SELECT step_order FROM " + STEP_TABLE + " WHERE step_id = ? AND project_id = ?";
+	
+	private static final String FETCH_LAST_STEP_ORDER_SQL = ""					// Reads one entry at the end of idx_step_project_order
+			+ "SELECT MAX(step_order) FROM " + STEP_TABLE + " WHERE project_id = ? AND step_id <> ?";
+	
+	private static final String FETCH_PREVIOUS_STEP_ORDER_SQL = ""
+			+ "SELECT MAX(step_order) FROM " + STEP_TABLE + " WHERE project_id = ? AND step_order < ? AND step_id <> ?";
+	
+	private static final String FETCH_STEP_IDS_IN_ORDER_SQL = ""
+			+ "SELECT step_id FROM " + STEP_TABLE + " WHERE project_id = ? ORDER BY step_order, step_id";
+	
+	private static final String UPDATE_STEP_ORDER_SQL = "UPDATE " + STEP_TABLE + " SET step_order = ? WHERE step_id = ?";
+	
+	private static final String DELETE_STEP_SQL = "DELETE FROM " + STEP_TABLE + " WHERE step_id = ? AND project_id = ?";
+	
+	private static final String INSERT_PROJECT_CATEGORY_SQL = ""
+			+ "INSERT INTO " + PROJECT_CATEGORY_TABLE + " "
+			+ "(project_id, category_id) "
+			+ "VALUES "
+			+ "(?, ?)";
+	// @formatter:on
+	
+	public static final int DEFAULT_FETCH_SIZE = 500;						// Rows per cursor round trip when streaming
+	public static final int STEP_ORDER_GAP = 1024;							// Room for ten halvings between neighbouring steps
+	private static final int NO_STEP = 0;									// Step ID that never exists, for "exclude nothing"
+	private static final int MAX_IDS_PER_AGGREGATE_LOAD = 5000;				// Keeps four IN lists under MySQL's 65,535 placeholder limit
+	private static final int SEARCH_CANDIDATES_PER_RESULT = 10;				// Best matches read from each table per result returned
+	private static final int AGGREGATE_QUERY_COUNT = 4;						// Project, Material, Step, and Category queries
+	private static final int MULTI_STATEMENT = AGGREGATE_QUERY_COUNT;		// Index of the combined SQL in an aggregateQueries array
+	private static final Map<Integer, String[]> AGGREGATE_SQL_BY_ID_COUNT = new ConcurrentHashMap<>();	// Keyed by IN-list slots, see aggregateSlots
+	
+	// Updatable columns in dirty mask bit order
+	private static final String[] UPDATE_COLUMNS = { "project_name", "estimated_hours", "actual_hours", "difficulty", "notes" };
+	private static final String[] UPDATE_SQL_BY_MASK = updateStatements();	// One statement per dirty field mask, built once
+	
+	private static final DaoMetrics.Timer INSERT_PROJECT_TIMER = DaoMetrics.timer("ProjectDao.insertProject");
+	private static final DaoMetrics.Timer INSERT_PROJECTS_TIMER = DaoMetrics.timer("ProjectDao.insertProjects");
+	private static final DaoMetrics.Timer FETCH_ALL_PROJECTS_TIMER = DaoMetrics.timer("ProjectDao.fetchAllProjects");
+	private static final DaoMetrics.Timer FETCH_PROJECTS_PAGE_TIMER = DaoMetrics.timer("ProjectDao.fetchProjectsPage");
+	private static final DaoMetrics.Timer FETCH_PROJECT_IDS_TIMER = DaoMetrics.timer("ProjectDao.fetchProjectIds");
+	private static final DaoMetrics.Timer FETCH_PROJECT_SUMMARIES_TIMER = DaoMetrics.timer("ProjectDao.fetchProjectSummaries");
+	private static final DaoMetrics.Timer STREAM_PROJECTS_TIMER = DaoMetrics.timer("ProjectDao.streamProjects");
+	private static final DaoMetrics.Timer FETCH_PROJECT_BY_ID_TIMER = DaoMetrics.timer("ProjectDao.fetchProjectByID");
+	private static final DaoMetrics.Timer FETCH_PROJECTS_BY_IDS_TIMER = DaoMetrics.timer("ProjectDao.fetchProjectsByIds");
+	private static final DaoMetrics.Timer MODIFY_PROJECT_DETAILS_TIMER = DaoMetrics.timer("ProjectDao.modifyProjectDetails");
+	private static final DaoMetrics.Timer DELETE_PROJECT_TIMER = DaoMetrics.timer("ProjectDao.deleteProject");
+	private static final DaoMetrics.Timer SEARCH_PROJECTS_TIMER = DaoMetrics.timer("ProjectDao.searchProjects");
+	private static final DaoMetrics.Timer FETCH_ALL_CATEGORIES_TIMER = DaoMetrics.timer("ProjectDao.fetchAllCategories");
+	private static final DaoMetrics.Timer FETCH_CATEGORY_COUNTS_TIMER = DaoMetrics.timer("ProjectDao.fetchCategoryCounts");
+	private static final DaoMetrics.Timer FETCH_PROJECTS_IN_CATEGORY_TIMER = DaoMetrics.timer("ProjectDao.fetchProjectsInCategory");
+	private static final DaoMetrics.Timer FETCH_PROJECTS_IN_ALL_CATEGORIES_TIMER = DaoMetrics.timer("ProjectDao.fetchProjectsInAllCategories");
+	private static final DaoMetrics.Timer FETCH_PROJECT_ROLLUPS_TIMER = DaoMetrics.timer("ProjectDao.fetchProjectRollups");
+	private static final DaoMetrics.Timer FETCH_PROJECT_ROLLUP_TIMER = DaoMetrics.timer("ProjectDao.fetchProjectRollup");
+	private static final DaoMetrics.Timer INSERT_STEP_TIMER = DaoMetrics.timer("ProjectDao.insertStep");
+	private static final DaoMetrics.Timer MOVE_STEP_TIMER = DaoMetrics.timer("ProjectDao.moveStep");
+	private static final DaoMetrics.Timer DELETE_STEP_TIMER = DaoMetrics.timer("ProjectDao.deleteStep");
+	
+	
+	// Switch case 1 - Allow user to add a project to the database and collect details for new project. A project that already
+	// has an ID is inserted with it; otherwise the database assigns one.
 	public Project insertProject(Project project) {
+		
+		long startNanos = System.nanoTime();
+		
+		try {
+			boolean assignedId = Objects.nonNull(project.getProjectId());
+			
+			try(Connection conn = DbConnection.getConnection()) {				// Initiate connection with DB. If successful, try running SQL statement. If fail, throw exception
+				
+				startTransaction(conn);
+				
+				try(PreparedStatement stmt = assignedId ? conn.prepareStatement(INSERT_PROJECT_WITH_ID_SQL)
+						: conn.prepareStatement(INSERT_PROJECT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+					
+					setParameter(stmt, 1, project.getProjectName(), String.class);
+					setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
+					setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
+					setParameter(stmt, 4, project.getDifficulty(), Integer.class);
+					setParameter(stmt, 5, project.getNotes(), String.class);
+					
+					if(assignedId) {
+						setParameter(stmt, 6, project.getProjectId(), Integer.class);
+					}
+					
+					stmt.executeUpdate();
+					
+					Integer projectId = assignedId ? project.getProjectId() : getGeneratedKeys(stmt, 1)[0];	// Key comes back with the INSERT - no second query
+					commitTransaction(conn);
+					
+					project.setProjectId(projectId);							// Set values submitted by user to project for writing to the table
+					project.setVersion(0);										// New rows start at the column default
+					project.clearDirtyFields();
+					return project;
+					
+					
+				} catch(Exception e) {
+					rollbackTransaction(conn);									// If SQL statement fails, roll back transaction
+					throw new DbException(e);
+				}
+				
+			} catch(SQLException e) {
+				throw new DbException(e);
+			}
+		} catch(RuntimeException e) {
+			INSERT_PROJECT_TIMER.recordError();
+			throw e;
+		} finally {
+			INSERT_PROJECT_TIMER.record(startNanos);
+		}
+		
+	}
+
+
+	/*
+	 * Bulk ingest of projects with their Materials, Steps, and Categories. Each table is written with a JDBC batch, which the
+	 * driver rewrites into multi-row INSERTs (rewriteBatchedStatements), and the generated project IDs come back from the
+	 * same batch. A commit is issued every chunkSize projects; if a chunk fails, earlier chunks stay committed and the
+	 * failing chunk is rolled back, and the BulkInsertException thrown lists the committed projects. Categories must already
+	 * exist - only the project_category links are inserted.
+	 */
+	public BatchInsertResult insertProjects(List<Project> projects, int chunkSize) {
+		
+		long startNanos = System.nanoTime();
+		
+		try {
+			if(chunkSize < 1) {
+				throw new IllegalArgumentException("Chunk size must be at least 1");
+			}
+			
+			boolean assignedIds = !projects.isEmpty() && Objects.nonNull(projects.get(0).getProjectId());
+			
+			for(Project project : projects) {
+				if(Objects.nonNull(project.getProjectId()) != assignedIds) {
+					throw new IllegalArgumentException("Either every project or none must have an ID");
+				}
+			}
+			
+			int[] counts = new int[4];													// projects, materials, steps, categories
+			int committed = 0;
+			
+			try(Connection conn = DbConnection.getConnection()) {
+				
+				startTransaction(conn);
+				
+				try(PreparedStatement projectStmt = assignedIds ? conn.prepareStatement(INSERT_PROJECT_WITH_ID_SQL)
+						: conn.prepareStatement(INSERT_PROJECT_SQL, Statement.RETURN_GENERATED_KEYS);
+						PreparedStatement materialStmt = conn.prepareStatement(INSERT_MATERIAL_SQL, Statement.RETURN_GENERATED_KEYS);
+						PreparedStatement stepStmt = conn.prepareStatement(INSERT_STEP_SQL, Statement.RETURN_GENERATED_KEYS);
+						PreparedStatement categoryStmt = conn.prepareStatement(INSERT_PROJECT_CATEGORY_SQL)) {
+					
+					while(committed < projects.size()) {
+						List<Project> chunk = projects.subList(committed, Math.min(committed + chunkSize, projects.size()));
+						
+						insertProjectChunk(chunk, assignedIds, projectStmt, materialStmt, stepStmt, categoryStmt, counts);
+						commitTransaction(conn);
+						
+						for(Project project : chunk) {
+							project.setVersion(0);
+							project.clearDirtyFields();
+						}
+						
+						committed += chunk.size();
+					}
+					
+				} catch(Exception e) {
+					rollbackTransaction(conn);											// Only the chunk in progress is lost
+					
+					if(!assignedIds) {
+						for(Project project : projects.subList(committed, projects.size())) {
+							project.setProjectId(null);									// Don't leave IDs from rolled back rows on the caller's objects
+						}
+					}
+					
+					throw new BulkInsertException("Bulk insert failed after " + committed + " projects were committed", e,
+							List.copyOf(projects.subList(0, committed)));
+				}
+				
+			} catch(SQLException e) {
+				throw new DbException(e);
+			}
+			
+			return new BatchInsertResult(counts[0], counts[1], counts[2], counts[3], System.nanoTime() - startNanos);
+		} catch(RuntimeException e) {
+			INSERT_PROJECTS_TIMER.recordError();
+			throw e;
+		} finally {
+			INSERT_PROJECTS_TIMER.record(startNanos);
+		}
+		
+	}
+
+
+	// Inserts one chunk: all projects in one batch, then each child table in one batch using the new project IDs. With
+	// assignedIds the projects keep the IDs they came with.
+	private void insertProjectChunk(List<Project> chunk, boolean assignedIds, PreparedStatement projectStmt,
+			PreparedStatement materialStmt, PreparedStatement stepStmt, PreparedStatement categoryStmt, int[] counts)
+			throws SQLException {
+		
+		int[] projectIds = new int[chunk.size()];
+		
+		for(int index = 0; index < chunk.size(); index++) {
+			Project project = chunk.get(index);
+			setParameter(projectStmt, 1, project.getProjectName(), String.class);
+			setParameter(projectStmt, 2, project.getEstimatedHours(), BigDecimal.class);
+			setParameter(projectStmt, 3, project.getActualHours(), BigDecimal.class);
+			setParameter(projectStmt, 4, project.getDifficulty(), Integer.class);
+			setParameter(projectStmt, 5, project.getNotes(), String.class);
+			
+			if(assignedIds) {
+				setParameter(projectStmt, 6, project.getProjectId(), Integer.class);
+				projectIds[index] = project.getProjectId();
+			}
+			
+			projectStmt.addBatch();
+		}
+		
+		projectStmt.executeBatch();
+		
+		if(!assignedIds) {
+			projectIds = getGeneratedKeys(projectStmt, chunk.size());					// One key per project, in batch order
+		}
+		
+		List<Material> materials = new ArrayList<>();
+		List<Step> steps = new ArrayList<>();
+		int categoryLinks = 0;
+		
+		for(int index = 0; index < chunk.size(); index++) {
+			Project project = chunk.get(index);
+			Integer projectId = projectIds[index];
+			project.setProjectId(projectId);
+			
+			for(Material material : project.getMaterials()) {
+				material.setProjectId(projectId);
+				setParameter(materialStmt, 1, projectId, Integer.class);
+				setParameter(materialStmt, 2, material.getMaterialName(), String.class);
+				setParameter(materialStmt, 3, material.getNumRequired(), Integer.class);
+				setParameter(materialStmt, 4, material.getCost(), BigDecimal.class);
+				materialStmt.addBatch();
+				materials.add(material);
+			}
+			
+			int stepOrder = 0;
+			
+			for(Step step : project.getSteps()) {
+				stepOrder++;
+				
+				if(Objects.isNull(step.getStepOrder())) {
+					step.setStepOrder(stepOrder * STEP_ORDER_GAP);						// Default to the position in the list, spaced for later inserts
+				}
+				
+				step.setProjectId(projectId);
+				setParameter(stepStmt, 1, projectId, Integer.class);
+				setParameter(stepStmt, 2, step.getStepText(), String.class);
+				setParameter(stepStmt, 3, step.getStepOrder(), Integer.class);
+				stepStmt.addBatch();
+				steps.add(step);
+			}
+			
+			for(Category category : project.getCategories()) {
+				setParameter(categoryStmt, 1, projectId, Integer.class);
+				setParameter(categoryStmt, 2, category.getCategoryId(), Integer.class);
+				categoryStmt.addBatch();
+				categoryLinks++;
+			}
+		}
+		
+		if(!materials.isEmpty()) {
+			materialStmt.executeBatch();
+			int[] materialIds = getGeneratedKeys(materialStmt, materials.size());
+			
+			for(int index = 0; index < materialIds.length; index++) {
+				materials.get(index).setMaterialId(materialIds[index]);
+			}
+		}
+		
+		if(!steps.isEmpty()) {
+			stepStmt.executeBatch();
+			int[] stepIds = getGeneratedKeys(stepStmt, steps.size());
+			
+			for(int index = 0; index < stepIds.length; index++) {
+				steps.get(index).setStepId(stepIds[index]);
+			}
+		}
+		
+		if(categoryLinks > 0) {
+			categoryStmt.executeBatch();
+		}
+		
+		counts[0] += chunk.size();
+		counts[1] += materials.size();
+		counts[2] += steps.size();
+		counts[3] += categoryLinks;
+		
+	}
+
+
+	// Switch case 2 - List all projects in projects table
+	public List<Project> fetchAllProjects() {
+		
+		return fetchAllProjects(false, (project, nameKey) -> project);
+	}
+
+
+	/*
+	 * The name-ordered listings below come in a second form for merging the rows of several databases: with withNameKeys,
+	 * WEIGHT_STRING(project_name) is selected too and handed to rowOf with each project. It is the sort key of the column's
+	 * collation, so comparing keys as unsigned bytes, then IDs, reproduces the database's ORDER BY exactly, which no Java
+	 * Collator does. Without it the key is null.
+	 */
+	protected <T> List<T> fetchAllProjects(boolean withNameKeys, BiFunction<Project, byte[], T> rowOf) {
+		
+		long startNanos = System.nanoTime();
+		
+		try {
+			try(Connection conn = DbConnection.getReadConnection()) {
+				
+				startTransaction(conn);
+				
+				try(PreparedStatement stmt = conn.prepareStatement(withNameKeys ? FETCH_ALL_PROJECTS_KEYED_SQL : FETCH_ALL_PROJECTS_SQL)) {
+					
+					try(ResultSet rs = stmt.executeQuery()) {
+						
+						List<T> projects = new ArrayList<>(DEFAULT_FETCH_SIZE);
+						RowMapper<Project> mapper = rowMapper(rs, Project.class);	// Resolve columns once, not once per row
+						int nameKeyColumn = nameKeyColumn(rs, withNameKeys);
+						
+						while (rs.next()) {
+							projects.add(rowOf.apply(mapper.map(rs), nameKey(rs, nameKeyColumn)));	// Add all projects from table to list
+						}
 	
-		// @formatter:off
-		String sql = ""
-				+ "INSERT INTO " + PROJECT_TABLE + " "
-				+ "(project_name, estimated_hours, actual_hours, difficulty, notes) "
-				+ "VALUES "
-				+ "(?, ?, ?, ?, ?)";
-		// @formatter:on
+					return projects;
+					
+					}
+						
+				} catch(Exception e) {
+					rollbackTransaction(conn);									// If PreparedStatement or ResultSet fails, roll back transaction and throw exception
+					throw new DbException(e);
+				}
+					
+			} catch(SQLException e) {											// If connection fails, throw SQLException
+				throw new DbException(e);
+			}
+		} catch(RuntimeException e) {
+			FETCH_ALL_PROJECTS_TIMER.recordError();
+			throw e;
+		} finally {
+			FETCH_ALL_PROJECTS_TIMER.record(startNanos);
+		}
+		
+	}
+
+
+	/*
+	 * Switch case 2 - One page of projects (ID and name only) in (project_name, project_id) order. Pass the name and ID of the
+	 * last project on the previous page to get the next one, or nulls for the first page. Seeking past the key instead of
+	 * using OFFSET lets MySQL start the range scan on idx_project_name_id at the right row, so every page costs the same.
+	 */
+	public List<Project> fetchProjectsPage(String afterName, Integer afterId, int limit) {
+		
+		return fetchProjectsPage(afterName, afterId, limit, false, (project, nameKey) -> project);
+	}
+
+
+	protected <T> List<T> fetchProjectsPage(String afterName, Integer afterId, int limit, boolean withNameKeys,
+			BiFunction<Project, byte[], T> rowOf) {
+		
+		long startNanos = System.nanoTime();
+		
+		try {
+			boolean firstPage = Objects.isNull(afterName) || Objects.isNull(afterId);
+			String sql = firstPage ? (withNameKeys ? FETCH_FIRST_PAGE_KEYED_SQL : FETCH_FIRST_PAGE_SQL)
+					: (withNameKeys ? FETCH_NEXT_PAGE_KEYED_SQL : FETCH_NEXT_PAGE_SQL);
+			
+			try(Connection conn = DbConnection.getReadConnection()) {
+				
+				try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+					int parameterIndex = 1;
+					
+					if(!firstPage) {
+						setParameter(stmt, parameterIndex++, afterName, String.class);
+						setParameter(stmt, parameterIndex++, afterId, Integer.class);
+					}
+					
+					setParameter(stmt, parameterIndex, limit, Integer.class);
+					
+					try(ResultSet rs = stmt.executeQuery()) {
+						List<T> projects = new ArrayList<>(presize(limit));
+						RowMapper<Project> mapper = rowMapper(rs, Project.class);
+						int nameKeyColumn = nameKeyColumn(rs, withNameKeys);
+						
+						while(rs.next()) {
+							projects.add(rowOf.apply(mapper.map(rs), nameKey(rs, nameKeyColumn)));
+						}
+						
+						return projects;
+					}
+				}
+				
+			} catch(SQLException e) {
+				throw new DbException(e);
+			}
+		} catch(RuntimeException e) {
+			FETCH_PROJECTS_PAGE_TIMER.recordError();
+			throw e;
+		} finally {
+			FETCH_PROJECTS_PAGE_TIMER.record(startNanos);
+		}
+		
+	}
+
+
+	// Up to limit project IDs greater than afterId, in ID order. Pass 0 for the first page.
+	public List<Integer> fetchProjectIds(int afterId, int limit) {
+		
+		long startNanos = System.nanoTime();
+		
+		try {
+			try(Connection conn = DbConnection.getReadConnection()) {
+				
+				try(PreparedStatement stmt = conn.prepareStatement(FETCH_PROJECT_IDS_SQL)) {
+					setParameter(stmt, 1, afterId, Integer.class);
+					setParameter(stmt, 2, limit, Integer.class);
+					
+					try(ResultSet rs = stmt.executeQuery()) {
+						List<Integer> projectIds = new ArrayList<>(presize(limit));
+						
+						while(rs.next()) {
+							projectIds.add(rs.getInt(1));
+						}
+						
+						return projectIds;
+					}
+				}
+				
+			} catch(SQLException e) {
+				throw new DbException(e);
+			}
+		} catch(RuntimeException e) {
+			FETCH_PROJECT_IDS_TIMER.recordError();
+			throw e;
+		} finally {
+			FETCH_PROJECT_IDS_TIMER.record(startNanos);
+		}
+		
+	}
+
+
+	/*
+	 * Same paging as fetchProjectsPage, but with hours and difficulty, returned as one column-oriented batch instead of a list
+	 * of Project objects. Use it to hold large listings in memory.
+	 */
+	public ProjectSummaryBatch fetchProjectSummaries(String afterName, Integer afterId, int limit) {
+		
+		return fetchProjectSummaries(afterName, afterId, limit, false);
+	}
+
+
+	// With withNameKeys the batch also holds each name's sort key (see fetchAllProjects)
+	protected ProjectSummaryBatch fetchProjectSummaries(String afterName, Integer afterId, int limit, boolean withNameKeys) {
+		
+		long startNanos = System.nanoTime();
+		
+		try {
+			boolean firstPage = Objects.isNull(afterName) || Objects.isNull(afterId);
+			String sql = firstPage ? (withNameKeys ? FETCH_FIRST_SUMMARY_PAGE_KEYED_SQL : FETCH_FIRST_SUMMARY_PAGE_SQL)
+					: (withNameKeys ? FETCH_NEXT_SUMMARY_PAGE_KEYED_SQL : FETCH_NEXT_SUMMARY_PAGE_SQL);
+			
+			try(Connection conn = DbConnection.getReadConnection()) {
+				
+				try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+					int parameterIndex = 1;
+					
+					if(!firstPage) {
+						setParameter(stmt, parameterIndex++, afterName, String.class);
+						setParameter(stmt, parameterIndex++, afterId, Integer.class);
+					}
+					
+					setParameter(stmt, parameterIndex, limit, Integer.class);
+					stmt.setFetchSize(Math.min(limit, DEFAULT_FETCH_SIZE));
+					
+					try(ResultSet rs = stmt.executeQuery()) {
+						ProjectSummaryBatch batch = new ProjectSummaryBatch(presize(limit), withNameKeys);
+						
+						while(rs.next()) {
+							Integer difficulty = rs.getInt(5);
+							
+							if(rs.wasNull()) {
+								difficulty = null;
+							}
+							
+							batch.add(rs.getInt(1), rs.getString(2), rs.getBigDecimal(3), rs.getBigDecimal(4), difficulty,
+									withNameKeys ? rs.getBytes(6) : null);
+						}
+						
+						batch.trim();
+						return batch;
+					}
+				}
+				
+			} catch(SQLException e) {
+				throw new DbException(e);
+			}
+		} catch(RuntimeException e) {
+			FETCH_PROJECT_SUMMARIES_TIMER.recordError();
+			throw e;
+		} finally {
+			FETCH_PROJECT_SUMMARIES_TIMER.record(startNanos);
+		}
+		
+	}
+
+
+	/*
+	 * Streams projects ordered by name without loading the table into memory. Rows are pulled from a server-side cursor
+	 * fetchSize rows at a time, and only the requested columns are selected (all columns if none are given). The stream holds
+	 * a pooled connection until it is closed, so callers must use it in a try-with-resources block. The recorded latency runs
+	 * from this call until the stream is closed.
+	 */
+	public Stream<Project> streamProjects(int fetchSize, ProjectColumn... columns) {
+		
+		return streamProjects(fetchSize, false, (project, nameKey) -> project, columns);
+	}
+
+
+	// With withNameKeys each project comes with its name's sort key (see fetchAllProjects)
+	protected <T> Stream<T> streamProjects(int fetchSize, boolean withNameKeys, BiFunction<Project, byte[], T> rowOf,
+			ProjectColumn... columns) {
+		
+		long startNanos = System.nanoTime();
+		String sql = "SELECT " + columnList(columns) + " FROM " + PROJECT_TABLE + " ORDER BY project_name, project_id";
+		
+		if(withNameKeys) {
+			sql = withNameKey(sql);
+		}
+		
+		Connection conn = DbConnection.getReadConnection();
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		
+		try {
+			stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			stmt.setFetchSize(fetchSize);											// With useCursorFetch this reads fetchSize rows per round trip
+			rs = stmt.executeQuery();
+			
+			ResultSet cursor = rs;
+			RowMapper<Project> mapper = rowMapper(rs, Project.class);
+			int nameKeyColumn = nameKeyColumn(rs, withNameKeys);
+			
+			Spliterator<T> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+					Spliterator.ORDERED | Spliterator.NONNULL) {
+				
+				@Override
+				public boolean tryAdvance(Consumer<? super T> action) {
+					try {
+						if(!cursor.next()) {
+							return false;
+						}
+						
+						action.accept(rowOf.apply(mapper.map(cursor), nameKey(cursor, nameKeyColumn)));
+						return true;
+						
+					} catch(SQLException e) {
+						throw new DbException(e);
+					}
+				}
+			};
+			
+			AutoCloseable[] resources = {rs, stmt, conn};
+			return StreamSupport.stream(rows, false).onClose(() -> {
+				closeAll(resources);
+				STREAM_PROJECTS_TIMER.record(startNanos);
+			});
+			
+		} catch(Exception e) {
+			closeAll(rs, stmt, conn);													// Nothing is handed to the caller, so release everything here
+			STREAM_PROJECTS_TIMER.recordError();
+			STREAM_PROJECTS_TIMER.record(startNanos);
+			throw new DbException(e);
+		}
+		
+	}
+
+
+	// Adds WEIGHT_STRING(project_name) as the last column of a SELECT list
+	private static String withNameKey(String sql) {
+		
+		return sql.replaceFirst(" FROM ", ", WEIGHT_STRING(project_name) AS name_key FROM ");
+	}
+
+
+	// Index of the name_key column withNameKey adds, or 0 if it was not selected
+	private static int nameKeyColumn(ResultSet rs, boolean withNameKeys) throws SQLException {
+		
+		return withNameKeys ? rs.getMetaData().getColumnCount() : 0;
+	}
+
+
+	private static byte[] nameKey(ResultSet rs, int nameKeyColumn) throws SQLException {
+		
+		return nameKeyColumn == 0 ? null : rs.getBytes(nameKeyColumn);
+	}
+
+
+	// Builds the SELECT list for a column projection. An empty projection means every column.
+	private String columnList(ProjectColumn... columns) {
+		
+		if(columns.length == 0) {
+			return "*";
+		}
+		
+		StringJoiner joiner = new StringJoiner(", ");
+		
+		for(ProjectColumn column : EnumSet.copyOf(Arrays.asList(columns))) {		// EnumSet drops duplicates
+			joiner.add(column.getColumnName());
+		}
+		
+		return joiner.toString();
+		
+	}
+
+
+	// Closes JDBC resources in order, ignoring nulls and collecting failures
+	private void closeAll(AutoCloseable... resources) {
+		
+		DbException failure = null;
+		
+		for(AutoCloseable resource : resources) {
+			try {
+				if(Objects.nonNull(resource)) {
+					resource.close();
+				}
+			} catch(Exception e) {
+				if(Objects.isNull(failure)) {
+					failure = new DbException(e);
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		
+		if(Objects.nonNull(failure)) {
+			throw failure;
+		}
+		
+	}
+
+
+	// Switch case 3 - Allow user to select a specific project to work with
+	public Optional<Project> fetchProjectByID(Integer projectId) {
+		
+		long startNanos = System.nanoTime();
+		
+		try {
+			if(Objects.isNull(projectId)) {												// No ID entered - nothing can match
+				return Optional.empty();
+			}
+			
+			return loadProjectsByIds(List.of(projectId)).stream().findFirst();			// Single project goes through the same one-round-trip loader
+		} catch(RuntimeException e) {
+			FETCH_PROJECT_BY_ID_TIMER.recordError();
+			throw e;
+		} finally {
+			FETCH_PROJECT_BY_ID_TIMER.record(startNanos);
+		}
+		
+	}
+
+
+	/*
+	 * Loads full project aggregates (project plus Materials, Steps, and Categories) for all of the given IDs. One set of four
+	 * queries is issued per chunk of IDs no matter how many IDs are in the chunk, and when the connection allows multiple
+	 * statements the four queries go to the server in a single round trip. Projects are returned in the order the IDs were
+	 * given; IDs that do not exist are skipped.
+	 */
+	public List<Project> fetchProjectsByIds(Collection<Integer> projectIds) {
+		
+		long startNanos = System.nanoTime();
+		
+		try {
+			return loadProjectsByIds(projectIds);
+		} catch(RuntimeException e) {
+			FETCH_PROJECTS_BY_IDS_TIMER.recordError();
+			throw e;
+		} finally {
+			FETCH_PROJECTS_BY_IDS_TIMER.record(startNanos);
+		}
+		
+	}
+
+
+	// The untimed body of fetchProjectsByIds, so callers that time themselves (fetchProjectByID) are recorded once
+	protected List<Project> loadProjectsByIds(Collection<Integer> projectIds) {
+		
+		List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(projectIds));		// De-duplicate while keeping the caller's order
+		ids.removeIf(Objects::isNull);
+		
+		if(ids.isEmpty()) {
+			return new ArrayList<>();
+		}
+		
+		try(Connection conn = DbConnection.getReadConnection()) {
+			
+			startTransaction(conn);
+			
+			try {
+				Map<Integer, Project> projectsById = new HashMap<>(ids.size() * 4 / 3 + 1);
+				
+				for(int from = 0; from < ids.size(); from += MAX_IDS_PER_AGGREGATE_LOAD) {
+					List<Integer> chunk = ids.subList(from, Math.min(from + MAX_IDS_PER_AGGREGATE_LOAD, ids.size()));
+					loadAggregates(conn, chunk, projectsById);
+				}
+				
+				commitTransaction(conn);
+				
+				List<Project> projects = new ArrayList<>(projectsById.size());
+				
+				for(Integer projectId : ids) {
+					Project project = projectsById.get(projectId);
+					
+					if(Objects.nonNull(project)) {
+						trimChildren(project);
+						projects.add(project);
+					}
+				}
+				
+				return projects;
+					
+			} catch(Exception e) {
+				rollbackTransaction(conn);									// If PreparedStatement or ResultSet fails, roll back transaction and throw exception
+				throw new DbException(e);
+			}
+				
+		} catch(SQLException e) {											// If connection fails, throw SQLException
+			throw new DbException(e);
+		}
+		
+	}
+
+
+	// Runs the project, Material, Step, and Category queries for one chunk of IDs and attaches the children to their projects
+	private void loadAggregates(Connection conn, List<Integer> ids, Map<Integer, Project> projectsById) throws SQLException {
+		
+		int slots = aggregateSlots(ids.size());
+		String[] queries = aggregateQueries(slots);
+		
+		if(DbConnection.isMultiStatementEnabled(conn)) {
+			try(PreparedStatement stmt = conn.prepareStatement(queries[MULTI_STATEMENT])) {	// All four queries in one round trip
+				int parameterIndex = 1;
+				
+				for(int query = 0; query < AGGREGATE_QUERY_COUNT; query++) {
+					for(int slot = 0; slot < slots; slot++) {
+						setParameter(stmt, parameterIndex++, ids.get(Math.min(slot, ids.size() - 1)), Integer.class);
+					}
+				}
+				
+				stmt.execute();
+				
+				for(int query = 0; query < AGGREGATE_QUERY_COUNT; query++) {
+					try(ResultSet rs = stmt.getResultSet()) {
+						readAggregateResults(query, rs, projectsById);
+					}
+					
+					stmt.getMoreResults();										// Advance to the next query's result set
+				}
+			}
+		} else {
+			for(int query = 0; query < AGGREGATE_QUERY_COUNT; query++) {			// Driver cannot batch statements - same queries, one at a time
+				try(PreparedStatement stmt = conn.prepareStatement(queries[query])) {
+					for(int slot = 0; slot < slots; slot++) {
+						setParameter(stmt, slot + 1, ids.get(Math.min(slot, ids.size() - 1)), Integer.class);
+					}
+					
+					try(ResultSet rs = stmt.executeQuery()) {
+						readAggregateResults(query, rs, projectsById);
+					}
+				}
+			}
+		}
+		
+	}
+
+
+	// Reads one result set from loadAggregates. The query number says which table it came from.
+	private void readAggregateResults(int query, ResultSet rs, Map<Integer, Project> projectsById) throws SQLException {
+		
+		switch(query) {
+		
+			case 0:															// Projects
+				RowMapper<Project> projectMapper = rowMapper(rs, Project.class);
+				
+				while(rs.next()) {
+					Project project = projectMapper.map(rs);
+					projectsById.put(project.getProjectId(), project);
+				}
+				break;
+				
+			case 1:															// Materials
+				RowMapper<Material> materialMapper = rowMapper(rs, Material.class);
+				
+				while(rs.next()) {
+					Material material = materialMapper.map(rs);
+					projectsById.get(material.getProjectId()).getMaterials().add(material);
+				}
+				break;
+				
+			case 2:															// Steps
+				RowMapper<Step> stepMapper = rowMapper(rs, Step.class);
+				
+				while(rs.next()) {
+					Step step = stepMapper.map(rs);
+					projectsById.get(step.getProjectId()).getSteps().add(step);
+				}
+				break;
+				
+			case 3:															// Categories - Category has no project_id field, so read it from column 1
+				RowMapper<Category> categoryMapper = rowMapper(rs, Category.class);
+				
+				while(rs.next()) {
+					projectsById.get(rs.getInt(1)).getCategories().add(categoryMapper.map(rs));
+				}
+				break;
+				
+			default:
+				throw new DbException("Unexpected aggregate query number " + query);
+		}
+		
+	}
+
+
+	/*
+	 * IN-list length for a load of idCount IDs: the next power of two, capped at MAX_IDS_PER_AGGREGATE_LOAD. loadAggregates
+	 * fills the spare slots by repeating the last ID, which IN ignores. Rounding keeps the SQL to fourteen shapes, so the
+	 * cached strings stay small and each connection's prepared-statement cache holds a few hot statements instead of one per
+	 * batch size.
+	 */
+	private static int aggregateSlots(int idCount) {
+		
+		int slots = idCount <= 1 ? 1 : Integer.highestOneBit(idCount - 1) << 1;
+		return Math.min(slots, MAX_IDS_PER_AGGREGATE_LOAD);
+	}
+
+
+	/*
+	 * SQL for loadAggregates with the given number of IN-list slots: the four queries, then all four joined into one
+	 * multi-statement. Built once per slot count and reused, so the common single-project load never rebuilds its SQL.
+	 */
+	private static String[] aggregateQueries(int slots) {
+		
+		return AGGREGATE_SQL_BY_ID_COUNT.computeIfAbsent(slots, count -> {
+			String idList = placeholders(count);
+			
+			// @formatter:off
+			String[] queries = {
+					"SELECT * FROM " + PROJECT_TABLE + " WHERE project_id IN " + idList,
+					"SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id IN " + idList + " ORDER BY project_id, material_id",
+					"SELECT * FROM " + STEP_TABLE + " WHERE project_id IN " + idList + " ORDER BY project_id, step_order",
+					"SELECT pc.project_id, c.* FROM " + CATEGORY_TABLE + " c "		// project_id first so the owner can be read by index
+							+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
+							+ "WHERE pc.project_id IN " + idList + " ORDER BY pc.project_id, c.category_id",
+					null
+			};
+			// @formatter:on
+			
+			queries[MULTI_STATEMENT] = String.join("; ", Arrays.copyOf(queries, AGGREGATE_QUERY_COUNT));
+			return queries;
+		});
+		
+	}
+
+
+	// Initial capacity for a result list of at most maxRows rows. Large limits start at one fetch's worth and grow.
+	private static int presize(int maxRows) {
+		
+		return Math.max(0, Math.min(maxRows, DEFAULT_FETCH_SIZE));
+	}
+
+
+	// Releases the spare capacity a child list kept from growing while its rows were read
+	private static void trimChildren(Project project) {
+		
+		for(List<?> children : List.of(project.getMaterials(), project.getSteps(), project.getCategories())) {
+			if(children instanceof ArrayList<?> list) {
+				list.trimToSize();
+			}
+		}
+		
+	}
+
+
+	// Builds "(?, ?, ?)" with one placeholder per value for an IN list
+	static String placeholders(int count) {
+		
+		StringBuilder builder = new StringBuilder(count * 3 + 2).append('(');
+		
+		for(int index = 0; index < count; index++) {
+			builder.append(index == 0 ? "?" : ", ?");
+		}
+		
+		return builder.append(')').toString();
+		
+	}
+
+
+	/*
+	 * Switch case 4 - Writes the dirty fields of a project and increments its version. If the project carries a version, the update only
+	 * applies when the row still has that version; otherwise StaleProjectException reports the conflict. Returns false if
+	 * the project does not exist. On success the project holds the new version and its fields are marked clean.
+	 */
+	public boolean modifyProjectDetails(Project updatedProj) {
+		
+		long startNanos = System.nanoTime();
+		
+		try {
+			int dirtyFields = updatedProj.getDirtyFields();
+			Integer expectedVersion = updatedProj.getVersion();
+			
+			try(Connection conn = DbConnection.getConnection()) {				// Initiate connection with DB. If successful, try running SQL statement. If fail, throw exception
+				
+				startTransaction(conn);
+				
+				try {
+					boolean updated = false;
+					
+					if(dirtyFields != 0) {
+						try(PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL_BY_MASK[dirtyFields])) {
+							int parameterIndex = 1;
+							
+							if(updatedProj.isDirty(Project.PROJECT_NAME))
+								setParameter(stmt, parameterIndex++, updatedProj.getProjectName(), String.class);
+							if(updatedProj.isDirty(Project.ESTIMATED_HOURS))
+								setParameter(stmt, parameterIndex++, updatedProj.getEstimatedHours(), BigDecimal.class);
+							if(updatedProj.isDirty(Project.ACTUAL_HOURS))
+								setParameter(stmt, parameterIndex++, updatedProj.getActualHours(), BigDecimal.class);
+							if(updatedProj.isDirty(Project.DIFFICULTY))
+								setParameter(stmt, parameterIndex++, updatedProj.getDifficulty(), Integer.class);
+							if(updatedProj.isDirty(Project.NOTES))
+								setParameter(stmt, parameterIndex++, updatedProj.getNotes(), String.class);
+							
+							setParameter(stmt, parameterIndex++, updatedProj.getProjectId(), Integer.class);
+							setParameter(stmt, parameterIndex, expectedVersion, Integer.class);
+							
+							updated = stmt.executeUpdate() == 1;				// 0 rows means missing or changed since it was read
+						}
+					}
+					
+					// No rows updated, or nothing to update: the version tells missing, changed, and unchanged rows apart
+					Integer currentVersion = updated ? null : fetchVersion(conn, updatedProj.getProjectId());
+					commitTransaction(conn);
+					
+					if(updated) {
+						updatedProj.setVersion(Objects.isNull(expectedVersion) ? null : expectedVersion + 1);
+					} else if(Objects.isNull(currentVersion)) {
+						return false;											// No such project
+					} else if(Objects.nonNull(expectedVersion) && !expectedVersion.equals(currentVersion)) {
+						throw new StaleProjectException(updatedProj.getProjectId(), expectedVersion, currentVersion);
+					} else {
+						updatedProj.setVersion(currentVersion);
+					}
+					
+					updatedProj.clearDirtyFields();
+					return true;
+					
+				} catch(StaleProjectException e) {
+					throw e;
+				} catch(Exception e) {
+					rollbackTransaction(conn);									// If SQL statement fails, roll back transaction
+					throw new DbException(e);
+				}
+				
+			} catch(SQLException e) {
+				throw new DbException(e);
+			}
+		} catch(RuntimeException e) {
+			MODIFY_PROJECT_DETAILS_TIMER.recordError();
+			throw e;
+		} finally {
+			MODIFY_PROJECT_DETAILS_TIMER.record(startNanos);
+		}
+		
+	}
+
+
+	private Integer fetchVersion(Connection conn, Integer projectId) throws SQLException {
+		
+		try(PreparedStatement stmt = conn.prepareStatement(FETCH_VERSION_SQL)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+			
+			try(ResultSet rs = stmt.executeQuery()) {
+				return rs.next() ? rs.getInt(1) : null;
+			}
+		}
+		
+	}
+
+
+	/*
+	 * UPDATE statements indexed by dirty field mask. Each sets only the masked columns and bumps the version. A null version
+	 * parameter matches any row version ("version = COALESCE(?, version)"), for callers that did not read the row first.
+	 */
+	private static String[] updateStatements() {
+		
+		String[] statements = new String[Project.ALL_FIELDS + 1];
+		
+		for(int mask = 1; mask <= Project.ALL_FIELDS; mask++) {
+			StringBuilder sql = new StringBuilder("UPDATE ").append(PROJECT_TABLE).append(" SET ");
+			
+			for(int column = 0; column < UPDATE_COLUMNS.length; column++) {
+				if((mask & (1 << column)) != 0) {
+					sql.append(UPDATE_COLUMNS[column]).append(" = ?, ");
+				}
+			}
+			
+			statements[mask] = sql.append("version = version + 1 WHERE project_id = ? AND version = COALESCE(?, version)")
+					.toString();
+		}
+		
+		return statements;
+	}
+
+
+	// Switch case 5 - Delete selected project from table
+	public boolean deleteProject(Integer projectId) {
 		
-		try(Connection conn = DbConnection.getConnection()) {				// Initiate connection with DB. If successful, try running SQL statement. If fail, throw exception
-			
-			startTransaction(conn);
-			
-			try(PreparedStatement stmt = conn.prepareStatement(sql)) {
-				
-				setParameter(stmt, 1, project.getProjectName(), String.class);
-				setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
-				setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
-				setParameter(stmt, 4, project.getDifficulty(), Integer.class);
-				setParameter(stmt, 5, project.getNotes(), String.class);
-				
-				stmt.executeUpdate();
-				
-				Integer projectId = getLastInsertId(conn, PROJECT_TABLE);
-				commitTransaction(conn);
+		long startNanos = System.nanoTime();
+		
+		try {
+			try(Connection conn = DbConnection.getConnection()) {				// Initiate connection with DB. If successful, try running SQL statement. If fail, throw exception
 				
-				project.setProjectId(projectId);							// Set values submitted by user to project for writing to the table
-				return project;
+				startTransaction(conn);
 				
+				try(PreparedStatement stmt = conn.prepareStatement(DELETE_PROJECT_SQL)) {
+					
+					setParameter(stmt, 1, projectId, Integer.class);
+					
+					boolean updated = stmt.executeUpdate() == 1;				// If update to database succeeds, will return 1 (true)
+					commitTransaction(conn);
+					
+					return updated;												// Send update success (1/true) or fail (0/false) back to service layer
+					
+					
+				} catch(Exception e) {
+					rollbackTransaction(conn);									// If SQL statement fails, roll back transaction
+					throw new DbException(e);
+				}
 				
-			} catch(Exception e) {
-				rollbackTransaction(conn);									// If SQL statement fails, roll back transaction
+			} catch(SQLException e) {
 				throw new DbException(e);
 			}
-			
-		} catch(SQLException e) {
-			throw new DbException(e);
+		} catch(RuntimeException e) {
+			DELETE_PROJECT_TIMER.recordError();
+			throw e;
+		} finally {
+			DELETE_PROJECT_TIMER.record(startNanos);
 		}
 		
 	}
 
 
-	// Switch case 2 - List all projects in projects table
-	public List<Project> fetchAllProjects() {
+	/*
+	 * Full-text search across project names and notes, step text, and material names using the FULLTEXT indexes. Each table
+	 * contributes at most SEARCH_CANDIDATES_PER_RESULT * limit of its best matches, so a common word cannot drag millions of
+	 * step rows into the ranking. Scores from all tables are summed per project; name and notes matches count double.
+	 */
+	public List<ProjectSearchResult> searchProjects(String terms, int limit) {
 		
-		String sql = "SELECT * FROM " + PROJECT_TABLE + " ORDER BY project_name";
-
-		try(Connection conn = DbConnection.getConnection()) {
+		long startNanos = System.nanoTime();
+		
+		try {
+			String booleanQuery = toBooleanQuery(terms);
 			
-			startTransaction(conn);
+			if(booleanQuery.isEmpty()) {
+				return new ArrayList<>();
+			}
 			
-			try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+			int candidates = limit * SEARCH_CANDIDATES_PER_RESULT;
+			
+			try(Connection conn = DbConnection.getReadConnection()) {
 				
-				try(ResultSet rs = stmt.executeQuery(sql)) {
+				try(PreparedStatement stmt = conn.prepareStatement(SEARCH_PROJECTS_SQL)) {
+					int parameterIndex = 1;
+					
+					for(int branch = 0; branch < 3; branch++) {								// project, step, and material branches
+						setParameter(stmt, parameterIndex++, booleanQuery, String.class);
+						setParameter(stmt, parameterIndex++, booleanQuery, String.class);
+						setParameter(stmt, parameterIndex++, candidates, Integer.class);
+					}
 					
-					List<Project> projects = new LinkedList<>();
+					setParameter(stmt, parameterIndex, limit, Integer.class);
 					
-					while (rs.next()) {
-						projects.add(extract(rs, Project.class));			// Add all projects from table to list
+					try(ResultSet rs = stmt.executeQuery()) {
+						List<ProjectSearchResult> results = new ArrayList<>(presize(limit));
+						RowMapper<ProjectSearchResult> mapper = rowMapper(rs, ProjectSearchResult.class);
+						
+						while(rs.next()) {
+							results.add(mapper.map(rs));
+						}
+						
+						return results;
 					}
+				}
+				
+			} catch(SQLException e) {
+				throw new DbException(e);
+			}
+		} catch(RuntimeException e) {
+			SEARCH_PROJECTS_TIMER.recordError();
+			throw e;
+		} finally {
+			SEARCH_PROJECTS_TIMER.record(startNanos);
+		}
+		
+	}
 
-				return projects;
+
+	/*
+	 * Turns free text into a BOOLEAN MODE query where every word is a prefix match ("hang door" becomes "hang* door*").
+	 * Operator characters typed by the user are dropped so they cannot change the meaning of the query.
+	 */
+	private String toBooleanQuery(String terms) {
+		
+		if(Objects.isNull(terms)) {
+			return "";
+		}
+		
+		StringJoiner query = new StringJoiner(" ");
+		
+		for(String word : terms.replaceAll("[+\\-<>()~*\"@]", " ").trim().split("\\s+")) {
+			if(!word.isEmpty()) {
+				query.add(word + "*");
+			}
+		}
+		
+		return query.toString();
+		
+	}
+
+
+	// Every category, ordered by name. The table is small, so callers normally cache the result.
+	public List<Category> fetchAllCategories() {
+		
+		long startNanos = System.nanoTime();
+		
+		try {
+			try(Connection conn = DbConnection.getReadConnection()) {
 				
+				try(PreparedStatement stmt = conn.prepareStatement(FETCH_ALL_CATEGORIES_SQL)) {
+					try(ResultSet rs = stmt.executeQuery()) {
+						List<Category> categories = new ArrayList<>();
+						RowMapper<Category> mapper = rowMapper(rs, Category.class);
+						
+						while(rs.next()) {
+							categories.add(mapper.map(rs));
+						}
+						
+						return categories;
+					}
 				}
-					
-			} catch(Exception e) {
-				rollbackTransaction(conn);									// If PreparedStatement or ResultSet fails, roll back transaction and throw exception
+				
+			} catch(SQLException e) {
 				throw new DbException(e);
 			}
+		} catch(RuntimeException e) {
+			FETCH_ALL_CATEGORIES_TIMER.recordError();
+			throw e;
+		} finally {
+			FETCH_ALL_CATEGORIES_TIMER.record(startNanos);
+		}
+		
+	}
+
+
+	// Number of projects in each category, including empty categories. Counted from idx_category_project alone.
+	public List<CategoryCount> fetchCategoryCounts() {
+		
+		long startNanos = System.nanoTime();
+		
+		try {
+			try(Connection conn = DbConnection.getReadConnection()) {
 				
-		} catch(SQLException e) {											// If connection fails, throw SQLException
-			throw new DbException(e);
+				try(PreparedStatement stmt = conn.prepareStatement(FETCH_CATEGORY_COUNTS_SQL)) {
+					try(ResultSet rs = stmt.executeQuery()) {
+						List<CategoryCount> counts = new ArrayList<>();
+						RowMapper<CategoryCount> mapper = rowMapper(rs, CategoryCount.class);
+						
+						while(rs.next()) {
+							counts.add(mapper.map(rs));
+						}
+						
+						return counts;
+					}
+				}
+				
+			} catch(SQLException e) {
+				throw new DbException(e);
+			}
+		} catch(RuntimeException e) {
+			FETCH_CATEGORY_COUNTS_TIMER.recordError();
+			throw e;
+		} finally {
+			FETCH_CATEGORY_COUNTS_TIMER.record(startNanos);
 		}
 		
 	}
 
 
-	// Switch case 3 - Allow user to select a specific project to work with
-	public Optional<Project> fetchProjectByID(Integer projectId) {
+	/*
+	 * One page of projects (ID and name) in a category, in project ID order. Pass the last ID of the previous page, or null
+	 * for the first page. Pages follow idx_category_project (category_id, project_id), so each page reads only its own rows.
+	 */
+	public List<Project> fetchProjectsInCategory(Integer categoryId, Integer afterId, int limit) {
 		
-		String sql = "SELECT * FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+		long startNanos = System.nanoTime();
 		
-		try(Connection conn = DbConnection.getConnection()) {
+		try {
+			return fetchProjectsInAllCategories(List.of(categoryId), afterId, limit);
+		} catch(RuntimeException e) {
+			FETCH_PROJECTS_IN_CATEGORY_TIMER.recordError();
+			throw e;
+		} finally {
+			FETCH_PROJECTS_IN_CATEGORY_TIMER.record(startNanos);
+		}
+		
+	}
+
+
+	/*
+	 * One page of projects that are in every one of the given categories, in project ID order. The intersection is computed
+	 * on project_category by grouping the matching links per project; a project qualifies when it has a link for each
+	 * category. Pass the last ID of the previous page, or null for the first page.
+	 */
+	public List<Project> fetchProjectsInAllCategories(Collection<Integer> categoryIds, Integer afterId, int limit) {
+		
+		long startNanos = System.nanoTime();
+		
+		try {
+			List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(categoryIds));		// Duplicates would break the HAVING count
+			ids.removeIf(Objects::isNull);
 			
-			startTransaction(conn);
+			if(ids.isEmpty()) {
+				return new ArrayList<>();
+			}
 			
-			try {
-				Project project = null;										// Declare project variable and set to null
+			// @formatter:off
+			String sql = ""
+					+ "SELECT p.project_id, p.project_name FROM " + PROJECT_TABLE + " p "
+					+ "JOIN ("
+					+ "SELECT project_id FROM " + PROJECT_CATEGORY_TABLE + " "
+					+ "WHERE category_id IN " + placeholders(ids.size()) + " AND project_id > ? "
+					+ "GROUP BY project_id "
+					+ "HAVING COUNT(*) = ? "
+					+ "ORDER BY project_id "
+					+ "LIMIT ?"
+					+ ") hit USING (project_id) "
+					+ "ORDER BY p.project_id";
+			// @formatter:on
+			
+			try(Connection conn = DbConnection.getReadConnection()) {
 				
 				try(PreparedStatement stmt = conn.prepareStatement(sql)) {
-					setParameter(stmt, 1, projectId, Integer.class);		// Add projectId as parameter to SQL statement
+					int parameterIndex = 1;
+					
+					for(Integer categoryId : ids) {
+						setParameter(stmt, parameterIndex++, categoryId, Integer.class);
+					}
+					
+					setParameter(stmt, parameterIndex++, Objects.isNull(afterId) ? 0 : afterId, Integer.class);
+					setParameter(stmt, parameterIndex++, ids.size(), Integer.class);
+					setParameter(stmt, parameterIndex, limit, Integer.class);
 					
 					try(ResultSet rs = stmt.executeQuery()) {
-						if(rs.next()) {										// If can be used instead of while when expecting a single value returned
-							project = extract(rs, Project.class);			// Add project details to project for selected projectId
+						List<Project> projects = new ArrayList<>(presize(limit));
+						RowMapper<Project> mapper = rowMapper(rs, Project.class);
+						
+						while(rs.next()) {
+							projects.add(mapper.map(rs));
 						}
+						
+						return projects;
 					}
 				}
 				
-				if(Objects.nonNull(project)) {								// Obtain Materials, Steps, and Categories details for selected projectId
-					project.getMaterials().addAll(fetchMaterialsForProject(conn, projectId));
-					project.getSteps().addAll(fetchStepsForProject(conn, projectId));
-					project.getCategories().addAll(fetchCategoriesForProject(conn, projectId));
-				}
+			} catch(SQLException e) {
+				throw new DbException(e);
+			}
+		} catch(RuntimeException e) {
+			FETCH_PROJECTS_IN_ALL_CATEGORIES_TIMER.recordError();
+			throw e;
+		} finally {
+			FETCH_PROJECTS_IN_ALL_CATEGORIES_TIMER.record(startNanos);
+		}
+		
+	}
 
-				commitTransaction(conn);
+
+	/*
+	 * Rollups for every project, computed from scratch. Each child table is grouped once in a derived table and joined to
+	 * project, so the cost is one pass over material and step however many projects there are.
+	 */
+	public List<ProjectRollup> fetchProjectRollups() {
+		
+		long startNanos = System.nanoTime();
+		
+		try {
+			try(Connection conn = DbConnection.getReadConnection()) {
 				
-				return Optional.ofNullable(project);
+				try(PreparedStatement stmt = conn.prepareStatement(FETCH_ALL_ROLLUPS_SQL)) {
+					stmt.setFetchSize(DEFAULT_FETCH_SIZE);
 					
-			} catch(Exception e) {
-				rollbackTransaction(conn);									// If PreparedStatement or ResultSet fails, roll back transaction and throw exception
+					try(ResultSet rs = stmt.executeQuery()) {
+						List<ProjectRollup> rollups = new ArrayList<>(DEFAULT_FETCH_SIZE);
+						
+						while(rs.next()) {
+							rollups.add(readRollup(rs));
+						}
+						
+						return rollups;
+					}
+				}
+				
+			} catch(SQLException e) {
 				throw new DbException(e);
 			}
-				
-		} catch(SQLException e) {											// If connection fails, throw SQLException
-			throw new DbException(e);
+		} catch(RuntimeException e) {
+			FETCH_PROJECT_ROLLUPS_TIMER.recordError();
+			throw e;
+		} finally {
+			FETCH_PROJECT_ROLLUPS_TIMER.record(startNanos);
 		}
-
+		
 	}
 
 
-	// Switch case 3 - Allow user to select a specific project to work with and return related Categories
-	private List<Category> fetchCategoriesForProject(Connection conn, Integer projectId) throws SQLException {
-
-		// @formatter:off
-		String sql = ""
-				+ "SELECT c.* FROM " + CATEGORY_TABLE + " c "				// Need to join on project category table to link project_id with category_id
-				+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
-				+ "WHERE project_id = ?";
-		// @formatter:on
+	// Rollup for one project, read through the project_id foreign key indexes on material and step
+	public Optional<ProjectRollup> fetchProjectRollup(Integer projectId) {
 		
-		try(PreparedStatement stmt = conn.prepareStatement(sql)) {
-			setParameter(stmt, 1, projectId, Integer.class);				// Replace ? parameter in SQL with projectId from user selection
-
-			try(ResultSet rs = stmt.executeQuery()) {
-				List<Category> categories = new LinkedList<>();				// LinkedList allows for dynamically sized list with values kept in order
+		long startNanos = System.nanoTime();
+		
+		try {
+			try(Connection conn = DbConnection.getReadConnection()) {
 				
-				while(rs.next()) {
-					categories.add(extract(rs, Category.class));			// Add all returned values to List
+				try(PreparedStatement stmt = conn.prepareStatement(FETCH_ROLLUP_SQL)) {
+					setParameter(stmt, 1, projectId, Integer.class);
+					
+					try(ResultSet rs = stmt.executeQuery()) {
+						return rs.next() ? Optional.of(readRollup(rs)) : Optional.empty();
+					}
 				}
 				
-				return categories;
-
+			} catch(SQLException e) {
+				throw new DbException(e);
 			}
+		} catch(RuntimeException e) {
+			FETCH_PROJECT_ROLLUP_TIMER.recordError();
+			throw e;
+		} finally {
+			FETCH_PROJECT_ROLLUP_TIMER.record(startNanos);
 		}
+		
+	}
+
+
+	private ProjectRollup readRollup(ResultSet rs) throws SQLException {
+		
+		return new ProjectRollup(rs.getInt("project_id"), rs.getInt("material_count"), rs.getInt("step_count"),
+				ProjectRollup.toCents(rs.getBigDecimal("total_cost")), rs.getBigDecimal("estimated_hours"),
+				rs.getBigDecimal("actual_hours"));
 	}
 
 
-	// Switch case 3 - Allow user to select a specific project to work with and return related Steps
-	private List<Step> fetchStepsForProject(Connection conn, Integer projectId) throws SQLException {
+	/*
+	 * Steps are ordered by sparse step_order keys, STEP_ORDER_GAP apart when written in bulk. A step placed between two
+	 * others takes the midpoint of their keys, so an insert or move writes one row. Only when two neighbours have no key
+	 * left between them are the project's steps renumbered (compacted) back to even gaps. Every step operation locks the
+	 * parent project row first, which serializes step changes per project without blocking other projects.
+	 */
 
-		String sql = "SELECT * FROM " + STEP_TABLE + " WHERE project_id = ?";
+	// Adds a step before the step with ID beforeStepId, or at the end if beforeStepId is null
+	public Step insertStep(Integer projectId, String stepText, Integer beforeStepId) {
 		
-		try(PreparedStatement stmt = conn.prepareStatement(sql)) {
-			setParameter(stmt, 1, projectId, Integer.class);				// Replace ? parameter in SQL with projectId from user selection
-			
-			try(ResultSet rs = stmt.executeQuery()) {
-				List<Step> steps = new LinkedList<>();						// LinkedList allows for dynamically sized list with values kept in order
+		long startNanos = System.nanoTime();
+		
+		try {
+			try(Connection conn = DbConnection.getConnection()) {
 				
-				while(rs.next()) {
-					steps.add(extract(rs, Step.class));						// Add all returned values to List
+				startTransaction(conn);
+				
+				try {
+					lockProject(conn, projectId);
+					int stepOrder = stepOrderBefore(conn, projectId, beforeStepId, NO_STEP);
+					
+					try(PreparedStatement stmt = conn.prepareStatement(INSERT_STEP_SQL, Statement.RETURN_GENERATED_KEYS)) {
+						setParameter(stmt, 1, projectId, Integer.class);
+						setParameter(stmt, 2, stepText, String.class);
+						setParameter(stmt, 3, stepOrder, Integer.class);
+						stmt.executeUpdate();
+						
+						Step step = new Step();
+						step.setStepId(getGeneratedKeys(stmt, 1)[0]);
+						step.setProjectId(projectId);
+						step.setStepText(stepText);
+						step.setStepOrder(stepOrder);
+						
+						commitTransaction(conn);
+						return step;
+					}
+					
+				} catch(DbException e) {
+					rollbackTransaction(conn);
+					throw e;
+				} catch(Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException(e);
 				}
 				
-				return steps;
-
+			} catch(SQLException e) {
+				throw new DbException(e);
 			}
+		} catch(RuntimeException e) {
+			INSERT_STEP_TIMER.recordError();
+			throw e;
+		} finally {
+			INSERT_STEP_TIMER.record(startNanos);
 		}
+		
 	}
 
 
-	// Switch case 3 - Allow user to select a specific project to work with and return related Materials
-	private List<Material> fetchMaterialsForProject(Connection conn, Integer projectId) throws SQLException {
-
-		String sql = "SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id = ?";
+	// Moves a step before the step with ID beforeStepId, or to the end if beforeStepId is null. False if the step is not found.
+	public boolean moveStep(Integer projectId, Integer stepId, Integer beforeStepId) {
 		
-		try(PreparedStatement stmt = conn.prepareStatement(sql)) {
-			setParameter(stmt, 1, projectId, Integer.class);				// Replace ? parameter in SQL with projectId from user selection
+		long startNanos = System.nanoTime();
+		
+		try {
+			if(Objects.equals(stepId, beforeStepId)) {
+				return true;															// Already in place
+			}
 			
-			try(ResultSet rs = stmt.executeQuery()) {
-				List<Material> materials = new LinkedList<>();				// LinkedList allows for dynamically sized list with values kept in order
-
-				while(rs.next()) {
-					materials.add(extract(rs, Material.class));				// Add all returned values to List
+			try(Connection conn = DbConnection.getConnection()) {
+				
+				startTransaction(conn);
+				
+				try {
+					lockProject(conn, projectId);
+					
+					if(Objects.isNull(fetchStepOrder(conn, projectId, stepId))) {
+						commitTransaction(conn);
+						return false;
+					}
+					
+					int stepOrder = stepOrderBefore(conn, projectId, beforeStepId, stepId);
+					
+					try(PreparedStatement stmt = conn.prepareStatement(UPDATE_STEP_ORDER_SQL)) {
+						setParameter(stmt, 1, stepOrder, Integer.class);
+						setParameter(stmt, 2, stepId, Integer.class);
+						stmt.executeUpdate();
+					}
+					
+					commitTransaction(conn);
+					return true;
+					
+				} catch(DbException e) {
+					rollbackTransaction(conn);
+					throw e;
+				} catch(Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException(e);
 				}
 				
-				return materials;
-
+			} catch(SQLException e) {
+				throw new DbException(e);
 			}
+		} catch(RuntimeException e) {
+			MOVE_STEP_TIMER.recordError();
+			throw e;
+		} finally {
+			MOVE_STEP_TIMER.record(startNanos);
 		}
+		
 	}
 
 
-	// Switch case 4 - Accepts updated project details and updates the database. Returns database success/fail.
-	public boolean modifyProjectDetails(Project updatedProj) {
-
-		// @formatter:off
-		String sql = ""
-				+ "UPDATE " + PROJECT_TABLE + " SET "
-				+ "project_name = ?, "
-				+ "estimated_hours = ?, "
-				+ "actual_hours = ?, "
-				+ "difficulty = ?, "
-				+ "notes = ? "
-				+ "WHERE project_id = ?";
-		// @formatter:on
+	// Deletes one step. The gap it leaves needs no renumbering. False if the step is not found.
+	public boolean deleteStep(Integer projectId, Integer stepId) {
 		
-		try(Connection conn = DbConnection.getConnection()) {				// Initiate connection with DB. If successful, try running SQL statement. If fail, throw exception
-			
-			startTransaction(conn);
-			
-			try(PreparedStatement stmt = conn.prepareStatement(sql)) {
-				
-				setParameter(stmt, 1, updatedProj.getProjectName(), String.class);
-				setParameter(stmt, 2, updatedProj.getEstimatedHours(), BigDecimal.class);
-				setParameter(stmt, 3, updatedProj.getActualHours(), BigDecimal.class);
-				setParameter(stmt, 4, updatedProj.getDifficulty(), Integer.class);
-				setParameter(stmt, 5, updatedProj.getNotes(), String.class);
-				setParameter(stmt, 6, updatedProj.getProjectId(), Integer.class);
-				
-				boolean updated = stmt.executeUpdate() == 1;				// If update to database succeeds, will return 1 (true)
-				commitTransaction(conn);
+		long startNanos = System.nanoTime();
+		
+		try {
+			try(Connection conn = DbConnection.getConnection()) {
 				
-				return updated;												// Send update success (1/true) or fail (0/false) back to service layer
+				startTransaction(conn);
 				
+				try {
+					if(!tryLockProject(conn, projectId)) {
+						commitTransaction(conn);
+						return false;													// No project, so no step either
+					}
+					
+					boolean deleted;
+					
+					try(PreparedStatement stmt = conn.prepareStatement(DELETE_STEP_SQL)) {
+						setParameter(stmt, 1, stepId, Integer.class);
+						setParameter(stmt, 2, projectId, Integer.class);
+						deleted = stmt.executeUpdate() == 1;
+					}
+					
+					commitTransaction(conn);
+					return deleted;
+					
+				} catch(Exception e) {
+					rollbackTransaction(conn);
+					throw new DbException(e);
+				}
 				
-			} catch(Exception e) {
-				rollbackTransaction(conn);									// If SQL statement fails, roll back transaction
+			} catch(SQLException e) {
 				throw new DbException(e);
 			}
+		} catch(RuntimeException e) {
+			DELETE_STEP_TIMER.recordError();
+			throw e;
+		} finally {
+			DELETE_STEP_TIMER.record(startNanos);
+		}
+		
+	}
+
+
+	// Inside a transaction, locks the project row until the transaction ends: the same lock every step change takes first.
+	// Returns false if the project does not exist.
+	public boolean lockProject(Integer projectId) {
+		
+		try(Connection conn = DbConnection.getConnection()) {
+			
+			return tryLockProject(conn, projectId);
 			
 		} catch(SQLException e) {
 			throw new DbException(e);
 		}
+		
 	}
 
 
-	// Switch case 5 - Delete selected project from table
-	public boolean deleteProject(Integer projectId) {
+	private void lockProject(Connection conn, Integer projectId) throws SQLException {
+		
+		if(!tryLockProject(conn, projectId)) {
+			throw new DbException("Project with ID " + projectId + " does not exist.");
+		}
+		
+	}
 
-		String sql = "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+
+	private boolean tryLockProject(Connection conn, Integer projectId) throws SQLException {
 		
-		try(Connection conn = DbConnection.getConnection()) {				// Initiate connection with DB. If successful, try running SQL statement. If fail, throw exception
+		try(PreparedStatement stmt = conn.prepareStatement(LOCK_PROJECT_SQL)) {
+			setParameter(stmt, 1, projectId, Integer.class);
 			
-			startTransaction(conn);
+			try(ResultSet rs = stmt.executeQuery()) {
+				return rs.next();
+			}
+		}
+		
+	}
+
+
+	/*
+	 * Key for a step placed before beforeStepId (or last, if null), ignoring the step being moved. Compacts the project's
+	 * steps and tries again when there is no free key at that spot.
+	 */
+	private int stepOrderBefore(Connection conn, Integer projectId, Integer beforeStepId, int movingStepId)
+			throws SQLException {
+		
+		for(int attempt = 0; attempt < 2; attempt++) {
+			long lower;
+			long upper;
 			
-			try(PreparedStatement stmt = conn.prepareStatement(sql)) {
-				
-				setParameter(stmt, 1, projectId, Integer.class);
-				
-				boolean updated = stmt.executeUpdate() == 1;				// If update to database succeeds, will return 1 (true)
-				commitTransaction(conn);
-				
-				return updated;												// Send update success (1/true) or fail (0/false) back to service layer
+			if(Objects.isNull(beforeStepId)) {
+				lower = fetchMaxStepOrder(conn, FETCH_LAST_STEP_ORDER_SQL, projectId, null, movingStepId);
+				upper = lower + 2L * STEP_ORDER_GAP;										// Append one full gap after the last step
+			} else {
+				Integer beforeOrder = fetchStepOrder(conn, projectId, beforeStepId);
 				
+				if(Objects.isNull(beforeOrder)) {
+					throw new DbException("Step with ID " + beforeStepId + " is not a step of project " + projectId + ".");
+				}
 				
-			} catch(Exception e) {
-				rollbackTransaction(conn);									// If SQL statement fails, roll back transaction
-				throw new DbException(e);
+				lower = fetchMaxStepOrder(conn, FETCH_PREVIOUS_STEP_ORDER_SQL, projectId, beforeOrder, movingStepId);
+				upper = beforeOrder;
 			}
 			
-		} catch(SQLException e) {
-			throw new DbException(e);
+			long middle = (lower + upper) / 2;
+			
+			if(middle > lower && middle < upper && middle <= Integer.MAX_VALUE) {
+				return (int)middle;
+			}
+			
+			compactSteps(conn, projectId);
 		}
 		
+		throw new DbException("No step order is free before step " + beforeStepId + " in project " + projectId + ".");
 	}
 
-	
-}
\ No newline at end of file
+
+	private Integer fetchStepOrder(Connection conn, Integer projectId, Integer stepId) throws SQLException {
+		
+		try(PreparedStatement stmt = conn.prepareStatement(FETCH_STEP_ORDER_SQL)) {
+			setParameter(stmt, 1, stepId, Integer.class);
+			setParameter(stmt, 2, projectId, Integer.class);
+			
+			try(ResultSet rs = stmt.executeQuery()) {
+				return rs.next() ? rs.getInt(1) : null;
+			}
+		}
+		
+	}
+
+
+	// Largest key below the given one (or overall, for null), or 0 if there is none
+	private long fetchMaxStepOrder(Connection conn, String sql, Integer projectId, Integer belowOrder, int excludedStepId)
+			throws SQLException {
+		
+		try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+			int parameterIndex = 1;
+			
+			setParameter(stmt, parameterIndex++, projectId, Integer.class);
+			
+			if(Objects.nonNull(belowOrder)) {
+				setParameter(stmt, parameterIndex++, belowOrder, Integer.class);
+			}
+			
+			setParameter(stmt, parameterIndex, excludedStepId, Integer.class);
+			
+			try(ResultSet rs = stmt.executeQuery()) {
+				return rs.next() ? rs.getLong(1) : 0;									// MAX of no rows is NULL, which reads as 0
+			}
+		}
+		
+	}
+
+
+	// Renumbers a project's steps to STEP_ORDER_GAP, 2 * STEP_ORDER_GAP, ... in their current order, in one batch
+	private void compactSteps(Connection conn, Integer projectId) throws SQLException {
+		
+		List<Integer> stepIds = new ArrayList<>();
+		
+		try(PreparedStatement stmt = conn.prepareStatement(FETCH_STEP_IDS_IN_ORDER_SQL)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+			
+			try(ResultSet rs = stmt.executeQuery()) {
+				while(rs.next()) {
+					stepIds.add(rs.getInt(1));
+				}
+			}
+		}
+		
+		try(PreparedStatement stmt = conn.prepareStatement(UPDATE_STEP_ORDER_SQL)) {
+			for(int index = 0; index < stepIds.size(); index++) {
+				setParameter(stmt, 1, (index + 1) * STEP_ORDER_GAP, Integer.class);
+				setParameter(stmt, 2, stepIds.get(index), Integer.class);
+				stmt.addBatch();
+			}
+			
+			stmt.executeBatch();
+		}
+		
+	}
+
+}
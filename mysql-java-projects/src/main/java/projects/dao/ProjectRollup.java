@@ -0,0 +1,99 @@
+package projects.dao;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Objects;
+import projects.entity.Material;
+import projects.entity.Project;
+
+// Aggregates for one project: child row counts, total material cost, and hours. Immutable, so it can be shared freely.
+public class ProjectRollup {
+
+	private final Integer projectId;
+	private final int materialCount;
+	private final int stepCount;
+	private final long totalCostCents;								// Sum of num_required * cost, in cents
+	private final BigDecimal estimatedHours;
+	private final BigDecimal actualHours;
+
+	public ProjectRollup(Integer projectId, int materialCount, int stepCount, long totalCostCents, BigDecimal estimatedHours,
+			BigDecimal actualHours) {
+		this.projectId = projectId;
+		this.materialCount = materialCount;
+		this.stepCount = stepCount;
+		this.totalCostCents = totalCostCents;
+		this.estimatedHours = estimatedHours;
+		this.actualHours = actualHours;
+	}
+
+	// Computes the rollup from a fully loaded project
+	public static ProjectRollup of(Project project) {
+		
+		long costCents = 0;
+		
+		for(Material material : project.getMaterials()) {
+			if(Objects.nonNull(material.getNumRequired()) && Objects.nonNull(material.getCost())) {
+				costCents += toCents(material.getCost()) * material.getNumRequired();
+			}
+		}
+		
+		return new ProjectRollup(project.getProjectId(), project.getMaterials().size(), project.getSteps().size(), costCents,
+				project.getEstimatedHours(), project.getActualHours());
+	}
+
+	// Money columns are DECIMAL(7,2), so a cent amount is exact
+	static long toCents(BigDecimal amount) {
+		return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+	}
+
+	// Same counts and cost with new hours, for when only the project row changed
+	public ProjectRollup withHours(BigDecimal estimatedHours, BigDecimal actualHours) {
+		return new ProjectRollup(projectId, materialCount, stepCount, totalCostCents, estimatedHours, actualHours);
+	}
+
+	// Same hours and cost with a different step count
+	public ProjectRollup withStepCount(int stepCount) {
+		return new ProjectRollup(projectId, materialCount, stepCount, totalCostCents, estimatedHours, actualHours);
+	}
+
+	public Integer getProjectId() {
+		return projectId;
+	}
+
+	public int getMaterialCount() {
+		return materialCount;
+	}
+
+	public int getStepCount() {
+		return stepCount;
+	}
+
+	public long getTotalCostCents() {
+		return totalCostCents;
+	}
+
+	public BigDecimal getTotalCost() {
+		return BigDecimal.valueOf(totalCostCents, 2);
+	}
+
+	public BigDecimal getEstimatedHours() {
+		return estimatedHours;
+	}
+
+	public BigDecimal getActualHours() {
+		return actualHours;
+	}
+
+	// Actual minus estimated hours, or null until both are known
+	public BigDecimal getHoursVariance() {
+		return Objects.isNull(estimatedHours) || Objects.isNull(actualHours) ? null : actualHours.subtract(estimatedHours);
+	}
+
+	@Override
+	public String toString() {
+		return "projectId=" + projectId + ", materials=" + materialCount + ", steps=" + stepCount + ", totalCost="
+				+ getTotalCost() + ", estimatedHours=" + estimatedHours + ", actualHours=" + actualHours + ", hoursVariance="
+				+ getHoursVariance();
+	}
+
+}
@@ -0,0 +1,148 @@
+package projects.dao;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Objects;
+import projects.entity.Project;
+
+/*
+ * Read-only, column-oriented page of project summaries (ID, name, hours, difficulty) for bulk listing. Each column is one
+ * array, so a summary costs a few array slots instead of a Project object with its boxed values and child lists. Hours
+ * are kept in hundredths (the columns are DECIMAL(7,2)) and NULL is stored as a sentinel, so nothing is boxed until read.
+ */
+public class ProjectSummaryBatch {
+
+	private static final int NULL_VALUE = Integer.MIN_VALUE;					// Stands for SQL NULL in the int columns
+
+	private int size;
+	private int[] projectIds;
+	private String[] projectNames;
+	private int[] estimatedHours;												// Hundredths of an hour
+	private int[] actualHours;
+	private int[] difficulties;
+	private byte[][] nameKeys;													// Collation sort keys of the names, for merging shards; null if not read
+
+	ProjectSummaryBatch(int capacity) {
+		this(capacity, false);
+	}
+
+	ProjectSummaryBatch(int capacity, boolean withNameKeys) {
+		projectIds = new int[capacity];
+		projectNames = new String[capacity];
+		estimatedHours = new int[capacity];
+		actualHours = new int[capacity];
+		difficulties = new int[capacity];
+		nameKeys = withNameKeys ? new byte[capacity][] : null;
+	}
+
+	void add(int projectId, String projectName, BigDecimal estimated, BigDecimal actual, Integer difficulty) {
+		add(projectId, projectName, estimated, actual, difficulty, null);
+	}
+
+	void add(int projectId, String projectName, BigDecimal estimated, BigDecimal actual, Integer difficulty, byte[] nameKey) {
+		if(size == projectIds.length) {
+			resize(Math.max(16, size + (size >> 1)));							// Grow by half, as ArrayList does
+		}
+		
+		projectIds[size] = projectId;
+		projectNames[size] = projectName;
+		estimatedHours[size] = toHundredths(estimated);
+		actualHours[size] = toHundredths(actual);
+		difficulties[size] = Objects.isNull(difficulty) ? NULL_VALUE : difficulty;
+		
+		if(Objects.nonNull(nameKeys)) {
+			nameKeys[size] = nameKey;
+		}
+		
+		size++;
+	}
+
+	// Drops unused capacity once the last row is read, so a short final page does not hold a full page of slots
+	void trim() {
+		if(size < projectIds.length) {
+			resize(size);
+		}
+	}
+
+	private void resize(int capacity) {
+		projectIds = Arrays.copyOf(projectIds, capacity);
+		projectNames = Arrays.copyOf(projectNames, capacity);
+		estimatedHours = Arrays.copyOf(estimatedHours, capacity);
+		actualHours = Arrays.copyOf(actualHours, capacity);
+		difficulties = Arrays.copyOf(difficulties, capacity);
+		
+		if(Objects.nonNull(nameKeys)) {
+			nameKeys = Arrays.copyOf(nameKeys, capacity);
+		}
+	}
+
+	private static int toHundredths(BigDecimal hours) {
+		return Objects.isNull(hours) ? NULL_VALUE : hours.movePointRight(2).intValue();
+	}
+
+	private static BigDecimal fromHundredths(int hundredths) {
+		return hundredths == NULL_VALUE ? null : BigDecimal.valueOf(hundredths, 2);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int getProjectId(int index) {
+		Objects.checkIndex(index, size);
+		return projectIds[index];
+	}
+
+	public String getProjectName(int index) {
+		Objects.checkIndex(index, size);
+		return projectNames[index];
+	}
+
+	public BigDecimal getEstimatedHours(int index) {
+		Objects.checkIndex(index, size);
+		return fromHundredths(estimatedHours[index]);
+	}
+
+	public BigDecimal getActualHours(int index) {
+		Objects.checkIndex(index, size);
+		return fromHundredths(actualHours[index]);
+	}
+
+	public Integer getDifficulty(int index) {
+		Objects.checkIndex(index, size);
+		return difficulties[index] == NULL_VALUE ? null : difficulties[index];
+	}
+
+	// WEIGHT_STRING(project_name) as read with the batch, or null if it was read without name keys
+	byte[] getNameKey(int index) {
+		Objects.checkIndex(index, size);
+		return Objects.isNull(nameKeys) ? null : nameKeys[index];
+	}
+
+	// Name of the last summary, for requesting the next page. Null if the batch is empty.
+	public String getLastProjectName() {
+		return size == 0 ? null : projectNames[size - 1];
+	}
+
+	// ID of the last summary, for requesting the next page. Null if the batch is empty.
+	public Integer getLastProjectId() {
+		return size == 0 ? null : projectIds[size - 1];
+	}
+
+	// Builds a Project holding one summary's values, for callers that need the entity
+	public Project toProject(int index) {
+		Project project = new Project();
+		project.setProjectId(getProjectId(index));
+		project.setProjectName(getProjectName(index));
+		project.setEstimatedHours(getEstimatedHours(index));
+		project.setActualHours(getActualHours(index));
+		project.setDifficulty(getDifficulty(index));
+		project.clearDirtyFields();
+		return project;
+	}
+
+}
@@ -0,0 +1,171 @@
+package projects.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import projects.exception.DbException;
+
+/*
+ * Sends reads to read replicas and leaves everything else on the primary pool. Replicas are used round-robin. A replica
+ * that fails a borrow or a health check is skipped until a later check reaches it again, and reads fall back to the
+ * primary when no replica is healthy. A replica too busy to hand out a connection within its borrow timeout counts as
+ * down as well, which moves its load to the others until the next check.
+ * 
+ * Read-your-writes: for readYourWritesMillis after a write is committed on the primary, reads go to the primary too, so
+ * replication lag can never hide a change that was just made. The window is process-wide rather than per thread, because
+ * a write on an AsyncProjectService thread is often followed by a read on the caller's thread.
+ */
+public class ReadRouter implements AutoCloseable {
+
+	private final ConnectionPool primary;
+	private final List<Replica> replicas = new ArrayList<>();
+	private final long readYourWritesMillis;
+	private final AtomicInteger next = new AtomicInteger();					// Round-robin position
+	private final ScheduledExecutorService healthChecker;
+
+	private final LongAdder replicaReads = new LongAdder();
+	private final LongAdder stickyReads = new LongAdder();					// Kept on the primary by a recent write
+	private final LongAdder fallbackReads = new LongAdder();				// Sent to the primary because no replica was healthy
+	private final LongAdder failovers = new LongAdder();					// Replica borrows that failed and moved on
+
+	public ReadRouter(ConnectionPool primary, ReplicaSettings settings) {
+
+		if(settings.getReplicas().isEmpty()) {
+			throw new IllegalArgumentException("At least one replica is required");
+		}
+
+		this.primary = primary;
+		this.readYourWritesMillis = settings.getReadYourWritesMillis();
+
+		for(PoolSettings replicaSettings : settings.getReplicas()) {
+			if(settings.inheritsDriverOptions(replicaSettings)) {
+				replicaSettings.copyDriverOptions(primary.getSettings());
+			}
+
+			replicas.add(new Replica(replicaSettings));
+		}
+
+		healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "read-replica-health-check");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long interval = settings.getHealthCheckIntervalMillis();
+		healthChecker.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.MILLISECONDS);
+
+	}
+
+
+	// A connection for reads: the primary right after a write or when every replica is down, otherwise the next replica
+	public Connection borrowRead() {
+
+		if(System.currentTimeMillis() - primary.getLastWriteAt() < readYourWritesMillis) {
+			stickyReads.increment();
+			return primary.borrow();
+		}
+
+		int count = replicas.size();
+		int first = Math.floorMod(next.getAndIncrement(), count);
+
+		for(int offset = 0; offset < count; offset++) {
+			Replica replica = replicas.get((first + offset) % count);
+
+			if(!replica.healthy) {
+				continue;
+			}
+
+			try {
+				Connection conn = replica.pool.borrow();
+				replicaReads.increment();
+				return conn;
+			} catch(DbException e) {
+				replica.markDown(e);
+				failovers.increment();
+			}
+		}
+
+		fallbackReads.increment();
+		return primary.borrow();
+
+	}
+
+
+	public int getHealthyReplicas() {
+		return (int)replicas.stream().filter(replica -> replica.healthy).count();
+	}
+
+
+	@Override
+	public void close() {
+
+		healthChecker.shutdownNow();
+		replicas.forEach(replica -> replica.pool.close());
+
+	}
+
+
+	@Override
+	public String toString() {
+		return String.format("replicas=%d, healthy=%d, replicaReads=%d, stickyReads=%d, fallbackReads=%d, failovers=%d",
+				replicas.size(), getHealthyReplicas(), replicaReads.sum(), stickyReads.sum(), fallbackReads.sum(), failovers.sum());
+	}
+
+
+	// Borrows from every replica, down ones included, so failed replicas come back once they answer again
+	private void checkHealth() {
+
+		for(Replica replica : replicas) {
+			try(Connection conn = replica.pool.borrow()) {
+				if(conn.isValid(replica.pool.getSettings().getValidationTimeoutSeconds())) {
+					replica.markUp();
+				} else {
+					replica.markDown(null);
+				}
+			} catch(DbException | SQLException e) {
+				replica.markDown(e);
+			}
+		}
+
+	}
+
+
+	private static class Replica {
+
+		private final ConnectionPool pool;
+		private volatile boolean healthy = true;								// Assumed up until a borrow or check fails
+
+		private Replica(PoolSettings settings) {
+			this.pool = new ConnectionPool(settings);
+		}
+
+		private void markDown(Exception cause) {
+
+			if(healthy) {
+				healthy = false;
+				System.out.println("Read replica " + pool.getSettings().getJdbcUrl() + " is unavailable"
+						+ (Objects.isNull(cause) ? "" : ": " + cause.getMessage()));
+			}
+
+		}
+
+		private void markUp() {
+
+			if(!healthy) {
+				healthy = true;
+				System.out.println("Read replica " + pool.getSettings().getJdbcUrl() + " is available again");
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,66 @@
+package projects.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Read replicas for ReadRouter. Each replica gets its own pool built from its PoolSettings. Any JDBC URL works, so a
+ * second local MySQL instance or an embedded database can stand in for a replica:
+ * 
+ *   DbConnection.configure(DbConnection.defaultSettings(),
+ *       new ReplicaSettings().addReplica("jdbc:mysql://localhost:3307/projects?user=projects&password=projects"));
+ * 
+ * A replica added by URL gets the primary's driver options (see PoolSettings.copyDriverOptions), so multi-statement
+ * aggregate loads and cursor-fetched streams work the same on it. One added with its own PoolSettings is used as given.
+ */
+public class ReplicaSettings {
+
+	private final List<PoolSettings> replicas = new ArrayList<>();
+	private final Set<PoolSettings> inheriting = Collections.newSetFromMap(new IdentityHashMap<>());	// Added by URL
+	private long readYourWritesMillis = 2 * 1000;					// Reads stay on the primary this long after a write, to cover replication lag
+	private long healthCheckIntervalMillis = 5 * 1000;				// How often each replica is checked, and a failed one retried
+
+	// Adds a replica with default pool settings, the primary's driver options, and a short borrow timeout, so reads move
+	// on quickly when it is down
+	public ReplicaSettings addReplica(String jdbcUrl) {
+		PoolSettings settings = new PoolSettings().setJdbcUrl(jdbcUrl).setBorrowTimeoutMillis(2 * 1000);
+		inheriting.add(settings);
+		return addReplica(settings);
+	}
+
+	public ReplicaSettings addReplica(PoolSettings settings) {
+		replicas.add(settings);
+		return this;
+	}
+
+	public List<PoolSettings> getReplicas() {
+		return replicas;
+	}
+
+	// True for replicas added by URL, which take their driver options from the primary
+	public boolean inheritsDriverOptions(PoolSettings replica) {
+		return inheriting.contains(replica);
+	}
+
+	public long getReadYourWritesMillis() {
+		return readYourWritesMillis;
+	}
+
+	public ReplicaSettings setReadYourWritesMillis(long readYourWritesMillis) {
+		this.readYourWritesMillis = readYourWritesMillis;
+		return this;
+	}
+
+	public long getHealthCheckIntervalMillis() {
+		return healthCheckIntervalMillis;
+	}
+
+	public ReplicaSettings setHealthCheckIntervalMillis(long healthCheckIntervalMillis) {
+		this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+		return this;
+	}
+
+}
@@ -0,0 +1,154 @@
+package projects.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import projects.exception.DbException;
+
+/*
+ * Splits projects across several databases by project_id. Every shard has the full schema. A project and all of its
+ * materials, steps, and category links live on the shard picked by shardFor(projectId); the category table is reference
+ * data copied to every shard. Shard 0 is the home shard: it holds the id_sequence table and serves DbConnection calls
+ * made outside any shard.
+ * 
+ * onShard points DbConnection at one shard's pool for the current thread, so ProjectDao code runs against a shard
+ * unchanged. A unit of work belongs to the shard it was started on and cannot move to another one.
+ */
+public class ShardRouter implements AutoCloseable {
+
+	private static final ThreadLocal<ConnectionPool> CURRENT = new ThreadLocal<>();
+	private static final int ID_BLOCK_SIZE = 100;								// IDs reserved per round trip to the home shard
+
+	private final List<ConnectionPool> pools = new ArrayList<>();
+	private final Map<String, IdAllocator> allocators = new ConcurrentHashMap<>();
+	private final ExecutorService scatter = Executors.newVirtualThreadPerTaskExecutor();
+
+	public ShardRouter(List<PoolSettings> shards) {
+
+		if(shards.isEmpty()) {
+			throw new IllegalArgumentException("At least one shard is required");
+		}
+
+		for(PoolSettings settings : shards) {
+			pools.add(new ConnectionPool(settings));
+		}
+
+	}
+
+
+	public int getShardCount() {
+		return pools.size();
+	}
+
+
+	/*
+	 * IDs come from a global allocator in blocks, so consecutive projects land on consecutive shards. The mapping is fixed
+	 * by the shard count: adding a shard means moving rows, which is out of scope here.
+	 */
+	public int shardFor(Integer projectId) {
+		return Math.floorMod(projectId, pools.size());
+	}
+
+
+	// Runs the work with DbConnection pointed at the given shard, then restores whatever the thread was using before
+	public <T> T onShard(int shard, Supplier<T> work) {
+
+		ConnectionPool previous = CURRENT.get();
+		CURRENT.set(pools.get(shard));
+
+		try {
+			return work.get();
+		} finally {
+			if(Objects.isNull(previous)) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(previous);
+			}
+		}
+
+	}
+
+
+	public <T> T onProjectShard(Integer projectId, Supplier<T> work) {
+		return onShard(shardFor(projectId), work);
+	}
+
+
+	/*
+	 * Runs the work on every shard at once, one virtual thread per shard, and returns the results in shard order. The work
+	 * runs outside any unit of work the caller has open. If a shard fails, its exception is rethrown once all have finished.
+	 */
+	public <T> List<T> onEveryShard(IntFunction<T> work) {
+
+		List<Future<T>> futures = new ArrayList<>(pools.size());
+
+		for(int shard = 0; shard < pools.size(); shard++) {
+			int target = shard;
+			futures.add(scatter.submit(() -> onShard(target, () -> work.apply(target))));
+		}
+
+		List<T> results = new ArrayList<>(pools.size());
+		RuntimeException failure = null;
+
+		for(Future<T> future : futures) {
+			try {
+				results.add(future.get());
+			} catch(ExecutionException e) {
+				RuntimeException cause = e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause()
+						: new DbException(e.getCause());
+
+				if(Objects.isNull(failure)) {
+					failure = cause;
+				} else {
+					failure.addSuppressed(cause);
+				}
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DbException(e);
+			}
+		}
+
+		if(Objects.nonNull(failure)) {
+			throw failure;
+		}
+
+		return results;
+
+	}
+
+
+	// Global ID allocator for the named row in id_sequence, shared by everything using this router
+	public IdAllocator getIdAllocator(String sequenceName) {
+		return allocators.computeIfAbsent(sequenceName, name -> new IdAllocator(getHomePool(), name, ID_BLOCK_SIZE));
+	}
+
+
+	ConnectionPool getHomePool() {
+		return pools.get(0);
+	}
+
+
+	// The shard pool the current thread is working on, or null outside onShard
+	static ConnectionPool currentPool() {
+		return CURRENT.get();
+	}
+
+
+	@Override
+	public void close() {
+
+		scatter.shutdownNow();
+		pools.forEach(ConnectionPool::close);
+
+	}
+
+}
@@ -0,0 +1,560 @@
+package projects.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import projects.entity.CategoryCount;
+import projects.entity.Project;
+import projects.entity.ProjectSearchResult;
+import projects.entity.Step;
+import projects.exception.BulkInsertException;
+import projects.exception.DbException;
+
+/*
+ * ProjectDao over the shards of a ShardRouter. Calls about one project run the inherited code on that project's shard.
+ * Listings go to every shard at once and the sorted per-shard results are merged into the order one database would
+ * return; a paged listing asks every shard for a full page and keeps the first limit rows of the merge, so the caller's
+ * keyset (afterName, afterId) works unchanged. Name order is that of the column's collation, so name-ordered rows are
+ * merged on the sort key each shard returns with them (WEIGHT_STRING), never on a comparison made in Java. New projects get their ID from the global allocator before they are
+ * inserted, which is what decides their shard.
+ */
+public class ShardedProjectDao extends ProjectDao {
+
+	public static final String PROJECT_SEQUENCE = "project";				// id_sequence row for project IDs
+
+	private static final Comparator<byte[]> NAME_KEY_ORDER = Arrays::compareUnsigned;	// Weight strings compare as unsigned bytes
+
+	private final ShardRouter router;
+	private final IdAllocator projectIds;
+
+	public ShardedProjectDao(ShardRouter router) {
+		this.router = router;
+		this.projectIds = router.getIdAllocator(PROJECT_SEQUENCE);
+	}
+
+
+	public ShardRouter getRouter() {
+		return router;
+	}
+
+
+	@Override
+	public Project insertProject(Project project) {
+
+		if(Objects.isNull(project.getProjectId())) {
+			project.setProjectId(projectIds.nextId());
+		}
+
+		return router.onProjectShard(project.getProjectId(), () -> super.insertProject(project));
+
+	}
+
+
+	/*
+	 * Each shard ingests its share in parallel, in chunks of chunkSize; the result adds up the row counts of every shard.
+	 * Shards commit independently, so when one fails the others may already have committed all or part of their share.
+	 * The BulkInsertException thrown then lists exactly the committed projects, and the IDs handed out here to projects that
+	 * were not committed are cleared again.
+	 */
+	@Override
+	public BatchInsertResult insertProjects(List<Project> projects, int chunkSize) {
+
+		long start = System.nanoTime();
+		List<Project> allocated = new ArrayList<>();
+
+		for(Project project : projects) {
+			if(Objects.isNull(project.getProjectId())) {
+				project.setProjectId(projectIds.nextId());
+				allocated.add(project);
+			}
+		}
+
+		List<List<Project>> byShard = new ArrayList<>(router.getShardCount());
+
+		for(int shard = 0; shard < router.getShardCount(); shard++) {
+			byShard.add(new ArrayList<>());
+		}
+
+		for(Project project : projects) {
+			byShard.get(router.shardFor(project.getProjectId())).add(project);
+		}
+
+		List<ShardInsert> inserts = router.onEveryShard(shard -> insertOnShard(byShard.get(shard), chunkSize));
+
+		int[] counts = new int[4];
+		List<Project> committed = new ArrayList<>(projects.size());
+		List<Integer> failedShards = new ArrayList<>();
+		RuntimeException failure = null;
+
+		for(int shard = 0; shard < inserts.size(); shard++) {
+			ShardInsert insert = inserts.get(shard);
+			committed.addAll(insert.committed());
+
+			if(Objects.nonNull(insert.result())) {
+				counts[0] += insert.result().getProjects();
+				counts[1] += insert.result().getMaterials();
+				counts[2] += insert.result().getSteps();
+				counts[3] += insert.result().getCategories();
+			}
+
+			if(Objects.nonNull(insert.failure())) {
+				failedShards.add(shard);
+
+				if(Objects.isNull(failure)) {
+					failure = insert.failure();
+				} else {
+					failure.addSuppressed(insert.failure());
+				}
+			}
+		}
+
+		if(Objects.nonNull(failure)) {
+			Set<Project> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+			kept.addAll(committed);
+
+			for(Project project : allocated) {
+				if(!kept.contains(project)) {
+					project.setProjectId(null);										// Don't leave IDs from rolled back rows on the caller's objects
+				}
+			}
+
+			throw new BulkInsertException("Bulk insert failed on shards " + failedShards + " after " + committed.size() + " of "
+					+ projects.size() + " projects were committed", failure, committed);
+		}
+
+		return new BatchInsertResult(counts[0], counts[1], counts[2], counts[3], System.nanoTime() - start);
+
+	}
+
+
+	// One shard's share of a bulk insert. A failure is returned rather than thrown, so the other shards' outcomes are kept.
+	private ShardInsert insertOnShard(List<Project> shardProjects, int chunkSize) {
+
+		if(shardProjects.isEmpty()) {
+			return new ShardInsert(null, List.of(), null);
+		}
+
+		try {
+			return new ShardInsert(super.insertProjects(shardProjects, chunkSize), shardProjects, null);
+		} catch(BulkInsertException e) {
+			return new ShardInsert(null, e.getCommittedProjects(), e);
+		} catch(RuntimeException e) {
+			return new ShardInsert(null, List.of(), e);
+		}
+
+	}
+
+
+	@Override
+	public List<Project> fetchAllProjects() {
+		return rows(merge(router.onEveryShard(shard -> super.fetchAllProjects(true, NameKeyed<Project>::new)), byNameKeyAndId(),
+				Integer.MAX_VALUE));
+	}
+
+
+	@Override
+	public List<Project> fetchProjectsPage(String afterName, Integer afterId, int limit) {
+		return rows(merge(router.onEveryShard(shard -> super.fetchProjectsPage(afterName, afterId, limit, true, NameKeyed<Project>::new)),
+				byNameKeyAndId(), limit));
+	}
+
+
+	@Override
+	public List<Integer> fetchProjectIds(int afterId, int limit) {
+		return merge(router.onEveryShard(shard -> super.fetchProjectIds(afterId, limit)), Comparator.naturalOrder(), limit);
+	}
+
+
+	@Override
+	public ProjectSummaryBatch fetchProjectSummaries(String afterName, Integer afterId, int limit) {
+
+		List<ProjectSummaryBatch> batches = router.onEveryShard(shard -> super.fetchProjectSummaries(afterName, afterId, limit, true));
+		List<Iterator<SummaryRow>> rows = new ArrayList<>(batches.size());
+
+		for(ProjectSummaryBatch batch : batches) {
+			rows.add(new SummaryRows(batch));
+		}
+
+		Comparator<SummaryRow> order = Comparator
+				.comparing((SummaryRow row) -> row.batch().getNameKey(row.index()), NAME_KEY_ORDER)
+				.thenComparingInt(row -> row.batch().getProjectId(row.index()));
+
+		ProjectSummaryBatch merged = new ProjectSummaryBatch(Math.min(limit, batches.stream().mapToInt(ProjectSummaryBatch::size).sum()));
+		Iterator<SummaryRow> iterator = new MergeIterator<>(rows, order);
+
+		while(iterator.hasNext() && merged.size() < limit) {
+			SummaryRow row = iterator.next();
+			ProjectSummaryBatch batch = row.batch();
+			int index = row.index();
+
+			merged.add(batch.getProjectId(index), batch.getProjectName(index), batch.getEstimatedHours(index),
+					batch.getActualHours(index), batch.getDifficulty(index));
+		}
+
+		return merged;
+
+	}
+
+
+	/*
+	 * Opens a cursor on every shard and merges them lazily, so memory stays at fetchSize rows per shard. The merge needs each
+	 * row's ID, so it is added to a projection that leaves it out; the name's sort key comes with every row. Closing the
+	 * stream closes every shard's cursor.
+	 */
+	@Override
+	public Stream<Project> streamProjects(int fetchSize, ProjectColumn... columns) {
+
+		ProjectColumn[] projection = columns;
+
+		if(columns.length > 0) {
+			projection = Arrays.copyOf(columns, columns.length + 1);
+			projection[columns.length] = ProjectColumn.PROJECT_ID;
+		}
+
+		ProjectColumn[] selected = projection;
+		List<Stream<NameKeyed<Project>>> streams = new ArrayList<>(router.getShardCount());
+
+		try {
+			for(int shard = 0; shard < router.getShardCount(); shard++) {
+				streams.add(router.onShard(shard, () -> super.streamProjects(fetchSize, true, NameKeyed<Project>::new, selected)));
+			}
+		} catch(RuntimeException e) {
+			closeStreams(streams, e);
+			throw e;
+		}
+
+		List<Iterator<NameKeyed<Project>>> cursors = new ArrayList<>(streams.size());
+
+		for(Stream<NameKeyed<Project>> stream : streams) {
+			cursors.add(stream.iterator());
+		}
+
+		Spliterator<NameKeyed<Project>> merged = Spliterators.spliteratorUnknownSize(
+				new MergeIterator<>(cursors, byNameKeyAndId()), Spliterator.ORDERED | Spliterator.NONNULL);
+
+		return StreamSupport.stream(merged, false).map(NameKeyed::row).onClose(() -> closeStreams(streams, null));
+
+	}
+
+
+	// Looks each ID up on its own shard only; a single ID, or IDs that all live on one shard, make one call on this thread.
+	// Overriding the untimed loader keeps fetchProjectByID and fetchProjectsByIds at one timing each, however many shards run.
+	@Override
+	protected List<Project> loadProjectsByIds(Collection<Integer> projectIds) {
+
+		Map<Integer, List<Integer>> idsByShard = new LinkedHashMap<>();
+
+		for(Integer projectId : new LinkedHashSet<>(projectIds)) {
+			if(Objects.nonNull(projectId)) {
+				idsByShard.computeIfAbsent(router.shardFor(projectId), shard -> new ArrayList<>()).add(projectId);
+			}
+		}
+
+		if(idsByShard.size() <= 1) {
+			return idsByShard.entrySet().stream().findFirst()
+					.map(entry -> router.onShard(entry.getKey(), () -> super.loadProjectsByIds(entry.getValue())))
+					.orElseGet(ArrayList::new);
+		}
+
+		List<List<Project>> found = router.onEveryShard(
+				shard -> super.loadProjectsByIds(idsByShard.getOrDefault(shard, List.of())));
+		Map<Integer, Project> projectsById = new HashMap<>(projectIds.size() * 4 / 3 + 1);
+
+		for(List<Project> shardProjects : found) {
+			for(Project project : shardProjects) {
+				projectsById.put(project.getProjectId(), project);
+			}
+		}
+
+		List<Project> projects = new ArrayList<>(projectsById.size());
+
+		for(Integer projectId : new LinkedHashSet<>(projectIds)) {							// Back to the caller's order
+			Project project = Objects.isNull(projectId) ? null : projectsById.get(projectId);
+
+			if(Objects.nonNull(project)) {
+				projects.add(project);
+			}
+		}
+
+		return projects;
+
+	}
+
+
+	@Override
+	public boolean modifyProjectDetails(Project updatedProj) {
+		return router.onProjectShard(updatedProj.getProjectId(), () -> super.modifyProjectDetails(updatedProj));
+	}
+
+
+	@Override
+	public boolean deleteProject(Integer projectId) {
+		return router.onProjectShard(projectId, () -> super.deleteProject(projectId));
+	}
+
+
+	/*
+	 * Scores are per shard, but each shard scores its own rows against the same terms, so merging by score is fair. Rows
+	 * with equal scores from different shards come out in no set order; search results are not paged, so nothing depends
+	 * on it.
+	 */
+	@Override
+	public List<ProjectSearchResult> searchProjects(String terms, int limit) {
+
+		Comparator<ProjectSearchResult> order = Comparator.comparing(ProjectSearchResult::getScore).reversed();
+
+		return merge(router.onEveryShard(shard -> super.searchProjects(terms, limit)), order, limit);
+
+	}
+
+
+	// Every shard has every category, so the counts are added up in the home shard's order
+	@Override
+	public List<CategoryCount> fetchCategoryCounts() {
+
+		List<List<CategoryCount>> shardCounts = router.onEveryShard(shard -> super.fetchCategoryCounts());
+		Map<Integer, CategoryCount> totals = new LinkedHashMap<>();
+
+		for(List<CategoryCount> counts : shardCounts) {
+			for(CategoryCount count : counts) {
+				CategoryCount total = totals.putIfAbsent(count.getCategoryId(), count);
+
+				if(Objects.nonNull(total)) {
+					total.setProjectCount(total.getProjectCount() + count.getProjectCount());
+				}
+			}
+		}
+
+		return new ArrayList<>(totals.values());
+
+	}
+
+
+	@Override
+	public List<Project> fetchProjectsInAllCategories(Collection<Integer> categoryIds, Integer afterId, int limit) {
+		return merge(router.onEveryShard(shard -> super.fetchProjectsInAllCategories(categoryIds, afterId, limit)),
+				Comparator.comparing(Project::getProjectId), limit);
+	}
+
+
+	@Override
+	public List<ProjectRollup> fetchProjectRollups() {
+
+		List<ProjectRollup> rollups = new ArrayList<>();
+		router.onEveryShard(shard -> super.fetchProjectRollups()).forEach(rollups::addAll);
+		return rollups;
+
+	}
+
+
+	@Override
+	public Optional<ProjectRollup> fetchProjectRollup(Integer projectId) {
+		return router.onProjectShard(projectId, () -> super.fetchProjectRollup(projectId));
+	}
+
+
+	@Override
+	public boolean lockProject(Integer projectId) {
+		return router.onProjectShard(projectId, () -> super.lockProject(projectId));
+	}
+
+
+	@Override
+	public Step insertStep(Integer projectId, String stepText, Integer beforeStepId) {
+		return router.onProjectShard(projectId, () -> super.insertStep(projectId, stepText, beforeStepId));
+	}
+
+
+	@Override
+	public boolean moveStep(Integer projectId, Integer stepId, Integer beforeStepId) {
+		return router.onProjectShard(projectId, () -> super.moveStep(projectId, stepId, beforeStepId));
+	}
+
+
+	@Override
+	public boolean deleteStep(Integer projectId, Integer stepId) {
+		return router.onProjectShard(projectId, () -> super.deleteStep(projectId, stepId));
+	}
+
+
+	/*
+	 * (project_name, project_id) order as each shard's ORDER BY and keyset seek apply it. The name keys are the collation's
+	 * weights, so unsigned byte order on them is the database's own name order, ties and all; a Java Collator only
+	 * approximates it (spaces and punctuation, for one, are weighed differently) and would make pages skip or repeat rows.
+	 */
+	private static Comparator<NameKeyed<Project>> byNameKeyAndId() {
+		return Comparator.comparing((NameKeyed<Project> row) -> row.nameKey(), NAME_KEY_ORDER)
+				.thenComparing(row -> row.row().getProjectId());
+	}
+
+
+	private static <T> List<T> rows(List<NameKeyed<T>> keyed) {
+
+		List<T> rows = new ArrayList<>(keyed.size());
+
+		for(NameKeyed<T> row : keyed) {
+			rows.add(row.row());
+		}
+
+		return rows;
+
+	}
+
+
+	// First limit elements of the union of lists that are each sorted by order
+	private static <T> List<T> merge(List<List<T>> sorted, Comparator<? super T> order, int limit) {
+
+		List<Iterator<T>> iterators = new ArrayList<>(sorted.size());
+		int total = 0;
+
+		for(List<T> list : sorted) {
+			iterators.add(list.iterator());
+			total += list.size();
+		}
+
+		List<T> merged = new ArrayList<>(Math.min(total, limit));
+		Iterator<T> iterator = new MergeIterator<>(iterators, order);
+
+		while(iterator.hasNext() && merged.size() < limit) {
+			merged.add(iterator.next());
+		}
+
+		return merged;
+
+	}
+
+
+	private static void closeStreams(List<? extends Stream<?>> streams, RuntimeException pending) {
+
+		RuntimeException failure = pending;
+
+		for(Stream<?> stream : streams) {
+			try {
+				stream.close();
+			} catch(RuntimeException e) {
+				if(Objects.isNull(failure)) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+
+		if(Objects.isNull(pending) && Objects.nonNull(failure)) {
+			throw failure instanceof DbException ? failure : new DbException(failure);
+		}
+
+	}
+
+
+	// K-way merge: a heap holds the head of each sorted source, so each element costs one heap operation
+	private static class MergeIterator<T> implements Iterator<T> {
+
+		private final PriorityQueue<Head<T>> heads;
+
+		MergeIterator(List<Iterator<T>> sources, Comparator<? super T> order) {
+			heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> order.compare(a.value, b.value));
+
+			for(Iterator<T> source : sources) {
+				if(source.hasNext()) {
+					heads.add(new Head<>(source.next(), source));
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !heads.isEmpty();
+		}
+
+		@Override
+		public T next() {
+			Head<T> head = heads.poll();
+
+			if(Objects.isNull(head)) {
+				throw new NoSuchElementException();
+			}
+
+			T value = head.value;
+
+			if(head.source.hasNext()) {
+				head.value = head.source.next();
+				heads.add(head);
+			}
+
+			return value;
+		}
+
+	}
+
+
+	private static class Head<T> {
+
+		private T value;
+		private final Iterator<T> source;
+
+		Head(T value, Iterator<T> source) {
+			this.value = value;
+			this.source = source;
+		}
+
+	}
+
+
+	private record ShardInsert(BatchInsertResult result, List<Project> committed, RuntimeException failure) {
+	}
+
+
+	private record SummaryRow(ProjectSummaryBatch batch, int index) {
+	}
+
+
+	private record NameKeyed<T>(T row, byte[] nameKey) {
+	}
+
+
+	private static class SummaryRows implements Iterator<SummaryRow> {
+
+		private final ProjectSummaryBatch batch;
+		private int index;
+
+		SummaryRows(ProjectSummaryBatch batch) {
+			this.batch = batch;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < batch.size();
+		}
+
+		@Override
+		public SummaryRow next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			return new SummaryRow(batch, index++);
+		}
+
+	}
+
+}
@@ -0,0 +1,36 @@
+package projects.dao;
+
+import java.sql.Connection;
+
+// How a UnitOfWork opens its transaction. Defaults leave the connection's isolation level alone and allow writes.
+public class TransactionSettings {
+
+	public static final int DEFAULT_ISOLATION = -1;					// Keep whatever the connection was opened with
+
+	private int isolation = DEFAULT_ISOLATION;						// One of the Connection.TRANSACTION_* levels
+	private boolean readOnly;										// Lets InnoDB skip transaction IDs and undo for pure reads
+
+	// Settings for a unit that only reads. READ COMMITTED avoids holding a snapshot open for the whole unit.
+	public static TransactionSettings readOnly() {
+		return new TransactionSettings().setReadOnly(true).setIsolation(Connection.TRANSACTION_READ_COMMITTED);
+	}
+
+	public int getIsolation() {
+		return isolation;
+	}
+
+	public TransactionSettings setIsolation(int isolation) {
+		this.isolation = isolation;
+		return this;
+	}
+
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	public TransactionSettings setReadOnly(boolean readOnly) {
+		this.readOnly = readOnly;
+		return this;
+	}
+
+}
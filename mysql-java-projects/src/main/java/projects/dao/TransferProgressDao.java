@@ -0,0 +1,96 @@
+package projects.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import projects.exception.DbException;
+import provided.util.DaoBase;
+
+/*
+ * Rows of transfer_progress: how many records of a bulk import are committed, keyed by the file being imported. The row
+ * is written on the same connection as the import's inserts, so inside a UnitOfWork it commits or rolls back with them.
+ * Outside any shard it lives on the home shard.
+ */
+public class TransferProgressDao extends DaoBase {
+
+	private static final String FETCH_RECORDS_SQL = "SELECT records FROM transfer_progress WHERE transfer_key = ?";
+	private static final String UPDATE_RECORDS_SQL = "UPDATE transfer_progress SET records = ? WHERE transfer_key = ?";
+	private static final String INSERT_RECORDS_SQL = "INSERT INTO transfer_progress (transfer_key, records) VALUES (?, ?)";
+	private static final String DELETE_SQL = "DELETE FROM transfer_progress WHERE transfer_key = ?";
+
+
+	// Records committed so far, or 0 if the transfer has no row
+	public long fetchRecords(String transferKey) {
+
+		try(Connection conn = DbConnection.getConnection()) {
+
+			try(PreparedStatement stmt = conn.prepareStatement(FETCH_RECORDS_SQL)) {
+				setParameter(stmt, 1, transferKey, String.class);
+
+				try(ResultSet rs = stmt.executeQuery()) {
+					return rs.next() ? rs.getLong(1) : 0;
+				}
+			}
+
+		} catch(SQLException e) {
+			throw new DbException(e);
+		}
+
+	}
+
+
+	public void saveRecords(String transferKey, long records) {
+
+		try(Connection conn = DbConnection.getConnection()) {
+
+			startTransaction(conn);
+
+			try {
+				int updated;
+
+				try(PreparedStatement stmt = conn.prepareStatement(UPDATE_RECORDS_SQL)) {
+					setLong(stmt, 1, records, false);
+					setParameter(stmt, 2, transferKey, String.class);
+					updated = stmt.executeUpdate();
+				}
+
+				if(updated == 0) {
+					try(PreparedStatement stmt = conn.prepareStatement(INSERT_RECORDS_SQL)) {
+						setParameter(stmt, 1, transferKey, String.class);
+						setLong(stmt, 2, records, false);
+						stmt.executeUpdate();
+					}
+				}
+
+				commitTransaction(conn);
+
+			} catch(Exception e) {
+				rollbackTransaction(conn);
+				throw new DbException(e);
+			}
+
+		} catch(SQLException e) {
+			throw new DbException(e);
+		}
+
+	}
+
+
+	public void delete(String transferKey) {
+
+		try(Connection conn = DbConnection.getConnection()) {
+
+			try(PreparedStatement stmt = conn.prepareStatement(DELETE_SQL)) {
+				setParameter(stmt, 1, transferKey, String.class);
+				stmt.executeUpdate();
+			}
+
+		} catch(SQLException e) {
+			throw new DbException(e);
+		}
+
+	}
+
+}
@@ -0,0 +1,204 @@
+package projects.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+import projects.exception.DbException;
+
+/*
+ * Runs several DAO calls on one connection in one transaction. While a unit is active on a thread,
+ * DbConnection.getConnection() returns the unit's connection wrapped so that the DAO's own close, commit, rollback, and
+ * setAutoCommit calls are deferred: the unit commits once when the work returns, or rolls back if it throws or if any
+ * DAO call rolled back. A user action that runs three DAO methods therefore pays one borrow and one commit (one fsync)
+ * instead of three of each.
+ * 
+ * Units nest by joining: an inner execute runs inside the outer transaction. Work that has effects outside the database
+ * (caches, indexes) registers them with afterCommit so they only happen if the transaction commits.
+ */
+public class UnitOfWork {
+
+	private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+	private final Connection physical;								// The pooled connection the unit borrowed
+	private final ConnectionPool shard = ShardRouter.currentPool();	// Shard the connection came from; null when not sharded
+	private final Connection shared;								// What DAO calls see while the unit is active
+	private final TransactionSettings settings;
+	private final List<Runnable> afterCommit = new ArrayList<>();
+	private boolean rollbackOnly;
+
+	private UnitOfWork(Connection physical, TransactionSettings settings) {
+		this.physical = physical;
+		this.settings = settings;
+		this.shared = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+				new SharedConnection());
+	}
+
+
+	// Runs the work in a read-write transaction with the connection's default isolation level
+	public static <T> T execute(Supplier<T> work) {
+		return execute(new TransactionSettings(), work);
+	}
+
+
+	public static <T> T execute(TransactionSettings settings, Supplier<T> work) {
+
+		UnitOfWork outer = CURRENT.get();
+
+		if(Objects.nonNull(outer)) {
+			if(outer.settings.isReadOnly() && !settings.isReadOnly()) {
+				throw new DbException("Cannot start a read-write unit of work inside a read-only one");
+			}
+
+			return work.get();												// Join the enclosing transaction
+		}
+
+		try(Connection conn = settings.isReadOnly() ? DbConnection.getReadConnection() : DbConnection.getConnection()) {
+			if(settings.getIsolation() != TransactionSettings.DEFAULT_ISOLATION) {
+				conn.setTransactionIsolation(settings.getIsolation());
+			}
+
+			if(settings.isReadOnly()) {
+				conn.setReadOnly(true);
+			}
+
+			conn.setAutoCommit(false);
+
+			UnitOfWork unit = new UnitOfWork(conn, settings);
+			T result;
+
+			CURRENT.set(unit);
+
+			try {
+				result = work.get();
+
+				if(unit.rollbackOnly) {
+					throw new DbException("A failed operation rolled back the unit of work");
+				}
+
+				conn.commit();
+			} catch(RuntimeException | Error e) {
+				try {
+					conn.rollback();
+				} catch(SQLException rollbackFailure) {
+					e.addSuppressed(rollbackFailure);
+				}
+
+				throw e;
+			} finally {
+				CURRENT.remove();
+			}
+
+			unit.afterCommit.forEach(Runnable::run);						// Outside the unit, so these may use the database themselves
+			return result;
+
+		} catch(SQLException e) {
+			throw new DbException(e);
+		}
+
+	}
+
+
+	// Same as execute, for work with no result
+	public static void run(TransactionSettings settings, Runnable work) {
+		execute(settings, () -> {
+			work.run();
+			return null;
+		});
+	}
+
+
+	// Runs the action once the current unit commits (never, if it rolls back), or right away when no unit is active
+	public static void afterCommit(Runnable action) {
+
+		UnitOfWork unit = CURRENT.get();
+
+		if(Objects.isNull(unit)) {
+			action.run();
+		} else {
+			unit.afterCommit.add(action);
+		}
+
+	}
+
+
+	public static boolean isActive() {
+		return Objects.nonNull(CURRENT.get());
+	}
+
+
+	// True while the current unit has uncommitted writes that caches do not reflect yet
+	public static boolean hasPendingWrites() {
+		UnitOfWork unit = CURRENT.get();
+		return Objects.nonNull(unit) && !unit.afterCommit.isEmpty();
+	}
+
+
+	// Connection handed out by DbConnection while a unit is active on this thread
+	static Connection currentConnection() {
+		UnitOfWork unit = CURRENT.get();
+
+		if(Objects.isNull(unit)) {
+			return null;
+		}
+
+		if(unit.shard != ShardRouter.currentPool()) {
+			throw new DbException("A unit of work cannot span shards. Start it inside ShardRouter.onShard.");
+		}
+
+		return unit.shared;
+	}
+
+
+	// Passes everything to the unit's connection except the calls that would end or reshape the transaction
+	private class SharedConnection implements InvocationHandler {
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+			switch(method.getName()) {
+
+				case "close":
+				case "commit":
+				case "setAutoCommit":										// DAO methods turn auto-commit off; it already is
+				case "setTransactionIsolation":
+				case "setReadOnly":
+					return null;
+
+				case "rollback":
+					if(Objects.isNull(args)) {
+						rollbackOnly = true;								// The whole unit rolls back when the work returns
+						return null;
+					}
+					break;													// Rolling back to a savepoint stays within the unit
+
+				case "isClosed":
+					return physical.isClosed();
+
+				case "equals":
+					return proxy == args[0];
+
+				case "hashCode":
+					return System.identityHashCode(proxy);
+
+				default:
+					break;
+			}
+
+			try {
+				return method.invoke(physical, args);
+			} catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+
+		}
+
+	}
+
+}
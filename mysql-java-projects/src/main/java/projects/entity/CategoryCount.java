@@ -0,0 +1,42 @@
+/**
+ * 
+ */
+package projects.entity;
+
+/**
+ * A category with the number of projects linked to it.
+ */
+public class CategoryCount {
+  private Integer categoryId;
+  private String categoryName;
+  private Long projectCount;
+
+  public Integer getCategoryId() {
+    return categoryId;
+  }
+
+  public void setCategoryId(Integer categoryId) {
+    this.categoryId = categoryId;
+  }
+
+  public String getCategoryName() {
+    return categoryName;
+  }
+
+  public void setCategoryName(String categoryName) {
+    this.categoryName = categoryName;
+  }
+
+  public Long getProjectCount() {
+    return projectCount;
+  }
+
+  public void setProjectCount(Long projectCount) {
+    this.projectCount = projectCount;
+  }
+
+  @Override
+  public String toString() {
+    return "ID=" + categoryId + ", categoryName=" + categoryName + ", projectCount=" + projectCount;
+  }
+}
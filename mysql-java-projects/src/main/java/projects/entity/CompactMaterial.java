@@ -0,0 +1,99 @@
+/**
+ * 
+ */
+package projects.entity;
+
+import java.math.BigDecimal;
+
+/**
+ * Allocation-light form of {@link Material}. IDs and quantity are primitive ints and cost is held
+ * in cents as a long, with nullable columns tracked in a bitmask.
+ */
+public class CompactMaterial {
+  private static final int NUM_REQUIRED_NULL = 1;
+  private static final int COST_NULL = 1 << 1;
+
+  private int materialId;
+  private int projectId;
+  private String materialName;
+  private int numRequired;
+  private long costCents;
+  private int nullMask = NUM_REQUIRED_NULL | COST_NULL;
+
+  public int getMaterialId() {
+    return materialId;
+  }
+
+  public void setMaterialId(int materialId) {
+    this.materialId = materialId;
+  }
+
+  public int getProjectId() {
+    return projectId;
+  }
+
+  public void setProjectId(int projectId) {
+    this.projectId = projectId;
+  }
+
+  public String getMaterialName() {
+    return materialName;
+  }
+
+  public void setMaterialName(String materialName) {
+    this.materialName = materialName;
+  }
+
+  public boolean hasNumRequired() {
+    return (nullMask & NUM_REQUIRED_NULL) == 0;
+  }
+
+  public int getNumRequired() {
+    return numRequired;
+  }
+
+  public void setNumRequired(int numRequired) {
+    this.numRequired = numRequired;
+    nullMask &= ~NUM_REQUIRED_NULL;
+  }
+
+  public void clearNumRequired() {
+    numRequired = 0;
+    nullMask |= NUM_REQUIRED_NULL;
+  }
+
+  public boolean hasCost() {
+    return (nullMask & COST_NULL) == 0;
+  }
+
+  /**
+   * Returns the unit cost in cents. Only meaningful if {@link #hasCost()} is true.
+   */
+  public long getCostCents() {
+    return costCents;
+  }
+
+  public void setCostCents(long costCents) {
+    this.costCents = costCents;
+    nullMask &= ~COST_NULL;
+  }
+
+  public void clearCost() {
+    costCents = 0;
+    nullMask |= COST_NULL;
+  }
+
+  /**
+   * Returns num_required * cost in cents, or 0 if either is missing, matching how SUM skips NULLs.
+   */
+  public long getTotalCostCents() {
+    return hasNumRequired() && hasCost() ? costCents * numRequired : 0;
+  }
+
+  @Override
+  public String toString() {
+    return "ID=" + materialId + ", materialName=" + materialName + ", numRequired="
+        + (hasNumRequired() ? numRequired : null) + ", cost="
+        + (hasCost() ? BigDecimal.valueOf(costCents, 2) : null);
+  }
+}
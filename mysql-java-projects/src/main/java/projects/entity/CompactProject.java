@@ -0,0 +1,148 @@
+/**
+ * 
+ */
+package projects.entity;
+
+import java.math.BigDecimal;
+
+/**
+ * Allocation-light form of {@link Project} for bulk reads and aggregation. IDs and difficulty are
+ * primitive ints and hours are held in hundredths as longs, so a row costs one object plus its
+ * strings. Nullable numeric columns are tracked in a bitmask instead of with boxed values.
+ * Children are not loaded; use {@link CompactMaterial} for materials.
+ */
+public class CompactProject {
+  private static final int ESTIMATED_HOURS_NULL = 1;
+  private static final int ACTUAL_HOURS_NULL = 1 << 1;
+  private static final int DIFFICULTY_NULL = 1 << 2;
+
+  private int projectId;
+  private String projectName;
+  private long estimatedHoursHundredths;
+  private long actualHoursHundredths;
+  private int difficulty;
+  private String notes;
+  private int version;
+  private int nullMask = ESTIMATED_HOURS_NULL | ACTUAL_HOURS_NULL | DIFFICULTY_NULL;
+
+  public int getProjectId() {
+    return projectId;
+  }
+
+  public void setProjectId(int projectId) {
+    this.projectId = projectId;
+  }
+
+  public String getProjectName() {
+    return projectName;
+  }
+
+  public void setProjectName(String projectName) {
+    this.projectName = projectName;
+  }
+
+  public boolean hasEstimatedHours() {
+    return (nullMask & ESTIMATED_HOURS_NULL) == 0;
+  }
+
+  /**
+   * Returns the estimated hours in hundredths of an hour. Only meaningful if
+   * {@link #hasEstimatedHours()} is true.
+   */
+  public long getEstimatedHoursHundredths() {
+    return estimatedHoursHundredths;
+  }
+
+  public void setEstimatedHoursHundredths(long estimatedHoursHundredths) {
+    this.estimatedHoursHundredths = estimatedHoursHundredths;
+    nullMask &= ~ESTIMATED_HOURS_NULL;
+  }
+
+  public void clearEstimatedHours() {
+    estimatedHoursHundredths = 0;
+    nullMask |= ESTIMATED_HOURS_NULL;
+  }
+
+  public boolean hasActualHours() {
+    return (nullMask & ACTUAL_HOURS_NULL) == 0;
+  }
+
+  /**
+   * Returns the actual hours in hundredths of an hour. Only meaningful if
+   * {@link #hasActualHours()} is true.
+   */
+  public long getActualHoursHundredths() {
+    return actualHoursHundredths;
+  }
+
+  public void setActualHoursHundredths(long actualHoursHundredths) {
+    this.actualHoursHundredths = actualHoursHundredths;
+    nullMask &= ~ACTUAL_HOURS_NULL;
+  }
+
+  public void clearActualHours() {
+    actualHoursHundredths = 0;
+    nullMask |= ACTUAL_HOURS_NULL;
+  }
+
+  public boolean hasDifficulty() {
+    return (nullMask & DIFFICULTY_NULL) == 0;
+  }
+
+  public int getDifficulty() {
+    return difficulty;
+  }
+
+  public void setDifficulty(int difficulty) {
+    this.difficulty = difficulty;
+    nullMask &= ~DIFFICULTY_NULL;
+  }
+
+  public void clearDifficulty() {
+    difficulty = 0;
+    nullMask |= DIFFICULTY_NULL;
+  }
+
+  public String getNotes() {
+    return notes;
+  }
+
+  public void setNotes(String notes) {
+    this.notes = notes;
+  }
+
+  public int getVersion() {
+    return version;
+  }
+
+  public void setVersion(int version) {
+    this.version = version;
+  }
+
+  /**
+   * Converts to a {@link Project}. This allocates the boxed and BigDecimal values the compact form
+   * avoids, so use it only at the edges (display, caching).
+   */
+  public Project toProject() {
+    Project project = new Project();
+
+    project.setProjectId(projectId);
+    project.setProjectName(projectName);
+    project.setEstimatedHours(hasEstimatedHours() ? BigDecimal.valueOf(estimatedHoursHundredths, 2) : null);
+    project.setActualHours(hasActualHours() ? BigDecimal.valueOf(actualHoursHundredths, 2) : null);
+    project.setDifficulty(hasDifficulty() ? difficulty : null);
+    project.setNotes(notes);
+    project.setVersion(version);
+    project.clearDirtyFields();
+
+    return project;
+  }
+
+  @Override
+  public String toString() {
+    return "ID=" + projectId + ", projectName=" + projectName + ", estimatedHours="
+        + (hasEstimatedHours() ? BigDecimal.valueOf(estimatedHoursHundredths, 2) : null) + ", actualHours="
+        + (hasActualHours() ? BigDecimal.valueOf(actualHoursHundredths, 2) : null) + ", difficulty="
+        + (hasDifficulty() ? difficulty : null) + ", version=" + version;
+  }
+}
@@ -4,7 +4,7 @@
 package projects.entity;
 
 import java.math.BigDecimal;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -12,16 +12,31 @@ import java.util.List;
  *
  */
 public class Project {
+  /*
+   * Bits of the dirty field mask, one per updatable column. Setters mark their field dirty, so an
+   * update writes only what the caller changed. Rows read from the database start clean because
+   * RowMapper writes fields directly rather than through the setters.
+   */
+  public static final int PROJECT_NAME = 1;
+  public static final int ESTIMATED_HOURS = 1 << 1;
+  public static final int ACTUAL_HOURS = 1 << 2;
+  public static final int DIFFICULTY = 1 << 3;
+  public static final int NOTES = 1 << 4;
+  public static final int ALL_FIELDS = (1 << 5) - 1;
+
   private Integer projectId;
   private String projectName;
   private BigDecimal estimatedHours;
   private BigDecimal actualHours;
   private Integer difficulty;
   private String notes;
+  private Integer version;
+  private transient int dirtyFields;
 
-  private List<Material> materials = new LinkedList<>();
-  private List<Step> steps = new LinkedList<>();
-  private List<Category> categories = new LinkedList<>();
+  // ArrayLists allocate no array until the first add, so a project without children costs only the list objects
+  private List<Material> materials = new ArrayList<>();
+  private List<Step> steps = new ArrayList<>();
+  private List<Category> categories = new ArrayList<>();
 
   public Integer getProjectId() {
     return projectId;
@@ -37,6 +52,7 @@ public class Project {
 
   public void setProjectName(String projectName) {
     this.projectName = projectName;
+    dirtyFields |= PROJECT_NAME;
   }
 
   public BigDecimal getEstimatedHours() {
@@ -45,6 +61,7 @@ public class Project {
 
   public void setEstimatedHours(BigDecimal estimatedHours) {
     this.estimatedHours = estimatedHours;
+    dirtyFields |= ESTIMATED_HOURS;
   }
 
   public BigDecimal getActualHours() {
@@ -53,6 +70,7 @@ public class Project {
 
   public void setActualHours(BigDecimal actualHours) {
     this.actualHours = actualHours;
+    dirtyFields |= ACTUAL_HOURS;
   }
 
   public Integer getDifficulty() {
@@ -61,6 +79,7 @@ public class Project {
 
   public void setDifficulty(Integer difficulty) {
     this.difficulty = difficulty;
+    dirtyFields |= DIFFICULTY;
   }
 
   public String getNotes() {
@@ -69,6 +88,37 @@ public class Project {
 
   public void setNotes(String notes) {
     this.notes = notes;
+    dirtyFields |= NOTES;
+  }
+
+  /**
+   * Row version, incremented by every update. An update only succeeds if the row still has the
+   * version that was read, so concurrent edits are detected instead of overwritten.
+   */
+  public Integer getVersion() {
+    return version;
+  }
+
+  public void setVersion(Integer version) {
+    this.version = version;
+  }
+
+  /**
+   * Returns the mask of fields set since the project was read or last saved.
+   */
+  public int getDirtyFields() {
+    return dirtyFields;
+  }
+
+  public boolean isDirty(int field) {
+    return (dirtyFields & field) != 0;
+  }
+
+  /**
+   * Marks every field clean. Called once the project's values match the database row.
+   */
+  public void clearDirtyFields() {
+    dirtyFields = 0;
   }
 
   public List<Material> getMaterials() {
@@ -93,6 +143,7 @@ public class Project {
     result += "\n   actualHours=" + actualHours;
     result += "\n   difficulty=" + difficulty;
     result += "\n   notes=" + notes;
+    result += "\n   version=" + version;
     
     result += "\n   Materials:";
     
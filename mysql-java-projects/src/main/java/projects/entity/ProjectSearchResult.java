@@ -0,0 +1,42 @@
+/**
+ * 
+ */
+package projects.entity;
+
+/**
+ * One ranked hit from a project search. Higher scores are better matches.
+ */
+public class ProjectSearchResult {
+  private Integer projectId;
+  private String projectName;
+  private Double score;
+
+  public Integer getProjectId() {
+    return projectId;
+  }
+
+  public void setProjectId(Integer projectId) {
+    this.projectId = projectId;
+  }
+
+  public String getProjectName() {
+    return projectName;
+  }
+
+  public void setProjectName(String projectName) {
+    this.projectName = projectName;
+  }
+
+  public Double getScore() {
+    return score;
+  }
+
+  public void setScore(Double score) {
+    this.score = score;
+  }
+
+  @Override
+  public String toString() {
+    return "ID=" + projectId + ", projectName=" + projectName + ", score=" + score;
+  }
+}
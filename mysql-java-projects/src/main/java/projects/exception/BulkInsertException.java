@@ -0,0 +1,22 @@
+package projects.exception;
+
+import java.util.List;
+
+import projects.entity.Project;
+
+// Thrown when a bulk insert fails part way. Chunks committed before the failure stay in the database; these are their projects.
+@SuppressWarnings("serial")
+public class BulkInsertException extends DbException {
+
+	private final List<Project> committedProjects;
+
+	public BulkInsertException(String message, Throwable cause, List<Project> committedProjects) {
+		super(message, cause);
+		this.committedProjects = committedProjects;
+	}
+
+	public List<Project> getCommittedProjects() {
+		return committedProjects;
+	}
+
+}
@@ -0,0 +1,31 @@
+package projects.exception;
+
+// Thrown when an update is based on a version of a project that someone else has since changed
+@SuppressWarnings("serial")
+public class StaleProjectException extends DbException {
+
+	private final Integer projectId;
+	private final Integer expectedVersion;
+	private final Integer currentVersion;
+
+	public StaleProjectException(Integer projectId, Integer expectedVersion, Integer currentVersion) {
+		super("Project with ID " + projectId + " was changed by someone else (expected version " + expectedVersion
+				+ ", found " + currentVersion + ").");
+		this.projectId = projectId;
+		this.expectedVersion = expectedVersion;
+		this.currentVersion = currentVersion;
+	}
+
+	public Integer getProjectId() {
+		return projectId;
+	}
+
+	public Integer getExpectedVersion() {
+		return expectedVersion;
+	}
+
+	public Integer getCurrentVersion() {
+		return currentVersion;
+	}
+
+}
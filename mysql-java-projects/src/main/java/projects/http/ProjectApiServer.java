@@ -0,0 +1,73 @@
+package projects.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpServer;
+
+import projects.dao.DaoMetrics;
+import projects.dao.DbConnection;
+import projects.service.ProjectService;
+
+/*
+ * Serves the project API (see ProjectHandler) over HTTP with the JDK's built-in server, so no container or extra
+ * dependency is needed. Each request runs on its own virtual thread: a request waiting on a pooled connection or on a
+ * slow client parks without holding a platform thread, so thousands of concurrent clients cost little more than the
+ * connection pool size allows the database to do anyway. A request inside the MySQL driver does pin its carrier
+ * (Connector/J 8.0 blocks inside synchronized), so keep the pool's maxSize at or below the carrier count; see
+ * AsyncProjectService.
+ *
+ *   java projects.http.ProjectApiServer [port]
+ */
+public class ProjectApiServer implements AutoCloseable {
+
+	public static final int DEFAULT_PORT = 8080;
+	private static final int BACKLOG = 1024;										// Connections the OS queues while all are being accepted
+	private static final int STOP_DELAY_SECONDS = 2;								// Time in-flight requests get to finish on close
+
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+	// Starts serving right away. Port 0 picks a free port; see getPort().
+	public ProjectApiServer(int port, ProjectService projectService) throws IOException {
+
+		server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+		server.createContext("/projects", new ProjectHandler(projectService));
+		server.setExecutor(executor);
+		server.start();
+
+	}
+
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+
+	@Override
+	public void close() {
+		server.stop(STOP_DELAY_SECONDS);
+		executor.shutdown();
+	}
+
+
+	public static void main(String[] args) throws IOException {
+
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+
+		DbConnection.configureShardsFromProperty();
+		DaoMetrics.registerMBean();													// Request and DAO latencies, readable from JConsole
+		ProjectApiServer server = new ProjectApiServer(port, new ProjectService());
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.close();
+			DbConnection.shutdown();
+		}));
+
+		System.out.println("Serving projects on http://localhost:" + server.getPort() + "/projects");
+
+	}
+
+}
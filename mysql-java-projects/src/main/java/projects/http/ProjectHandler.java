@@ -0,0 +1,527 @@
+package projects.http;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import projects.dao.DaoMetrics;
+import projects.dao.ProjectSummaryBatch;
+import projects.entity.Project;
+import projects.exception.StaleProjectException;
+import projects.service.ProjectService;
+import projects.transfer.Json;
+import projects.transfer.JsonLinesFormat;
+
+/*
+ * REST endpoints for projects, backed by ProjectService:
+ *
+ *   GET    /projects                        every project (ID, name, hours, difficulty), written a page at a time
+ *   GET    /projects?limit=20&afterName=..&afterId=..   one keyset page plus the key of the next one
+ *   GET    /projects/{id}                   the full project; honours If-None-Match
+ *   POST   /projects                        creates a project from a JSON body; 201 with Location
+ *   PATCH  /projects/{id}                   changes the fields in the JSON body; honours If-Match
+ *   DELETE /projects/{id}                   deletes the project and its children; honours If-Match
+ *
+ * Project bodies use the JSON of JsonLinesFormat. The ETag of a project is a checksum of that JSON, so it changes
+ * whenever any part of the aggregate does, children included. Errors come back as {"error":"..."}.
+ */
+class ProjectHandler implements HttpHandler {
+
+	private static final String JSON = "application/json; charset=utf-8";
+	private static final int MAX_BODY_BYTES = 1 << 20;
+	private static final int MAX_PAGE_SIZE = 1000;
+	private static final int ROW_FLUSH_CHARS = 8 * 1024;								// Row text gathered before it is encoded and sent
+	private static final int LIST_PAGE_SIZE = 500;									// Rows read per query when listing every project
+
+	private static final DaoMetrics.Timer LIST_TIMER = DaoMetrics.timer("HTTP GET /projects");
+	private static final DaoMetrics.Timer GET_TIMER = DaoMetrics.timer("HTTP GET /projects/{id}");
+	private static final DaoMetrics.Timer CREATE_TIMER = DaoMetrics.timer("HTTP POST /projects");
+	private static final DaoMetrics.Timer UPDATE_TIMER = DaoMetrics.timer("HTTP PATCH /projects/{id}");
+	private static final DaoMetrics.Timer DELETE_TIMER = DaoMetrics.timer("HTTP DELETE /projects/{id}");
+
+	private final ProjectService projectService;
+
+	ProjectHandler(ProjectService projectService) {
+		this.projectService = projectService;
+	}
+
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+
+		long startNanos = System.nanoTime();
+		DaoMetrics.Timer timer = null;
+
+		try {
+			String path = exchange.getRequestURI().getPath();
+			String method = exchange.getRequestMethod();
+			String idText = path.replaceFirst("^/projects/?", "");
+
+			if(idText.isEmpty()) {
+				switch(method) {
+					case "GET":
+						timer = LIST_TIMER;
+						listProjects(exchange);
+						break;
+					case "POST":
+						timer = CREATE_TIMER;
+						createProject(exchange);
+						break;
+					default:
+						methodNotAllowed(exchange, "GET, POST");
+				}
+				return;
+			}
+
+			Integer projectId = parseId(idText);
+
+			if(Objects.isNull(projectId)) {
+				sendError(exchange, 404, "No resource at " + path);
+				return;
+			}
+
+			switch(method) {
+				case "GET":
+					timer = GET_TIMER;
+					getProject(exchange, projectId);
+					break;
+				case "PATCH":
+					timer = UPDATE_TIMER;
+					updateProject(exchange, projectId);
+					break;
+				case "DELETE":
+					timer = DELETE_TIMER;
+					deleteProject(exchange, projectId);
+					break;
+				default:
+					methodNotAllowed(exchange, "GET, PATCH, DELETE");
+			}
+
+		} catch(RuntimeException e) {
+			if(Objects.nonNull(timer)) {
+				timer.recordError();
+			}
+
+			sendFailure(exchange, e);
+		} finally {
+			if(Objects.nonNull(timer)) {
+				timer.record(startNanos);
+			}
+
+			exchange.close();															// Closed last so a failure can still be reported
+		}
+
+	}
+
+
+	/*
+	 * Without a limit every project is listed: keyset pages of LIST_PAGE_SIZE rows are read one after another and written
+	 * to the chunked response, so neither side holds the whole list. Each page's connection goes back to the pool before
+	 * the page is written, so a slow or stalled client holds a socket and a virtual thread, never a connection. The list
+	 * is not a snapshot; each page is read as it was when its query ran. With a limit, one keyset page is returned with
+	 * the afterName/afterId to ask for the next one.
+	 */
+	private void listProjects(HttpExchange exchange) throws IOException {
+
+		Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+		if(!query.containsKey("limit")) {
+			writeList(exchange, new SummaryPages(projectService), null);
+			return;
+		}
+
+		int limit = parseLimit(query.get("limit"));
+		Integer afterId = query.containsKey("afterId") ? parseId(query.get("afterId")) : null;
+
+		if(query.containsKey("afterId") && Objects.isNull(afterId)) {
+			throw new IllegalArgumentException("afterId must be a project ID");
+		}
+
+		List<Project> page = projectService.fetchProjectsPage(query.get("afterName"), afterId, limit);
+
+		writeList(exchange, page.iterator(), page.size() == limit ? page.get(page.size() - 1) : null);
+
+	}
+
+
+	private void writeList(HttpExchange exchange, Iterator<Project> projects, Project last) throws IOException {
+
+		exchange.getResponseHeaders().set("Content-Type", JSON);
+		exchange.sendResponseHeaders(200, 0);											// 0 = chunked; the length is not known up front
+
+		try(Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 1 << 16)) {
+			StringBuilder rows = new StringBuilder(ROW_FLUSH_CHARS * 2);
+			char[] chars = new char[ROW_FLUSH_CHARS * 2];
+			boolean first = true;
+
+			rows.append("{\"projects\":[");
+
+			while(projects.hasNext()) {
+				Project project = projects.next();
+				rows.append(first ? "" : ",").append("{\"projectId\":").append(project.getProjectId()).append(",\"projectName\":");
+				Json.writeString(rows, project.getProjectName());
+				rows.append(",\"estimatedHours\":");
+				Json.writeNumber(rows, project.getEstimatedHours());
+				rows.append(",\"actualHours\":");
+				Json.writeNumber(rows, project.getActualHours());
+				rows.append(",\"difficulty\":");
+				Json.writeNumber(rows, project.getDifficulty());
+				rows.append('}');
+				first = false;
+
+				if(rows.length() >= ROW_FLUSH_CHARS) {
+					chars = drain(rows, chars, out);
+				}
+			}
+
+			rows.append(']');
+
+			if(Objects.nonNull(last)) {
+				rows.append(",\"next\":{\"afterName\":");
+				Json.writeString(rows, last.getProjectName());
+				rows.append(",\"afterId\":").append(last.getProjectId()).append('}');
+			}
+
+			rows.append('}');
+			drain(rows, chars, out);
+		}
+
+	}
+
+
+	// Copies the gathered rows into the writer through a reused char array, without building a String for them
+	private static char[] drain(StringBuilder rows, char[] chars, Writer out) throws IOException {
+
+		char[] buffer = chars.length >= rows.length() ? chars : new char[rows.length()];
+		rows.getChars(0, rows.length(), buffer, 0);
+		out.write(buffer, 0, rows.length());
+		rows.setLength(0);
+		return buffer;
+
+	}
+
+
+	private void getProject(HttpExchange exchange, Integer projectId) throws IOException {
+
+		Project project = projectService.fetchProjectByID(projectId);
+		byte[] body = toJson(project);
+		String etag = etag(project, body);
+
+		if(matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+			exchange.getResponseHeaders().set("ETag", etag);
+			exchange.sendResponseHeaders(304, -1);										// The client's copy is current; no body
+			return;
+		}
+
+		send(exchange, 200, body, etag);
+
+	}
+
+
+	// Inserted through the bulk path, which writes materials, steps and categories with the project. The response is the
+	// aggregate read back from the database, so it carries the children's generated IDs.
+	private void createProject(HttpExchange exchange) throws IOException {
+
+		Project submitted = JsonLinesFormat.readProject(Json.asObject(readBody(exchange), "project"));
+		projectService.addProjects(List.of(submitted), 1);
+
+		Project project = projectService.fetchProjectByID(submitted.getProjectId());
+		byte[] body = toJson(project);
+
+		exchange.getResponseHeaders().set("Location", "/projects/" + project.getProjectId());
+		send(exchange, 201, body, etag(project, body));
+
+	}
+
+
+	/*
+	 * With If-Match, the update is based on the representation the client has: it fails with 412 if that is no longer
+	 * current. The check and the update run in one unit of work holding the project's row lock, which every step change
+	 * takes too, so nothing the ETag covers can change between them.
+	 */
+	private void updateProject(HttpExchange exchange, Integer projectId) throws IOException {
+
+		Map<String, Object> changes = Json.asObject(readBody(exchange), "changes");
+		String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+
+		Project updated = projectService.inProjectTransaction(projectId, () -> {
+			Project current = projectService.fetchProjectForUpdate(projectId);
+
+			if(!ifMatchHolds(ifMatch, current)) {
+				return null;
+			}
+
+			Project updatedProj = new Project();
+			updatedProj.setProjectId(projectId);
+			updatedProj.setVersion(current.getVersion());
+
+			if(changes.containsKey("projectName"))
+				updatedProj.setProjectName(Json.getString(changes, "projectName"));
+			if(changes.containsKey("estimatedHours"))
+				updatedProj.setEstimatedHours(Json.getDecimal(changes, "estimatedHours"));
+			if(changes.containsKey("actualHours"))
+				updatedProj.setActualHours(Json.getDecimal(changes, "actualHours"));
+			if(changes.containsKey("difficulty"))
+				updatedProj.setDifficulty(Json.getInteger(changes, "difficulty"));
+			if(changes.containsKey("notes"))
+				updatedProj.setNotes(Json.getString(changes, "notes"));
+
+			if(updatedProj.getDirtyFields() == 0) {
+				return current;
+			}
+
+			projectService.modifyProjectDetails(updatedProj);
+			return projectService.fetchProjectByID(projectId);							// Read back on the unit's connection
+		});
+
+		if(Objects.isNull(updated)) {
+			preconditionFailed(exchange, projectId);
+			return;
+		}
+
+		byte[] body = toJson(updated);
+		send(exchange, 200, body, etag(updated, body));
+
+	}
+
+
+	// Same locking as updateProject, so an If-Match delete never removes a project that changed after the check
+	private void deleteProject(HttpExchange exchange, Integer projectId) throws IOException {
+
+		String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+
+		boolean deleted = projectService.inProjectTransaction(projectId, () -> {
+			if(!ifMatchHolds(ifMatch, projectService.fetchProjectForUpdate(projectId))) {
+				return false;
+			}
+
+			projectService.deleteProject(projectId);
+			return true;
+		});
+
+		if(!deleted) {
+			preconditionFailed(exchange, projectId);
+			return;
+		}
+
+		exchange.sendResponseHeaders(204, -1);
+
+	}
+
+
+	// True if the request has no If-Match or it matches the project
+	private static boolean ifMatchHolds(String ifMatch, Project current) {
+		return Objects.isNull(ifMatch) || matches(ifMatch, etag(current, toJson(current)));
+	}
+
+
+	private static void preconditionFailed(HttpExchange exchange, Integer projectId) throws IOException {
+		sendError(exchange, 412, "Project with ID " + projectId + " has changed. Fetch it again.");
+	}
+
+
+	private static byte[] toJson(Project project) {
+
+		StringBuilder json = new StringBuilder(512);
+		JsonLinesFormat.writeProject(json, project);
+		return json.toString().getBytes(StandardCharsets.UTF_8);
+
+	}
+
+
+	// Version plus a checksum of the whole representation, so child changes that leave the version alone still show
+	private static String etag(Project project, byte[] body) {
+
+		CRC32C checksum = new CRC32C();
+		checksum.update(body);
+		return "\"" + project.getVersion() + "-" + Long.toHexString(checksum.getValue()) + "\"";
+
+	}
+
+
+	// If-None-Match and If-Match carry a list of tags, or *. Weak tags compare equal to the strong ones served here.
+	private static boolean matches(String header, String etag) {
+
+		if(Objects.isNull(header)) {
+			return false;
+		}
+
+		for(String tag : header.split(",")) {
+			String candidate = tag.trim();
+
+			if(candidate.equals("*") || candidate.replaceFirst("^W/", "").equals(etag)) {
+				return true;
+			}
+		}
+
+		return false;
+
+	}
+
+
+	private static Object readBody(HttpExchange exchange) throws IOException {
+
+		try(InputStream in = exchange.getRequestBody()) {
+			byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+
+			if(body.length > MAX_BODY_BYTES) {
+				throw new IllegalArgumentException("Request body is larger than " + MAX_BODY_BYTES + " bytes");
+			}
+
+			return Json.parse(new String(body, StandardCharsets.UTF_8));
+		}
+
+	}
+
+
+	private static void send(HttpExchange exchange, int status, byte[] body, String etag) throws IOException {
+
+		Headers headers = exchange.getResponseHeaders();
+		headers.set("Content-Type", JSON);
+
+		if(Objects.nonNull(etag)) {
+			headers.set("ETag", etag);
+		}
+
+		exchange.sendResponseHeaders(status, body.length);
+
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+
+	}
+
+
+	private static void methodNotAllowed(HttpExchange exchange, String allowed) throws IOException {
+		exchange.getResponseHeaders().set("Allow", allowed);
+		sendError(exchange, 405, exchange.getRequestMethod() + " is not supported here");
+	}
+
+
+	// Maps service exceptions to status codes. If the response has already started, all that can be done is to cut it off.
+	private static void sendFailure(HttpExchange exchange, RuntimeException e) throws IOException {
+
+		if(exchange.getResponseCode() != -1) {
+			return;
+		}
+
+		if(e instanceof NoSuchElementException) {
+			sendError(exchange, 404, e.getMessage());
+		} else if(e instanceof StaleProjectException) {
+			sendError(exchange, 412, e.getMessage());
+		} else if(e instanceof IllegalArgumentException) {
+			sendError(exchange, 400, e.getMessage());
+		} else {
+			System.err.println("Request " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + " failed:");
+			e.printStackTrace();
+			sendError(exchange, 500, "Internal error");
+		}
+
+	}
+
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+
+		StringBuilder json = new StringBuilder("{\"error\":");
+		Json.writeString(json, message);
+		send(exchange, status, json.append('}').toString().getBytes(StandardCharsets.UTF_8), null);
+
+	}
+
+
+	private static Integer parseId(String text) {
+		try {
+			return Integer.valueOf(text);
+		} catch(NumberFormatException e) {
+			return null;
+		}
+	}
+
+
+	private static int parseLimit(String text) {
+
+		try {
+			int limit = Integer.parseInt(text);
+
+			if(limit >= 1 && limit <= MAX_PAGE_SIZE) {
+				return limit;
+			}
+		} catch(NumberFormatException e) {
+			// Reported below
+		}
+
+		throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+
+	}
+
+
+	private static Map<String, String> parseQuery(String rawQuery) {
+
+		Map<String, String> query = new HashMap<>();
+
+		if(Objects.isNull(rawQuery)) {
+			return query;
+		}
+
+		for(String pair : rawQuery.split("&")) {
+			int equals = pair.indexOf('=');
+			String name = equals < 0 ? pair : pair.substring(0, equals);
+			String value = equals < 0 ? "" : pair.substring(equals + 1);
+			query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+
+		return query;
+
+	}
+
+
+	// Every project, read a keyset page at a time as the rows are consumed
+	private static class SummaryPages implements Iterator<Project> {
+
+		private final ProjectService projectService;
+		private ProjectSummaryBatch page;
+		private int index;
+
+		SummaryPages(ProjectService projectService) {
+			this.projectService = projectService;
+			this.page = projectService.fetchProjectSummaries(null, null, LIST_PAGE_SIZE);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if(index == page.size() && page.size() == LIST_PAGE_SIZE) {					// A short page is the last one
+				page = projectService.fetchProjectSummaries(page.getLastProjectName(), page.getLastProjectId(), LIST_PAGE_SIZE);
+				index = 0;
+			}
+
+			return index < page.size();
+		}
+
+		@Override
+		public Project next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			return page.toProject(index++);
+		}
+
+	}
+
+}
@@ -0,0 +1,186 @@
+package projects.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import projects.dao.BatchInsertResult;
+import projects.dao.DbConnection;
+import projects.dao.ProjectRollup;
+import projects.dao.ProjectSummaryBatch;
+import projects.entity.CategoryCount;
+import projects.entity.Project;
+import projects.entity.ProjectSearchResult;
+import projects.entity.Step;
+
+/*
+ * Non-blocking front end to ProjectService for servers. Every call runs on its own virtual thread and callers get a
+ * CompletableFuture. A semaphore sized to the connection pool limits how many calls are inside the data layer at once;
+ * the rest wait cheaply (as parked virtual threads) instead of piling up on the pool's borrow timeout.
+ *
+ * A call that is inside the driver still holds a platform thread: Connector/J 8.0 does its blocking socket I/O inside
+ * synchronized blocks, so a virtual thread waiting on MySQL pins its carrier. The semaphore is therefore also the number
+ * of carriers that can be pinned at once, and it must stay at or below the carrier count (jdk.virtualThreadScheduler.
+ * parallelism, by default one per processor). With more permits than carriers, pinned calls take every carrier and all
+ * other virtual threads, including the ones waiting for a permit, stop until a query returns. Size the pool, or pass
+ * maxConcurrentCalls, accordingly.
+ */
+public class AsyncProjectService implements AutoCloseable {
+
+	private final ProjectService projectService;
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private final Semaphore permits;
+
+	// Concurrency limited to the pool's maximum number of connections, which must not exceed the carrier count (see above)
+	public AsyncProjectService(ProjectService projectService) {
+		this(projectService, DbConnection.getPoolSettings().getMaxSize());
+	}
+
+	public AsyncProjectService(ProjectService projectService, int maxConcurrentCalls) {
+		this.projectService = projectService;
+		this.permits = new Semaphore(maxConcurrentCalls, true);
+	}
+
+
+	public CompletableFuture<Project> addProject(Project project) {
+		return submit(() -> projectService.addProject(project));
+	}
+
+
+	public CompletableFuture<BatchInsertResult> addProjects(List<Project> projects) {
+		return submit(() -> projectService.addProjects(projects));
+	}
+
+
+	public CompletableFuture<List<Project>> fetchAllProjects() {
+		return submit(projectService::fetchAllProjects);
+	}
+
+
+	public CompletableFuture<List<Project>> fetchProjectsPage(String afterName, Integer afterId, int limit) {
+		return submit(() -> projectService.fetchProjectsPage(afterName, afterId, limit));
+	}
+
+
+	public CompletableFuture<ProjectSummaryBatch> fetchProjectSummaries(String afterName, Integer afterId, int limit) {
+		return submit(() -> projectService.fetchProjectSummaries(afterName, afterId, limit));
+	}
+
+
+	// Completes exceptionally with NoSuchElementException if the project does not exist
+	public CompletableFuture<Project> fetchProjectByID(Integer projectId) {
+		return submit(() -> projectService.fetchProjectByID(projectId));
+	}
+
+
+	public CompletableFuture<List<Project>> fetchProjectsByIds(Collection<Integer> projectIds) {
+		return submit(() -> projectService.fetchProjectsByIds(projectIds));
+	}
+
+
+	public CompletableFuture<Void> modifyProjectDetails(Project updatedProj) {
+		return run(() -> projectService.modifyProjectDetails(updatedProj));
+	}
+
+
+	public CompletableFuture<Void> deleteProject(Integer projectId) {
+		return run(() -> projectService.deleteProject(projectId));
+	}
+
+
+	public CompletableFuture<Step> addStep(Integer projectId, String stepText, Integer beforeStepId) {
+		return submit(() -> projectService.addStep(projectId, stepText, beforeStepId));
+	}
+
+
+	public CompletableFuture<Void> moveStep(Integer projectId, Integer stepId, Integer beforeStepId) {
+		return run(() -> projectService.moveStep(projectId, stepId, beforeStepId));
+	}
+
+
+	public CompletableFuture<Void> deleteStep(Integer projectId, Integer stepId) {
+		return run(() -> projectService.deleteStep(projectId, stepId));
+	}
+
+
+	public CompletableFuture<List<ProjectSearchResult>> searchProjects(String terms, int limit) {
+		return submit(() -> projectService.searchProjects(terms, limit));
+	}
+
+
+	public CompletableFuture<List<ProjectSearchResult>> typeaheadProjects(String prefix, int limit) {
+		return submit(() -> projectService.typeaheadProjects(prefix, limit));
+	}
+
+
+	public CompletableFuture<List<CategoryCount>> fetchCategoryCounts() {
+		return submit(projectService::fetchCategoryCounts);
+	}
+
+
+	public CompletableFuture<List<Project>> fetchProjectsInCategory(Integer categoryId, Integer afterId, int limit) {
+		return submit(() -> projectService.fetchProjectsInCategory(categoryId, afterId, limit));
+	}
+
+
+	public CompletableFuture<List<Project>> fetchProjectsInAllCategories(Collection<Integer> categoryIds, Integer afterId,
+			int limit) {
+		return submit(() -> projectService.fetchProjectsInAllCategories(categoryIds, afterId, limit));
+	}
+
+
+	public CompletableFuture<ProjectRollup> fetchProjectRollup(Integer projectId) {
+		return submit(() -> projectService.fetchProjectRollup(projectId));
+	}
+
+
+	public CompletableFuture<RollupTotals> fetchRollupTotals() {
+		return submit(projectService::fetchRollupTotals);
+	}
+
+
+	public CompletableFuture<Void> rebuildRollups() {
+		return run(projectService::rebuildRollups);
+	}
+
+
+	// Stops accepting work and waits for calls already submitted to finish
+	@Override
+	public void close() {
+		executor.close();
+	}
+
+
+	private CompletableFuture<Void> run(Runnable call) {
+		return submit(() -> {
+			call.run();
+			return null;
+		});
+	}
+
+
+	// Runs the call on a new virtual thread once a permit is free
+	private <T> CompletableFuture<T> submit(Supplier<T> call) {
+
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				permits.acquire();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CompletionException(e);
+			}
+
+			try {
+				return call.get();
+			} finally {
+				permits.release();
+			}
+		}, executor);
+
+	}
+
+}
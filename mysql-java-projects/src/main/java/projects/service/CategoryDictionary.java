@@ -0,0 +1,88 @@
+package projects.service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import projects.entity.Category;
+
+/*
+ * In-memory copy of the category table. The table is small and rarely changes, so readers share one immutable snapshot
+ * and never touch the database. The snapshot is reloaded after the time-to-live or when refresh() is called.
+ */
+public class CategoryDictionary {
+
+	private final Supplier<List<Category>> loader;
+	private final long timeToLiveNanos;
+	private final ReentrantLock loadLock = new ReentrantLock();				// One loader at a time, without pinning virtual threads
+	private volatile Snapshot snapshot;
+
+	public CategoryDictionary(Supplier<List<Category>> loader, Duration timeToLive) {
+		this.loader = loader;
+		this.timeToLiveNanos = timeToLive.toNanos();
+	}
+
+
+	// Every category, ordered by name
+	public List<Category> getCategories() {
+		
+		return current().categories;
+	}
+
+
+	// The category with the given ID, or empty if there is none
+	public Optional<Category> getCategory(Integer categoryId) {
+		
+		return Optional.ofNullable(current().byId.get(categoryId));
+	}
+
+
+	// Drops the snapshot so the next read reloads it. Call after writing to the category table.
+	public void refresh() {
+		
+		snapshot = null;
+	}
+
+
+	private Snapshot current() {
+		
+		Snapshot current = snapshot;
+		
+		if(Objects.nonNull(current) && System.nanoTime() - current.loadedAt < timeToLiveNanos) {
+			return current;
+		}
+		
+		loadLock.lock();
+		
+		try {
+			current = snapshot;													// Another thread may have loaded it while we waited
+			
+			if(Objects.isNull(current) || System.nanoTime() - current.loadedAt >= timeToLiveNanos) {
+				current = new Snapshot(loader.get());
+				snapshot = current;
+			}
+			
+			return current;
+		} finally {
+			loadLock.unlock();
+		}
+		
+	}
+
+
+	private static class Snapshot {
+		private final List<Category> categories;
+		private final Map<Integer, Category> byId;
+		private final long loadedAt = System.nanoTime();
+
+		Snapshot(List<Category> categories) {
+			this.categories = List.copyOf(categories);
+			this.byId = new HashMap<>();
+			
+			for(Category category : this.categories) {
+				byId.put(category.getCategoryId(), category);
+			}
+		}
+	}
+
+}
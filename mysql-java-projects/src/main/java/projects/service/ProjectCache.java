@@ -0,0 +1,233 @@
+package projects.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import projects.entity.Project;
+
+/*
+ * Size- and time-bounded cache of fully loaded Project aggregates, keyed by project ID. The least recently used entry is
+ * evicted when the cache is full, and entries expire a fixed time after they were written. Cached projects are shared with
+ * every caller, so they must be treated as read-only.
+ *
+ * A project read from the database may be older than a change that commits while it is in flight. Read-through callers
+ * take a stamp before the read and cache the result with putLoaded, which drops it if the project was invalidated or
+ * rewritten since the stamp; otherwise the stale copy would be served until it expires. Changes are tracked per stripe of
+ * IDs rather than per ID, so the bookkeeping is fixed in size; a change to another project in the same stripe only costs
+ * a skipped put.
+ */
+public class ProjectCache {
+
+	private static final int CHANGE_STRIPES = 1024;									// Power of two, so an ID's stripe is a mask
+
+	private final int maxSize;
+	private final long timeToLiveNanos;
+	private final ReentrantLock lock = new ReentrantLock();								// A lock rather than synchronized so virtual threads do not pin
+	private final LinkedHashMap<Integer, Entry> entries;
+
+	// Guarded by lock
+	private final long[] changedAt = new long[CHANGE_STRIPES];						// Generation of the last change to each stripe of IDs
+	private long generation;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long expirations;
+
+	public ProjectCache(int maxSize, Duration timeToLive) {
+		this.maxSize = maxSize;
+		this.timeToLiveNanos = timeToLive.toNanos();
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);							// Access order: every get moves the entry to the tail
+	}
+
+
+	// Returns the cached project, or null if it is missing or expired
+	public Project get(Integer projectId) {
+
+		lock.lock();
+
+		try {
+			Project project = lookup(projectId);
+
+			if(Objects.isNull(project)) {
+				misses++;
+			} else {
+				hits++;
+			}
+
+			return project;
+
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+
+	// Same as get, but does not count towards hit/miss statistics. Used when the service updates an entry in place.
+	public Project peek(Integer projectId) {
+
+		lock.lock();
+
+		try {
+			return lookup(projectId);
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+
+	// Caches a project as just written. Counts as a change, so reads already in flight do not replace it.
+	public void put(Project project) {
+
+		lock.lock();
+
+		try {
+			changed(project.getProjectId());
+			store(project);
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+
+	// Taken before reading a project from the database, and passed to putLoaded with the result
+	public long loadStamp() {
+
+		lock.lock();
+
+		try {
+			return generation;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+
+	// Caches a project read after stamp was taken, unless it changed since. Returns false if the project was not cached.
+	public boolean putLoaded(Project project, long stamp) {
+
+		lock.lock();
+
+		try {
+			if(changedAt[stripe(project.getProjectId())] > stamp) {
+				return false;
+			}
+
+			store(project);
+			return true;
+
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+
+	public void invalidate(Integer projectId) {
+
+		lock.lock();
+
+		try {
+			changed(projectId);
+			entries.remove(projectId);
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+
+	public void clear() {
+
+		lock.lock();
+
+		try {
+			generation++;
+			Arrays.fill(changedAt, generation);
+			entries.clear();
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+
+	public CacheStats getStats() {
+
+		lock.lock();
+
+		try {
+			return new CacheStats(hits, misses, evictions, expirations, entries.size());
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+
+	// Caller must hold the lock
+	private void store(Project project) {
+
+		entries.put(project.getProjectId(), new Entry(project, System.nanoTime()));
+
+		if(entries.size() > maxSize) {
+			Iterator<Map.Entry<Integer, Entry>> eldest = entries.entrySet().iterator();		// Head of the map is least recently used
+			eldest.next();
+			eldest.remove();
+			evictions++;
+		}
+
+	}
+
+
+	// Caller must hold the lock
+	private void changed(Integer projectId) {
+		changedAt[stripe(projectId)] = ++generation;
+	}
+
+
+	private static int stripe(Integer projectId) {
+		return Objects.hashCode(projectId) & (CHANGE_STRIPES - 1);
+	}
+
+
+	// Caller must hold the lock. Drops the entry if it has outlived its time to live.
+	private Project lookup(Integer projectId) {
+
+		Entry entry = entries.get(projectId);
+
+		if(Objects.isNull(entry)) {
+			return null;
+		}
+
+		if(System.nanoTime() - entry.writtenAt > timeToLiveNanos) {
+			entries.remove(projectId);
+			expirations++;
+			return null;
+		}
+
+		return entry.project;
+
+	}
+
+
+	private static class Entry {
+
+		private final Project project;
+		private final long writtenAt;
+
+		private Entry(Project project, long writtenAt) {
+			this.project = project;
+			this.writtenAt = writtenAt;
+		}
+
+	}
+
+}
@@ -0,0 +1,186 @@
+package projects.service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import projects.dao.ProjectRollup;
+
+/*
+ * Per-project and global aggregates kept in memory so reads cost one map lookup. Writers hand in the project's new
+ * rollup after their change commits; the global totals are adjusted by the difference from the old one, so no child rows
+ * are read. Rollups are loaded from the database on first use and can be rebuilt from scratch at any time.
+ * 
+ * Writers always pass absolute values, never deltas. That keeps a rebuild safe while writes are in flight: changes made
+ * during a rebuild are recorded and replayed onto the fresh data before it is published.
+ */
+public class ProjectRollups {
+
+	private final Supplier<List<ProjectRollup>> loader;
+	private final ReentrantLock lock = new ReentrantLock();								// Serializes writers; readers never take it
+	private final ReentrantLock rebuildLock = new ReentrantLock();						// One rebuild at a time
+	private volatile Map<Integer, ProjectRollup> rollups = new ConcurrentHashMap<>();
+	private volatile RollupTotals totals = RollupTotals.EMPTY;
+	private volatile boolean loaded;
+	private Map<Integer, Optional<ProjectRollup>> pending;								// Guarded by lock. Non-null while a rebuild runs.
+
+	public ProjectRollups(Supplier<List<ProjectRollup>> loader) {
+		this.loader = loader;
+	}
+
+
+	// Rollup for one project, or empty if the project does not exist
+	public Optional<ProjectRollup> get(Integer projectId) {
+		
+		ensureLoaded();
+		return Optional.ofNullable(rollups.get(projectId));
+	}
+
+
+	public RollupTotals getTotals() {
+		
+		ensureLoaded();
+		return totals;
+	}
+
+
+	/*
+	 * True once rollups are loaded or while a load runs. Until then a writer that would need a database read to work out
+	 * its rollup can skip it - the load will see the committed change.
+	 */
+	public boolean isTracking() {
+		
+		if(loaded) {
+			return true;
+		}
+		
+		lock.lock();
+		
+		try {
+			return Objects.nonNull(pending);
+		} finally {
+			lock.unlock();
+		}
+		
+	}
+
+
+	// Records the current rollup for a project that was added or changed
+	public void put(ProjectRollup rollup) {
+		
+		apply(rollup.getProjectId(), rollup);
+	}
+
+
+	// Forgets a project that was deleted
+	public void remove(Integer projectId) {
+		
+		apply(projectId, null);
+	}
+
+
+	// Returns the stored rollup, or null if there is none. Used by writers that change only part of a rollup.
+	public ProjectRollup peek(Integer projectId) {
+		
+		return rollups.get(projectId);
+	}
+
+
+	// Recomputes every rollup from the database and replaces the in-memory copy
+	public void rebuild() {
+		
+		rebuildLock.lock();
+		
+		try {
+			lock.lock();
+			
+			try {
+				pending = new HashMap<>();
+			} finally {
+				lock.unlock();
+			}
+			
+			Map<Integer, ProjectRollup> fresh = new ConcurrentHashMap<>();
+			RollupTotals freshTotals = RollupTotals.EMPTY;
+			
+			try {
+				for(ProjectRollup rollup : loader.get()) {
+					fresh.put(rollup.getProjectId(), rollup);
+					freshTotals = freshTotals.adjust(rollup, 1);
+				}
+			} catch(RuntimeException e) {
+				lock.lock();
+				
+				try {
+					pending = null;
+				} finally {
+					lock.unlock();
+				}
+				
+				throw e;
+			}
+			
+			lock.lock();
+			
+			try {
+				for(Map.Entry<Integer, Optional<ProjectRollup>> change : pending.entrySet()) {	// Writes that raced with the load win
+					freshTotals = freshTotals.adjust(fresh.remove(change.getKey()), -1);
+					
+					if(change.getValue().isPresent()) {
+						fresh.put(change.getKey(), change.getValue().get());
+						freshTotals = freshTotals.adjust(change.getValue().get(), 1);
+					}
+				}
+				
+				pending = null;
+				rollups = fresh;
+				totals = freshTotals;
+				loaded = true;
+			} finally {
+				lock.unlock();
+			}
+			
+		} finally {
+			rebuildLock.unlock();
+		}
+		
+	}
+
+
+	private void ensureLoaded() {
+		
+		if(loaded) {
+			return;
+		}
+		
+		rebuildLock.lock();
+		
+		try {
+			if(!loaded) {
+				rebuild();
+			}
+		} finally {
+			rebuildLock.unlock();
+		}
+		
+	}
+
+
+	private void apply(Integer projectId, ProjectRollup rollup) {
+		
+		lock.lock();
+		
+		try {
+			if(Objects.nonNull(pending)) {
+				pending.put(projectId, Optional.ofNullable(rollup));
+			}
+			
+			ProjectRollup old = Objects.isNull(rollup) ? rollups.remove(projectId) : rollups.put(projectId, rollup);
+			totals = totals.adjust(old, -1).adjust(rollup, 1);
+		} finally {
+			lock.unlock();
+		}
+		
+	}
+
+}
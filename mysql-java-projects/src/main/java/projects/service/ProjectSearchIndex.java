@@ -0,0 +1,189 @@
+package projects.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import projects.entity.ProjectSearchResult;
+
+/*
+ * In-memory inverted index of project names for typeahead. Each lowercase word of a name maps to the IDs of the projects
+ * that contain it; the words are kept sorted so a prefix is a range lookup. This answers "starts typing a name" queries
+ * without a database round trip. Full-text search over notes, steps, and materials stays in MySQL.
+ */
+public class ProjectSearchIndex {
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final TreeMap<String, Set<Integer>> idsByWord = new TreeMap<>();
+	private final Map<Integer, String> namesById = new HashMap<>();
+
+
+	// Adds the project, or re-indexes it if its name changed
+	public void put(Integer projectId, String projectName) {
+
+		lock.writeLock().lock();
+
+		try {
+			removeLocked(projectId);
+			namesById.put(projectId, projectName);
+
+			for(String word : words(projectName)) {
+				idsByWord.computeIfAbsent(word, key -> new HashSet<>()).add(projectId);
+			}
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+	}
+
+
+	public void remove(Integer projectId) {
+
+		lock.writeLock().lock();
+
+		try {
+			removeLocked(projectId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+	}
+
+
+	public void clear() {
+
+		lock.writeLock().lock();
+
+		try {
+			idsByWord.clear();
+			namesById.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+	}
+
+
+	public int size() {
+
+		lock.readLock().lock();
+
+		try {
+			return namesById.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+
+	}
+
+
+	/*
+	 * Projects whose names contain a word starting with each typed word ("ha do" matches "Hang a door"). Scored by how
+	 * much of the name the query covers, so shorter, closer names rank first; capped at limit results.
+	 */
+	public List<ProjectSearchResult> typeahead(String query, int limit) {
+
+		List<String> prefixes = words(query);
+
+		if(prefixes.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		lock.readLock().lock();
+
+		try {
+			Set<Integer> matches = null;
+
+			for(String prefix : prefixes) {
+				Set<Integer> prefixMatches = new HashSet<>();
+				NavigableMap<String, Set<Integer>> range = idsByWord.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+				range.values().forEach(prefixMatches::addAll);
+
+				if(Objects.isNull(matches)) {
+					matches = prefixMatches;
+				} else {
+					matches.retainAll(prefixMatches);									// Every typed word has to match
+				}
+
+				if(matches.isEmpty()) {
+					break;
+				}
+			}
+
+			int typedLength = String.join("", prefixes).length();
+			List<ProjectSearchResult> results = new ArrayList<>(matches.size());
+
+			for(Integer projectId : matches) {
+				ProjectSearchResult result = new ProjectSearchResult();
+				String name = namesById.get(projectId);
+				result.setProjectId(projectId);
+				result.setProjectName(name);
+				result.setScore((double)typedLength / name.length());
+				results.add(result);
+			}
+
+			results.sort(Comparator.comparing(ProjectSearchResult::getScore).reversed()
+					.thenComparing(ProjectSearchResult::getProjectName));
+
+			return new ArrayList<>(results.subList(0, Math.min(limit, results.size())));
+
+		} finally {
+			lock.readLock().unlock();
+		}
+
+	}
+
+
+	// Caller must hold the write lock
+	private void removeLocked(Integer projectId) {
+
+		String oldName = namesById.remove(projectId);
+
+		if(Objects.isNull(oldName)) {
+			return;
+		}
+
+		for(String word : words(oldName)) {
+			Set<Integer> ids = idsByWord.get(word);
+
+			if(Objects.nonNull(ids)) {
+				ids.remove(projectId);
+
+				if(ids.isEmpty()) {
+					idsByWord.remove(word);
+				}
+			}
+		}
+
+	}
+
+
+	// Lowercase words made of letters and digits
+	private static List<String> words(String text) {
+
+		List<String> words = new ArrayList<>();
+
+		if(Objects.isNull(text)) {
+			return words;
+		}
+
+		for(String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+			if(!word.isEmpty()) {
+				words.add(word);
+			}
+		}
+
+		return words;
+
+	}
+
+}
@@ -1,45 +1,443 @@
 package projects.service;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import projects.dao.BatchInsertResult;
+import projects.dao.CompactProjectDao;
+import projects.dao.DbConnection;
+import projects.dao.ProjectColumn;
 import projects.dao.ProjectDao;
+import projects.dao.ProjectRollup;
+import projects.dao.ProjectSummaryBatch;
+import projects.dao.ShardRouter;
+import projects.dao.ShardedProjectDao;
+import projects.dao.TransactionSettings;
+import projects.dao.TransferProgressDao;
+import projects.dao.UnitOfWork;
+import projects.entity.Category;
+import projects.entity.CompactMaterial;
+import projects.entity.CompactProject;
+import projects.entity.CategoryCount;
 import projects.entity.Project;
+import projects.entity.ProjectSearchResult;
+import projects.entity.Step;
+import projects.exception.BulkInsertException;
 import projects.exception.DbException;
+import projects.exception.StaleProjectException;
 
 public class ProjectService {
 
-	private ProjectDao projectDao = new ProjectDao();
+	private static final int CACHE_MAX_SIZE = 10_000;								// Fully loaded projects kept in memory
+	private static final Duration CACHE_TIME_TO_LIVE = Duration.ofMinutes(5);		// Bounds staleness from writes made outside this service
+
+	private static final int BULK_INSERT_CHUNK_SIZE = 1000;							// Projects per commit for bulk inserts
+	private static final int MAX_SEARCH_RESULTS = 100;								// Upper bound on any search result list
+	private static final Duration CATEGORY_TIME_TO_LIVE = Duration.ofMinutes(30);	// Categories are reference data and rarely change
+
+	private ProjectDao unshardedDao = new ProjectDao();
+	private volatile ShardedProjectDao shardedDao;									// Built for the shard router it was last seen with
+	private CompactProjectDao compactProjectDao = new CompactProjectDao();
+	private TransferProgressDao transferProgressDao = new TransferProgressDao();
+	private ProjectCache projectCache = new ProjectCache(CACHE_MAX_SIZE, CACHE_TIME_TO_LIVE);
+	private ProjectSearchIndex searchIndex = new ProjectSearchIndex();
+	private ReentrantLock searchIndexLoadLock = new ReentrantLock();
+	private volatile boolean searchIndexLoaded;										// The typeahead index is built on first use
+	private ProjectRollups rollups = new ProjectRollups(() -> projectDao().fetchProjectRollups());
+	private CategoryDictionary categoryDictionary = new CategoryDictionary(() -> projectDao().fetchAllCategories(), CATEGORY_TIME_TO_LIVE);
 	
 
+	// The DAO for the current data layout. The shard router is looked up on every call, so a service created before
+	// DbConnection.configureShards still reads and writes the shards.
+	private ProjectDao projectDao() {
+		
+		Optional<ShardRouter> shards = DbConnection.getShardRouter();
+		
+		if(shards.isEmpty()) {
+			return unshardedDao;
+		}
+		
+		ShardedProjectDao current = shardedDao;
+		
+		if(Objects.isNull(current) || current.getRouter() != shards.get()) {
+			current = new ShardedProjectDao(shards.get());
+			shardedDao = current;
+		}
+		
+		return current;
+	}
+
+
+	/*
+	 * Runs several service calls on one connection with one commit. Cache, index, and rollup updates from writes in the
+	 * work are applied only after the commit, and reads inside the work bypass the project cache once the work has
+	 * written, so it sees its own changes. Calls made inside the work join the same transaction.
+	 */
+	public <T> T inTransaction(Supplier<T> work) {
+		
+		return UnitOfWork.execute(work);
+	}
+
+
+	public <T> T inTransaction(TransactionSettings settings, Supplier<T> work) {
+		
+		return UnitOfWork.execute(settings, work);
+	}
+
+
+	// Same as inTransaction for work about one project. When projects are sharded the unit runs on that project's shard.
+	public <T> T inProjectTransaction(Integer projectId, Supplier<T> work) {
+		
+		return DbConnection.getShardRouter().map(router -> router.onProjectShard(projectId, () -> inTransaction(work)))
+				.orElseGet(() -> inTransaction(work));
+	}
+
+
+	// Runs several reads as one read-only READ COMMITTED transaction on one connection
+	public <T> T inReadOnlyTransaction(Supplier<T> work) {
+		
+		return UnitOfWork.execute(TransactionSettings.readOnly(), work);
+	}
+
+
 	// Used for switch case 1 - Allow user to add a project to the database and collect details for new project
 	public Project addProject(Project project) {
 		
-		return projectDao.insertProject(project);
+		Project dbProject = projectDao().insertProject(project);
+		Project cachedCopy = copyOf(dbProject);										// The caller keeps the object it passed in and may change it
+		
+		UnitOfWork.afterCommit(() -> {
+			// A new project has no children, so it is already a complete aggregate. Anything else is loaded on first read.
+			if(cachedCopy.getMaterials().isEmpty() && cachedCopy.getSteps().isEmpty() && cachedCopy.getCategories().isEmpty()) {
+				projectCache.put(cachedCopy);
+			}
+			
+			if(searchIndexLoaded) {
+				searchIndex.put(dbProject.getProjectId(), dbProject.getProjectName());
+			}
+			
+			// Only the project row is written, so the new project has no materials or steps yet
+			rollups.put(new ProjectRollup(dbProject.getProjectId(), 0, 0, 0, dbProject.getEstimatedHours(), dbProject.getActualHours()));
+		});
+		
+		return dbProject;
+	}
+
+
+	// Bulk ingest of projects with their children. Commits every BULK_INSERT_CHUNK_SIZE projects.
+	public BatchInsertResult addProjects(List<Project> projects) {
+		
+		return addProjects(projects, BULK_INSERT_CHUNK_SIZE);
+	}
+
+
+	public BatchInsertResult addProjects(List<Project> projects, int chunkSize) {
+		
+		BatchInsertResult result;
+		
+		try {
+			result = projectDao().insertProjects(projects, chunkSize);
+		} catch(BulkInsertException e) {
+			recordInserted(e.getCommittedProjects());								// Chunks committed before the failure stay in the database
+			throw e;
+		}
+		
+		recordInserted(projects);
+		return result;
+	}
+
+
+	private void recordInserted(List<Project> committed) {
+		
+		UnitOfWork.afterCommit(() -> {
+			for(Project project : committed) {
+				rollups.put(ProjectRollup.of(project));
+				
+				if(searchIndexLoaded) {
+					searchIndex.put(project.getProjectId(), project.getProjectName());
+				}
+			}
+		});
+	}
+
+
+	/*
+	 * One chunk of a resumable bulk import: inserts the projects and saves recordsAfter as the import's progress. Unsharded,
+	 * both commit in one transaction, so the saved progress never disagrees with what is in the database. Sharded, each
+	 * shard commits on its own and the progress is saved on the home shard once they all have; a crash in between makes a
+	 * resumed import insert that chunk again.
+	 */
+	public BatchInsertResult addProjectsForTransfer(String transferKey, long recordsAfter, List<Project> projects, int chunkSize) {
+		
+		Supplier<BatchInsertResult> chunk = () -> {
+			BatchInsertResult result = addProjects(projects, chunkSize);
+			transferProgressDao.saveRecords(transferKey, recordsAfter);
+			return result;
+		};
+		
+		return DbConnection.getShardRouter().isPresent() ? chunk.get() : inTransaction(chunk);
+	}
+
+
+	// Records committed so far by the import with this key, 0 if none
+	public long fetchTransferProgress(String transferKey) {
+		
+		return transferProgressDao.fetchRecords(transferKey);
+	}
+
+
+	public void clearTransferProgress(String transferKey) {
+		
+		transferProgressDao.delete(transferKey);
+	}
+
+
+	// Adds a project in compact form with its materials. Rollups are computed from the cents values directly. When projects
+	// are sharded the ID comes from the global allocator and the project is written to the shard that ID maps to.
+	public CompactProject addCompactProject(CompactProject project, List<CompactMaterial> materials) {
+		
+		Optional<ShardRouter> shards = DbConnection.getShardRouter();
+		
+		if(shards.isPresent()) {
+			ShardRouter router = shards.get();
+			project.setProjectId(router.getIdAllocator(ShardedProjectDao.PROJECT_SEQUENCE).nextId());
+			router.onProjectShard(project.getProjectId(), () -> compactProjectDao.insertProjectWithId(project, materials));
+		} else {
+			compactProjectDao.insertProject(project, materials);
+		}
+		
+		long costCents = 0;
+		
+		for(CompactMaterial material : materials) {
+			costCents += material.getTotalCostCents();
+		}
+		
+		Project entity = project.toProject();										// Hours as BigDecimal for the rollup; cost stays in cents
+		ProjectRollup rollup = new ProjectRollup(project.getProjectId(), materials.size(), 0, costCents,
+				entity.getEstimatedHours(), entity.getActualHours());
+		
+		UnitOfWork.afterCommit(() -> {
+			rollups.put(rollup);
+			
+			if(searchIndexLoaded) {
+				searchIndex.put(project.getProjectId(), project.getProjectName());
+			}
+		});
+		
+		return project;
 	}
 
 
 	// Used for switch case 2 - List all projects in projects table
 	public List<Project> fetchAllProjects() {
 		
-		return projectDao.fetchAllProjects();
+		return projectDao().fetchAllProjects();
+	}
+
+
+	// Used for switch case 2 - One page of projects after the given (name, ID) key. Nulls start at the first page.
+	public List<Project> fetchProjectsPage(String afterName, Integer afterId, int limit) {
+		
+		return projectDao().fetchProjectsPage(afterName, afterId, limit);
+	}
+
+
+	// Up to limit project IDs after afterId in ID order, which edits cannot reorder. Pass 0 for the first page.
+	public List<Integer> fetchProjectIds(int afterId, int limit) {
+		
+		return projectDao().fetchProjectIds(afterId, limit);
+	}
+
+
+	// One page of project summaries in the same order as fetchProjectsPage, held column by column for bulk listing
+	public ProjectSummaryBatch fetchProjectSummaries(String afterName, Integer afterId, int limit) {
+		
+		return projectDao().fetchProjectSummaries(afterName, afterId, limit);
+	}
+
+
+	// One page of projects in compact form, for bulk reads that should not allocate per value
+	public List<CompactProject> fetchCompactProjectsPage(String afterName, Integer afterId, int limit) {
+		
+		return compactProjectDao.fetchProjectsPage(afterName, afterId, limit);
+	}
+
+
+	// Materials of the given projects in compact form
+	public List<CompactMaterial> fetchCompactMaterials(Collection<Integer> projectIds) {
+		
+		return compactProjectDao.fetchMaterials(projectIds);
+	}
+
+
+	// Streams projects reading only the requested columns. Close the stream when done.
+	public Stream<Project> streamProjects(ProjectColumn... columns) {
+		
+		return projectDao().streamProjects(ProjectDao.DEFAULT_FETCH_SIZE, columns);
 	}
 
 
 	// Used for switch case 3 - Allow user to select a specific project to work with
 	public Project fetchProjectByID(Integer projectId) {
 		
+		boolean useCache = !UnitOfWork.hasPendingWrites();							// Uncommitted writes in this unit are newer than the cache
+		Project project = Objects.isNull(projectId) || !useCache ? null : projectCache.get(projectId);
+		
+		if(Objects.nonNull(project)) {
+			return project;														// Served from memory - no database round trip
+		}
+		
+		long stamp = projectCache.loadStamp();										// A change committed during the read makes the copy too old to cache
+		
 		// Returns selected project details or throws exception of project not found
-		return projectDao.fetchProjectByID(projectId).orElseThrow( () -> new NoSuchElementException("Project with project ID = " + projectId + " does not exist."));
+		project = projectDao().fetchProjectByID(projectId).orElseThrow( () -> new NoSuchElementException("Project with project ID = " + projectId + " does not exist."));
+		
+		if(useCache) {
+			projectCache.putLoaded(project, stamp);
+		}
+		
+		return project;
+		
+	}
+
+
+	/*
+	 * For read-modify-write inside a unit of work: locks the project row until the unit ends and returns the project as
+	 * stored, bypassing the cache. Step changes take the same lock first, so neither the project nor its children can
+	 * change before the unit commits.
+	 */
+	public Project fetchProjectForUpdate(Integer projectId) {
+		
+		if(!UnitOfWork.isActive()) {
+			throw new IllegalStateException("fetchProjectForUpdate needs a unit of work to hold the lock");
+		}
 		
+		if(!projectDao().lockProject(projectId)) {
+			throw new NoSuchElementException("Project with project ID = " + projectId + " does not exist.");
+		}
+		
+		return projectDao().fetchProjectByID(projectId).orElseThrow(
+				() -> new NoSuchElementException("Project with project ID = " + projectId + " does not exist."));
+	}
+
+
+	// Loads full details for many projects at once using a fixed number of queries
+	public List<Project> fetchProjectsByIds(Collection<Integer> projectIds) {
+		
+		Map<Integer, Project> found = new HashMap<>(projectIds.size() * 4 / 3 + 1);
+		List<Integer> missing = new ArrayList<>(projectIds.size());
+		
+		boolean useCache = !UnitOfWork.hasPendingWrites();
+		
+		for(Integer projectId : projectIds) {										// Serve what we can from the cache, load the rest in one go
+			Project project = Objects.isNull(projectId) || !useCache ? null : projectCache.get(projectId);
+			
+			if(Objects.nonNull(project)) {
+				found.put(projectId, project);
+			} else {
+				missing.add(projectId);
+			}
+		}
+		
+		long stamp = projectCache.loadStamp();
+		
+		for(Project project : projectDao().fetchProjectsByIds(missing)) {
+			if(useCache) {
+				projectCache.putLoaded(project, stamp);
+			}
+			
+			found.put(project.getProjectId(), project);
+		}
+		
+		List<Project> projects = new ArrayList<>(found.size());
+		
+		for(Integer projectId : new LinkedHashSet<>(projectIds)) {				// Same order and de-duplication as the DAO
+			Project project = found.get(projectId);
+			
+			if(Objects.nonNull(project)) {
+				projects.add(project);
+			}
+		}
+		
+		return projects;
 	}
 
 	
-	// Used for switch case 4 - Allow user to update existing project details
+	/*
+	 * Used for switch case 4 - Allow user to update existing project details. Only the fields set on updatedProj are written.
+	 * If updatedProj carries the version that was read, a concurrent change makes the update fail with
+	 * StaleProjectException; reload the project and apply the edit again.
+	 */
 	public void modifyProjectDetails(Project updatedProj) {
 		
-		// If update fails, throw exception. Success will return value
-		if(!projectDao.modifyProjectDetails(updatedProj))
-			throw new DbException("Project with ID " + updatedProj.getProjectId() + " does not exist.");
+		Integer projectId = updatedProj.getProjectId();
+		int changedFields = updatedProj.getDirtyFields();							// The DAO clears the mask on success
+		Integer expectedVersion = updatedProj.getVersion();
+		
+		try {
+			// If update fails, throw exception. Success will return value
+			if(!projectDao().modifyProjectDetails(updatedProj))
+				throw new DbException("Project with ID " + projectId + " does not exist.");
+		} catch(StaleProjectException e) {
+			projectCache.invalidate(projectId);										// Whatever is cached is older than the row
+			throw e;
+		}
+		
+		UnitOfWork.afterCommit(() -> {
+			Project cached = projectCache.peek(projectId);
+			
+			if(Objects.nonNull(cached) && Objects.nonNull(expectedVersion) && expectedVersion.equals(cached.getVersion())) {
+				projectCache.put(merge(cached, updatedProj, changedFields));		// Only project columns changed - keep the cached children
+			} else {
+				projectCache.invalidate(projectId);
+			}
+			
+			if(searchIndexLoaded && (changedFields & Project.PROJECT_NAME) != 0) {
+				searchIndex.put(projectId, updatedProj.getProjectName());
+			}
+			
+			ProjectRollup rollup = rollups.peek(projectId);
+			
+			if(Objects.nonNull(rollup)) {											// Counts and cost are unchanged - only hours can move
+				rollups.put(rollup.withHours(
+						(changedFields & Project.ESTIMATED_HOURS) != 0 ? updatedProj.getEstimatedHours() : rollup.getEstimatedHours(),
+						(changedFields & Project.ACTUAL_HOURS) != 0 ? updatedProj.getActualHours() : rollup.getActualHours()));
+			} else {
+				refreshRollup(projectId);
+			}
+		});
+		
+	}
+
+
+	// A new copy of a cached project with the changed fields applied. Cached projects are shared, so they are never edited.
+	// A new Project with the same values, so the cache never holds an object the caller can still change
+	private static Project copyOf(Project project) {
+		
+		return merge(project, project, 0);
+	}
+
+
+	private static Project merge(Project cached, Project changes, int changedFields) {
+		
+		Project merged = new Project();
 		
+		merged.setProjectId(cached.getProjectId());
+		merged.setProjectName((changedFields & Project.PROJECT_NAME) != 0 ? changes.getProjectName() : cached.getProjectName());
+		merged.setEstimatedHours((changedFields & Project.ESTIMATED_HOURS) != 0 ? changes.getEstimatedHours() : cached.getEstimatedHours());
+		merged.setActualHours((changedFields & Project.ACTUAL_HOURS) != 0 ? changes.getActualHours() : cached.getActualHours());
+		merged.setDifficulty((changedFields & Project.DIFFICULTY) != 0 ? changes.getDifficulty() : cached.getDifficulty());
+		merged.setNotes((changedFields & Project.NOTES) != 0 ? changes.getNotes() : cached.getNotes());
+		merged.setVersion(changes.getVersion());
+		merged.clearDirtyFields();
+		
+		merged.getMaterials().addAll(cached.getMaterials());
+		merged.getSteps().addAll(cached.getSteps());
+		merged.getCategories().addAll(cached.getCategories());
+		
+		return merged;
 	}
 
 
@@ -47,9 +445,172 @@ public class ProjectService {
 	public void deleteProject(Integer projectId) {
 		
 		// If delete fails, throw exception. Success will return value
-		if(!projectDao.deleteProject(projectId))
+		if(!projectDao().deleteProject(projectId))
 			throw new DbException("Project with ID " + projectId + " does not exist.");
 		
+		UnitOfWork.afterCommit(() -> {
+			projectCache.invalidate(projectId);
+			searchIndex.remove(projectId);
+			rollups.remove(projectId);
+		});
+		
+	}
+
+
+	// Used for switch case 9 - Adds a step before another step of the project, or at the end if beforeStepId is null
+	public Step addStep(Integer projectId, String stepText, Integer beforeStepId) {
+		
+		Step step = projectDao().insertStep(projectId, stepText, beforeStepId);
+		stepsChanged(projectId);
+		return step;
+	}
+
+
+	// Used for switch case 9 - Moves a step before another step of the project, or to the end if beforeStepId is null
+	public void moveStep(Integer projectId, Integer stepId, Integer beforeStepId) {
+		
+		if(!projectDao().moveStep(projectId, stepId, beforeStepId))
+			throw new DbException("Step with ID " + stepId + " is not a step of project " + projectId + ".");
+		
+		UnitOfWork.afterCommit(() -> projectCache.invalidate(projectId));			// Step count is unchanged, so rollups are too
+	}
+
+
+	// Used for switch case 9 - Deletes one step of the project
+	public void deleteStep(Integer projectId, Integer stepId) {
+		
+		if(!projectDao().deleteStep(projectId, stepId))
+			throw new DbException("Step with ID " + stepId + " is not a step of project " + projectId + ".");
+		
+		stepsChanged(projectId);
+	}
+
+
+	private void stepsChanged(Integer projectId) {
+		
+		UnitOfWork.afterCommit(() -> {
+			projectCache.invalidate(projectId);										// Reloaded with its steps in order on next read
+			refreshRollup(projectId);
+		});
+	}
+
+
+	// Used for switch case 6 - Ranked full-text search over project names, notes, step text, and material names
+	public List<ProjectSearchResult> searchProjects(String terms, int limit) {
+		
+		return projectDao().searchProjects(terms, Math.min(limit, MAX_SEARCH_RESULTS));
+	}
+
+
+	// Low-latency prefix search on project names for typeahead, answered from memory
+	public List<ProjectSearchResult> typeaheadProjects(String prefix, int limit) {
+		
+		loadSearchIndex();
+		return searchIndex.typeahead(prefix, Math.min(limit, MAX_SEARCH_RESULTS));
+	}
+
+
+	// Builds the typeahead index from every project name the first time it is needed
+	private void loadSearchIndex() {
+		
+		if(searchIndexLoaded) {
+			return;
+		}
+		
+		searchIndexLoadLock.lock();
+		
+		try {
+			if(!searchIndexLoaded) {
+				try(Stream<Project> projects = streamProjects(ProjectColumn.PROJECT_ID, ProjectColumn.PROJECT_NAME)) {
+					projects.forEach(project -> searchIndex.put(project.getProjectId(), project.getProjectName()));
+				}
+				
+				searchIndexLoaded = true;
+			}
+		} finally {
+			searchIndexLoadLock.unlock();
+		}
+		
+	}
+
+
+	// Used for switch case 7 - Every category, served from the in-memory category dictionary
+	public List<Category> fetchAllCategories() {
+		
+		return categoryDictionary.getCategories();
+	}
+
+
+	// Looks up one category in the dictionary or throws exception if not found
+	public Category fetchCategoryByID(Integer categoryId) {
+		
+		return categoryDictionary.getCategory(categoryId).orElseThrow( () -> new NoSuchElementException("Category with category ID = " + categoryId + " does not exist."));
+	}
+
+
+	// Used for switch case 7 - Number of projects in each category
+	public List<CategoryCount> fetchCategoryCounts() {
+		
+		return projectDao().fetchCategoryCounts();
+	}
+
+
+	// Used for switch case 7 - One page of projects in a category after the given project ID. Null starts at the first page.
+	public List<Project> fetchProjectsInCategory(Integer categoryId, Integer afterId, int limit) {
+		
+		return projectDao().fetchProjectsInCategory(categoryId, afterId, limit);
+	}
+
+
+	// One page of projects that belong to every one of the given categories
+	public List<Project> fetchProjectsInAllCategories(Collection<Integer> categoryIds, Integer afterId, int limit) {
+		
+		return projectDao().fetchProjectsInAllCategories(categoryIds, afterId, limit);
+	}
+
+
+	// Forces the category dictionary to reload on next use, e.g. after categories are edited directly in the database
+	public void refreshCategories() {
+		
+		categoryDictionary.refresh();
+	}
+
+
+	// Cost, child counts, and hours for one project, answered from memory
+	public ProjectRollup fetchProjectRollup(Integer projectId) {
+		
+		return rollups.get(projectId).orElseThrow( () -> new NoSuchElementException("Project with project ID = " + projectId + " does not exist."));
+	}
+
+
+	// Cost, child counts, and hours summed over every project, answered from memory
+	public RollupTotals fetchRollupTotals() {
+		
+		return rollups.getTotals();
+	}
+
+
+	// Recomputes all rollups from the database, e.g. after rows were changed outside this service
+	public void rebuildRollups() {
+		
+		rollups.rebuild();
+	}
+
+
+	// Re-reads one project's rollup when it cannot be worked out from the change itself
+	private void refreshRollup(Integer projectId) {
+		
+		if(rollups.isTracking()) {
+			projectDao().fetchProjectRollup(projectId).ifPresentOrElse(rollups::put, () -> rollups.remove(projectId));
+		}
+		
+	}
+
+
+	// Hit, miss, and eviction counts for the project cache
+	public CacheStats getCacheStats() {
+		
+		return projectCache.getStats();
 	}
 
 	
@@ -0,0 +1,97 @@
+package projects.service;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import projects.dao.ProjectRollup;
+
+// Aggregates across every project. Immutable - ProjectRollups replaces the instance each time a project changes.
+public class RollupTotals {
+
+	static final RollupTotals EMPTY = new RollupTotals(0, 0, 0, 0, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, 0);
+
+	private final long projectCount;
+	private final long materialCount;
+	private final long stepCount;
+	private final long totalCostCents;
+	private final BigDecimal estimatedHours;					// Missing hours count as zero
+	private final BigDecimal actualHours;
+	private final BigDecimal hoursVariance;						// Actual minus estimated, over projects that have both
+	private final long varianceProjectCount;					// Projects that contribute to hoursVariance
+
+	public RollupTotals(long projectCount, long materialCount, long stepCount, long totalCostCents, BigDecimal estimatedHours,
+			BigDecimal actualHours, BigDecimal hoursVariance, long varianceProjectCount) {
+		this.projectCount = projectCount;
+		this.materialCount = materialCount;
+		this.stepCount = stepCount;
+		this.totalCostCents = totalCostCents;
+		this.estimatedHours = estimatedHours;
+		this.actualHours = actualHours;
+		this.hoursVariance = hoursVariance;
+		this.varianceProjectCount = varianceProjectCount;
+	}
+
+
+	// Totals with one project's rollup added (sign 1) or taken away (sign -1)
+	RollupTotals adjust(ProjectRollup rollup, int sign) {
+		
+		if(Objects.isNull(rollup)) {
+			return this;
+		}
+		
+		BigDecimal variance = rollup.getHoursVariance();
+		
+		return new RollupTotals(projectCount + sign, materialCount + sign * rollup.getMaterialCount(),
+				stepCount + sign * rollup.getStepCount(), totalCostCents + sign * rollup.getTotalCostCents(),
+				add(estimatedHours, rollup.getEstimatedHours(), sign), add(actualHours, rollup.getActualHours(), sign),
+				add(hoursVariance, variance, sign), varianceProjectCount + (Objects.isNull(variance) ? 0 : sign));
+	}
+
+
+	private static BigDecimal add(BigDecimal total, BigDecimal value, int sign) {
+		return Objects.isNull(value) ? total : sign > 0 ? total.add(value) : total.subtract(value);
+	}
+
+	public long getProjectCount() {
+		return projectCount;
+	}
+
+	public long getMaterialCount() {
+		return materialCount;
+	}
+
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	public long getTotalCostCents() {
+		return totalCostCents;
+	}
+
+	public BigDecimal getTotalCost() {
+		return BigDecimal.valueOf(totalCostCents, 2);
+	}
+
+	public BigDecimal getEstimatedHours() {
+		return estimatedHours;
+	}
+
+	public BigDecimal getActualHours() {
+		return actualHours;
+	}
+
+	public BigDecimal getHoursVariance() {
+		return hoursVariance;
+	}
+
+	public long getVarianceProjectCount() {
+		return varianceProjectCount;
+	}
+
+	@Override
+	public String toString() {
+		return "projects=" + projectCount + ", materials=" + materialCount + ", steps=" + stepCount + ", totalCost="
+				+ getTotalCost() + ", estimatedHours=" + estimatedHours + ", actualHours=" + actualHours + ", hoursVariance="
+				+ hoursVariance + " (over " + varianceProjectCount + " projects)";
+	}
+
+}
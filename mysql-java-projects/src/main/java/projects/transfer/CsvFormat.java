@@ -0,0 +1,273 @@
+package projects.transfer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+
+/*
+ * CSV with a record type in the first column. A project row is followed by the rows of its children:
+ *
+ *   project,<project_id>,<project_name>,<estimated_hours>,<actual_hours>,<difficulty>,<notes>
+ *   material,<material_name>,<num_required>,<cost>
+ *   step,<step_order>,<step_text>
+ *   category,<category_id>,<category_name>
+ *
+ * Values are quoted as in RFC 4180 when they contain a comma, quote, or line break. An empty unquoted value is NULL and
+ * "" is an empty string, so both survive a round trip.
+ */
+class CsvFormat implements ProjectFormat {
+
+	private static final String PROJECT = "project";
+	private static final String MATERIAL = "material";
+	private static final String STEP = "step";
+	private static final String CATEGORY = "category";
+
+	// A line with an odd number of quotes ends inside a quoted value
+	@Override
+	public boolean isLineComplete(CharSequence line) {
+
+		int quotes = 0;
+
+		for(int index = 0; index < line.length(); index++) {
+			if(line.charAt(index) == '"') {
+				quotes++;
+			}
+		}
+
+		return quotes % 2 == 0;
+
+	}
+
+
+	@Override
+	public boolean startsRecord(String line) {
+		return line.startsWith(PROJECT + ",");
+	}
+
+
+	@Override
+	public void write(StringBuilder out, Project project) {
+
+		out.append(PROJECT);
+		field(out, project.getProjectId());
+		field(out, project.getProjectName());
+		field(out, project.getEstimatedHours());
+		field(out, project.getActualHours());
+		field(out, project.getDifficulty());
+		field(out, project.getNotes());
+		out.append('\n');
+
+		for(Material material : project.getMaterials()) {
+			out.append(MATERIAL);
+			field(out, material.getMaterialName());
+			field(out, material.getNumRequired());
+			field(out, material.getCost());
+			out.append('\n');
+		}
+
+		for(Step step : project.getSteps()) {
+			out.append(STEP);
+			field(out, step.getStepOrder());
+			field(out, step.getStepText());
+			out.append('\n');
+		}
+
+		for(Category category : project.getCategories()) {
+			out.append(CATEGORY);
+			field(out, category.getCategoryId());
+			field(out, category.getCategoryName());
+			out.append('\n');
+		}
+
+	}
+
+
+	@Override
+	public Project parse(String record) {
+
+		Project project = null;
+
+		for(List<String> row : rows(record)) {
+			String type = row.get(0);
+
+			if(PROJECT.equals(type)) {
+				expectColumns(row, 7);
+				project = new Project();
+				project.setProjectName(row.get(2));
+				project.setEstimatedHours(decimal(row.get(3)));
+				project.setActualHours(decimal(row.get(4)));
+				project.setDifficulty(integer(row.get(5)));
+				project.setNotes(row.get(6));
+				continue;
+			}
+
+			if(Objects.isNull(project)) {
+				throw new IllegalArgumentException("A " + type + " row must follow a project row");
+			}
+
+			switch(String.valueOf(type)) {
+				case MATERIAL:
+					expectColumns(row, 4);
+					Material material = new Material();
+					material.setMaterialName(row.get(1));
+					material.setNumRequired(integer(row.get(2)));
+					material.setCost(decimal(row.get(3)));
+					project.getMaterials().add(material);
+					break;
+
+				case STEP:
+					expectColumns(row, 3);
+					Step step = new Step();
+					step.setStepOrder(integer(row.get(1)));
+					step.setStepText(row.get(2));
+					project.getSteps().add(step);
+					break;
+
+				case CATEGORY:
+					expectColumns(row, 3);
+					Category category = new Category();
+					category.setCategoryId(integer(row.get(1)));
+					category.setCategoryName(row.get(2));
+					project.getCategories().add(category);
+					break;
+
+				default:
+					throw new IllegalArgumentException("Unknown row type " + type);
+			}
+		}
+
+		if(Objects.isNull(project)) {
+			throw new IllegalArgumentException("Record has no project row");
+		}
+
+		return project;
+
+	}
+
+
+	private static void field(StringBuilder out, Object value) {
+
+		out.append(',');
+
+		if(Objects.isNull(value)) {
+			return;																// NULL is an empty, unquoted value
+		}
+
+		String text = value instanceof BigDecimal ? ((BigDecimal)value).toPlainString() : value.toString();
+
+		if(!text.isEmpty() && text.chars().noneMatch(c -> c == ',' || c == '"' || c == '\n' || c == '\r')) {
+			out.append(text);
+			return;
+		}
+
+		out.append('"');
+
+		for(int index = 0; index < text.length(); index++) {
+			char c = text.charAt(index);
+			out.append(c == '"' ? "\"\"" : c);
+		}
+
+		out.append('"');
+
+	}
+
+
+	// Splits a record into rows of values. Line breaks inside quotes belong to the value; elsewhere they end the row.
+	private static List<List<String>> rows(String record) {
+
+		List<List<String>> rows = new ArrayList<>();
+		List<String> row = new ArrayList<>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;															// The current value was quoted
+		boolean inQuotes = false;
+		int pos = 0;
+
+		while(pos < record.length()) {
+			char c = record.charAt(pos++);
+
+			if(inQuotes) {
+				if(c != '"') {
+					value.append(c);
+				} else if(pos < record.length() && record.charAt(pos) == '"') {
+					value.append('"');													// Doubled quote
+					pos++;
+				} else {
+					inQuotes = false;
+				}
+				continue;
+			}
+
+			switch(c) {
+				case '"':
+					inQuotes = true;
+					quoted = true;
+					break;
+
+				case ',':
+					row.add(quoted || value.length() > 0 ? value.toString() : null);
+					value.setLength(0);
+					quoted = false;
+					break;
+
+				case '\r':
+					break;
+
+				case '\n':
+					row.add(quoted || value.length() > 0 ? value.toString() : null);
+					rows.add(row);
+					row = new ArrayList<>();
+					value.setLength(0);
+					quoted = false;
+					break;
+
+				default:
+					value.append(c);
+					break;
+			}
+		}
+
+		if(inQuotes) {
+			throw new IllegalArgumentException("Unterminated quoted value");
+		}
+
+		if(quoted || value.length() > 0 || !row.isEmpty()) {
+			row.add(quoted || value.length() > 0 ? value.toString() : null);
+			rows.add(row);
+		}
+
+		return rows;
+
+	}
+
+
+	private static void expectColumns(List<String> row, int count) {
+		if(row.size() != count) {
+			throw new IllegalArgumentException("A " + row.get(0) + " row needs " + count + " values, found " + row.size());
+		}
+	}
+
+
+	private static BigDecimal decimal(String value) {
+		try {
+			return Objects.isNull(value) ? null : new BigDecimal(value.trim());
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number " + value);
+		}
+	}
+
+
+	private static Integer integer(String value) {
+		try {
+			return Objects.isNull(value) ? null : Integer.valueOf(value.trim());
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid whole number " + value);
+		}
+	}
+
+}
@@ -0,0 +1,404 @@
+package projects.transfer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+ * Just enough JSON for project records, so the import/export tools need no library. The parser reads objects as
+ * Map<String, Object>, arrays as List<Object>, numbers as BigDecimal (hours and costs keep their exact scale), and
+ * strings, booleans, and null as themselves. The writer escapes strings the same way the parser reads them.
+ */
+public final class Json {
+
+	private final String text;
+	private int pos;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+
+	// Parses one JSON value that must make up the whole text, apart from surrounding whitespace
+	public static Object parse(String text) {
+
+		Json parser = new Json(text);
+		Object value = parser.readValue();
+		parser.skipWhitespace();
+
+		if(parser.pos < text.length()) {
+			throw parser.error("Unexpected text after the value");
+		}
+
+		return value;
+
+	}
+
+
+	public static void writeString(StringBuilder out, String value) {
+
+		if(Objects.isNull(value)) {
+			out.append("null");
+			return;
+		}
+
+		out.append('"');
+
+		for(int index = 0; index < value.length(); index++) {
+			char c = value.charAt(index);
+
+			switch(c) {
+				case '"':
+					out.append("\\\"");
+					break;
+				case '\\':
+					out.append("\\\\");
+					break;
+				case '\n':
+					out.append("\\n");
+					break;
+				case '\r':
+					out.append("\\r");
+					break;
+				case '\t':
+					out.append("\\t");
+					break;
+				default:
+					if(c < 0x20) {
+						out.append(String.format("\\u%04x", (int)c));				// Other control characters
+					} else {
+						out.append(c);
+					}
+					break;
+			}
+		}
+
+		out.append('"');
+
+	}
+
+
+	// Numbers are written as-is; BigDecimal.toPlainString keeps the scale and never uses exponent notation
+	public static void writeNumber(StringBuilder out, Object value) {
+
+		if(Objects.isNull(value)) {
+			out.append("null");
+		} else if(value instanceof BigDecimal) {
+			out.append(((BigDecimal)value).toPlainString());
+		} else {
+			out.append(value);
+		}
+
+	}
+
+
+	// Typed access to parsed values, for building objects from Json.parse results
+	@SuppressWarnings("unchecked")
+	public static Map<String, Object> asObject(Object value, String what) {
+
+		if(!(value instanceof Map)) {
+			throw new IllegalArgumentException("Expected a JSON object for the " + what);
+		}
+
+		return (Map<String, Object>)value;
+
+	}
+
+
+	@SuppressWarnings("unchecked")
+	public static List<Object> getArray(Map<String, Object> fields, String name) {
+
+		Object value = fields.get(name);
+
+		if(Objects.isNull(value)) {
+			return List.of();
+		}
+
+		if(!(value instanceof List)) {
+			throw new IllegalArgumentException(name + " must be an array");
+		}
+
+		return (List<Object>)value;
+
+	}
+
+
+	public static String getString(Map<String, Object> fields, String name) {
+
+		Object value = fields.get(name);
+
+		if(Objects.nonNull(value) && !(value instanceof String)) {
+			throw new IllegalArgumentException(name + " must be a string");
+		}
+
+		return (String)value;
+
+	}
+
+
+	public static BigDecimal getDecimal(Map<String, Object> fields, String name) {
+
+		Object value = fields.get(name);
+
+		if(Objects.nonNull(value) && !(value instanceof BigDecimal)) {
+			throw new IllegalArgumentException(name + " must be a number");
+		}
+
+		return (BigDecimal)value;
+
+	}
+
+
+	public static Integer getInteger(Map<String, Object> fields, String name) {
+
+		BigDecimal value = getDecimal(fields, name);
+
+		try {
+			return Objects.isNull(value) ? null : value.intValueExact();
+		} catch(ArithmeticException e) {
+			throw new IllegalArgumentException(name + " must be a whole number");
+		}
+
+	}
+
+
+	private Object readValue() {
+
+		skipWhitespace();
+
+		if(pos >= text.length()) {
+			throw error("Unexpected end of input");
+		}
+
+		char c = text.charAt(pos);
+
+		switch(c) {
+			case '{':
+				return readObject();
+			case '[':
+				return readArray();
+			case '"':
+				return readString();
+			case 't':
+				return readLiteral("true", Boolean.TRUE);
+			case 'f':
+				return readLiteral("false", Boolean.FALSE);
+			case 'n':
+				return readLiteral("null", null);
+			default:
+				return readNumber();
+		}
+
+	}
+
+
+	private Map<String, Object> readObject() {
+
+		Map<String, Object> object = new LinkedHashMap<>();
+		pos++;																	// Opening brace
+		skipWhitespace();
+
+		if(peek() == '}') {
+			pos++;
+			return object;
+		}
+
+		while(true) {
+			skipWhitespace();
+
+			if(peek() != '"') {
+				throw error("Expected a field name");
+			}
+
+			String name = readString();
+			expect(':');
+			object.put(name, readValue());
+			skipWhitespace();
+
+			if(peek() == ',') {
+				pos++;
+			} else {
+				expect('}');
+				return object;
+			}
+		}
+
+	}
+
+
+	private List<Object> readArray() {
+
+		List<Object> array = new ArrayList<>();
+		pos++;
+		skipWhitespace();
+
+		if(peek() == ']') {
+			pos++;
+			return array;
+		}
+
+		while(true) {
+			array.add(readValue());
+			skipWhitespace();
+
+			if(peek() == ',') {
+				pos++;
+			} else {
+				expect(']');
+				return array;
+			}
+		}
+
+	}
+
+
+	private String readString() {
+
+		pos++;																	// Opening quote
+		int start = pos;
+
+		while(pos < text.length() && text.charAt(pos) != '"' && text.charAt(pos) != '\\') {
+			pos++;
+		}
+
+		if(pos < text.length() && text.charAt(pos) == '"') {
+			return text.substring(start, pos++);								// Common case: nothing escaped, no copying char by char
+		}
+
+		StringBuilder value = new StringBuilder(text.substring(start, pos));
+
+		while(pos < text.length()) {
+			char c = text.charAt(pos++);
+
+			if(c == '"') {
+				return value.toString();
+			}
+
+			if(c != '\\') {
+				value.append(c);
+				continue;
+			}
+
+			if(pos >= text.length()) {
+				break;
+			}
+
+			char escaped = text.charAt(pos++);
+
+			switch(escaped) {
+				case 'b':
+					value.append('\b');
+					break;
+				case 'f':
+					value.append('\f');
+					break;
+				case 'n':
+					value.append('\n');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case 't':
+					value.append('\t');
+					break;
+				case 'u':
+					value.append(readHexChar());
+					break;
+				case '"':
+				case '\\':
+				case '/':
+					value.append(escaped);
+					break;
+				default:
+					throw error("Unknown escape \\" + escaped);
+			}
+		}
+
+		throw error("Unterminated string");
+
+	}
+
+
+	private char readHexChar() {
+
+		if(pos + 4 > text.length()) {
+			throw error("Incomplete \\u escape");
+		}
+
+		try {
+			char c = (char)Integer.parseInt(text.substring(pos, pos + 4), 16);
+			pos += 4;
+			return c;
+		} catch(NumberFormatException e) {
+			throw error("Invalid \\u escape");
+		}
+
+	}
+
+
+	private BigDecimal readNumber() {
+
+		int start = pos;
+
+		while(pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+			pos++;
+		}
+
+		if(start == pos) {
+			throw error("Unexpected character '" + text.charAt(pos) + "'");
+		}
+
+		try {
+			return new BigDecimal(text.substring(start, pos));
+		} catch(NumberFormatException e) {
+			throw error("Invalid number " + text.substring(start, pos));
+		}
+
+	}
+
+
+	private Object readLiteral(String literal, Object value) {
+
+		if(!text.startsWith(literal, pos)) {
+			throw error("Unexpected character '" + text.charAt(pos) + "'");
+		}
+
+		pos += literal.length();
+		return value;
+
+	}
+
+
+	private void expect(char c) {
+
+		skipWhitespace();
+
+		if(peek() != c) {
+			throw error("Expected '" + c + "'");
+		}
+
+		pos++;
+
+	}
+
+
+	private char peek() {
+		return pos < text.length() ? text.charAt(pos) : 0;
+	}
+
+
+	private void skipWhitespace() {
+		while(pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+	}
+
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at character " + (pos + 1));
+	}
+
+}
@@ -0,0 +1,145 @@
+package projects.transfer;
+
+import java.util.Map;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+
+/*
+ * One JSON object per line, with the children nested inside:
+ *
+ *   {"projectId":1,"version":0,"projectName":"Hang a door","estimatedHours":10.00,"actualHours":15.00,"difficulty":3,"notes":"...",
+ *    "materials":[{"materialName":"2-inch screws","numRequired":20,"cost":null}],
+ *    "steps":[{"stepText":"Screw door hangers on the top and bottom of each side of the door frame","stepOrder":1024}],
+ *    "categories":[{"categoryId":1,"categoryName":"Doors and Windows"}]}
+ *
+ * Line breaks inside values are escaped, so every line is a whole record. Unknown fields are ignored.
+ */
+public class JsonLinesFormat implements ProjectFormat {
+
+	@Override
+	public boolean isLineComplete(CharSequence line) {
+		return true;
+	}
+
+
+	@Override
+	public boolean startsRecord(String line) {
+		return true;
+	}
+
+
+	@Override
+	public void write(StringBuilder out, Project project) {
+		writeProject(out, project);
+		out.append('\n');
+	}
+
+
+	@Override
+	public Project parse(String record) {
+		return readProject(Json.asObject(Json.parse(record), "project"));
+	}
+
+
+	// Appends the project as one JSON object, without a line break
+	public static void writeProject(StringBuilder out, Project project) {
+
+		out.append("{\"projectId\":");
+		Json.writeNumber(out, project.getProjectId());
+		out.append(",\"version\":");
+		Json.writeNumber(out, project.getVersion());
+		out.append(",\"projectName\":");
+		Json.writeString(out, project.getProjectName());
+		out.append(",\"estimatedHours\":");
+		Json.writeNumber(out, project.getEstimatedHours());
+		out.append(",\"actualHours\":");
+		Json.writeNumber(out, project.getActualHours());
+		out.append(",\"difficulty\":");
+		Json.writeNumber(out, project.getDifficulty());
+		out.append(",\"notes\":");
+		Json.writeString(out, project.getNotes());
+
+		out.append(",\"materials\":[");
+
+		for(int index = 0; index < project.getMaterials().size(); index++) {
+			Material material = project.getMaterials().get(index);
+			out.append(index == 0 ? "" : ",").append("{\"materialName\":");
+			Json.writeString(out, material.getMaterialName());
+			out.append(",\"numRequired\":");
+			Json.writeNumber(out, material.getNumRequired());
+			out.append(",\"cost\":");
+			Json.writeNumber(out, material.getCost());
+			out.append('}');
+		}
+
+		out.append("],\"steps\":[");
+
+		for(int index = 0; index < project.getSteps().size(); index++) {
+			Step step = project.getSteps().get(index);
+			out.append(index == 0 ? "" : ",").append("{\"stepText\":");
+			Json.writeString(out, step.getStepText());
+			out.append(",\"stepOrder\":");
+			Json.writeNumber(out, step.getStepOrder());
+			out.append('}');
+		}
+
+		out.append("],\"categories\":[");
+
+		for(int index = 0; index < project.getCategories().size(); index++) {
+			Category category = project.getCategories().get(index);
+			out.append(index == 0 ? "" : ",").append("{\"categoryId\":");
+			Json.writeNumber(out, category.getCategoryId());
+			out.append(",\"categoryName\":");
+			Json.writeString(out, category.getCategoryName());
+			out.append('}');
+		}
+
+		out.append("]}");
+
+	}
+
+
+	// A new project from the fields of a parsed JSON object. projectId and version are not read.
+	public static Project readProject(Map<String, Object> fields) {
+
+		Project project = new Project();
+
+		project.setProjectName(Json.getString(fields, "projectName"));
+		project.setEstimatedHours(Json.getDecimal(fields, "estimatedHours"));
+		project.setActualHours(Json.getDecimal(fields, "actualHours"));
+		project.setDifficulty(Json.getInteger(fields, "difficulty"));
+		project.setNotes(Json.getString(fields, "notes"));
+
+		for(Object value : Json.getArray(fields, "materials")) {
+			Map<String, Object> materialFields = Json.asObject(value, "material");
+			Material material = new Material();
+			material.setMaterialName(Json.getString(materialFields, "materialName"));
+			material.setNumRequired(Json.getInteger(materialFields, "numRequired"));
+			material.setCost(Json.getDecimal(materialFields, "cost"));
+			project.getMaterials().add(material);
+		}
+
+		for(Object value : Json.getArray(fields, "steps")) {
+			Map<String, Object> stepFields = Json.asObject(value, "step");
+			Step step = new Step();
+			step.setStepText(Json.getString(stepFields, "stepText"));
+			step.setStepOrder(Json.getInteger(stepFields, "stepOrder"));
+			project.getSteps().add(step);
+		}
+
+		for(Object value : Json.getArray(fields, "categories")) {
+			Map<String, Object> categoryFields = Json.asObject(value, "category");
+			Category category = new Category();
+			category.setCategoryId(Json.getInteger(categoryFields, "categoryId"));
+			category.setCategoryName(Json.getString(categoryFields, "categoryName"));
+			project.getCategories().add(category);
+		}
+
+		return project;
+
+	}
+
+}
@@ -0,0 +1,39 @@
+package projects.transfer;
+
+import projects.entity.Project;
+
+/*
+ * A text file layout for project aggregates. A file is a sequence of records, one per project, and a record is one or
+ * more lines. RecordReader groups lines into records using isLineComplete and startsRecord alone, so a record can be
+ * parsed on any thread without looking at its neighbours.
+ */
+interface ProjectFormat {
+
+	// False while the line ends inside a quoted value, so the next physical line belongs to it
+	boolean isLineComplete(CharSequence line);
+
+	boolean startsRecord(String line);
+
+	// Appends one complete record, ending with a line break
+	void write(StringBuilder out, Project project);
+
+	// Builds a project, with its materials, steps, and categories, from one record. The file's project ID is not kept.
+	Project parse(String record);
+
+
+	// Format for a --format value: csv, or json / jsonl for JSON lines
+	static ProjectFormat forName(String name) {
+
+		switch(name.toLowerCase()) {
+			case "csv":
+				return new CsvFormat();
+			case "json":
+			case "jsonl":
+				return new JsonLinesFormat();
+			default:
+				throw new IllegalArgumentException("Unknown format " + name + ". Use csv or json.");
+		}
+
+	}
+
+}
@@ -0,0 +1,344 @@
+package projects.transfer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import projects.dao.BatchInsertResult;
+import projects.dao.DbConnection;
+import projects.entity.Project;
+import projects.exception.DbException;
+import projects.service.ProjectService;
+
+/*
+ * Command-line bulk import and export of full project aggregates (project, materials, steps, categories):
+ *
+ *   java projects.transfer.ProjectTransfer import projects.jsonl
+ *   java projects.transfer.ProjectTransfer export projects.csv --format csv
+ *
+ * Import reads the file on one thread, parses chunks of records on a pool of threads, and inserts each chunk through
+ * ProjectService.addProjects in one batched transaction. Export walks the projects in ID order a page at a time with
+ * keyset paging, loads each page's aggregates in one round trip while the previous page is written, and appends to the
+ * file, so memory holds about two pages whatever the size of the catalog. Export is not a consistent snapshot: each
+ * project is written as it was when its page was read, and projects added behind the current page are left out. Paging
+ * by ID rather than by name means a rename during the export cannot skip a project or write it twice. Both continue
+ * where they stopped when run again after a failure. Import progress is kept in the transfer_progress table and
+ * committed with each chunk, so a resumed import never inserts a committed chunk twice (except across shards; see
+ * ProjectService.addProjectsForTransfer). Export progress is kept in a checkpoint file next to the export. Imported
+ * projects get new IDs; categories are linked by ID and must already exist.
+ */
+public class ProjectTransfer {
+
+	private static final String IMPORT = "import";
+	private static final String EXPORT = "export";
+	private static final int DEFAULT_CHUNK_SIZE = 1000;							// Projects per commit (import) or per page (export)
+	private static final String USAGE = ""
+			+ "Usage: ProjectTransfer import|export <file> [--format csv|json] [--chunk <projects>] [--threads <parsers>] [--restart]\n"
+			+ "  --format   csv, or json for one JSON object per line. Default: csv for .csv files, otherwise json.\n"
+			+ "  --chunk    projects per commit when importing, per page when exporting. Default: " + DEFAULT_CHUNK_SIZE + ".\n"
+			+ "  --threads  parser threads when importing. Default: one per processor.\n"
+			+ "  --restart  ignore the checkpoint of an earlier, unfinished run and start from the beginning.";
+
+	private final ProjectService projectService = new ProjectService();
+	private final Path file;
+	private final ProjectFormat format;
+	private final int chunkSize;
+	private final int threads;
+	private final boolean restart;
+
+	private ProjectTransfer(Path file, ProjectFormat format, int chunkSize, int threads, boolean restart) {
+		this.file = file;
+		this.format = format;
+		this.chunkSize = chunkSize;
+		this.threads = threads;
+		this.restart = restart;
+	}
+
+
+	public static void main(String[] args) {
+
+		if(args.length < 2 || !(IMPORT.equals(args[0]) || EXPORT.equals(args[0]))) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		Path file = Path.of(args[1]);
+		String formatName = file.getFileName().toString().toLowerCase().endsWith(".csv") ? "csv" : "json";
+		int chunkSize = DEFAULT_CHUNK_SIZE;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean restart = false;
+
+		try {
+			for(int index = 2; index < args.length; index++) {
+				switch(args[index]) {
+					case "--format":
+						formatName = args[++index];
+						break;
+					case "--chunk":
+						chunkSize = Integer.parseInt(args[++index]);
+						break;
+					case "--threads":
+						threads = Integer.parseInt(args[++index]);
+						break;
+					case "--restart":
+						restart = true;
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown option " + args[index]);
+				}
+			}
+
+			if(chunkSize < 1 || threads < 1) {
+				throw new IllegalArgumentException("--chunk and --threads must be at least 1");
+			}
+		} catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			System.err.println(e.getMessage() + "\n" + USAGE);
+			System.exit(2);
+		}
+
+		int status = 0;
+
+		try {
+			DbConnection.configureShardsFromProperty();
+			ProjectTransfer transfer = new ProjectTransfer(file, ProjectFormat.forName(formatName), chunkSize, threads, restart);
+
+			if(IMPORT.equals(args[0])) {
+				transfer.importProjects();
+			} else {
+				transfer.exportProjects();
+			}
+		} catch(IOException | RuntimeException e) {
+			System.err.println(args[0] + " stopped: " + e.getMessage());
+			System.err.println("Run the same command again to continue from the last checkpoint.");
+			status = 1;
+		} finally {
+			DbConnection.shutdown();
+		}
+
+		System.exit(status);
+
+	}
+
+
+	/*
+	 * Parsing runs up to 2 * threads chunks ahead of the inserts, which keeps every parser busy while a chunk commits
+	 * and bounds how much of the file is in memory at once. Chunks are inserted in file order, so the saved progress is
+	 * simply the number of records committed. It is keyed by the file's absolute path.
+	 */
+	private void importProjects() throws IOException {
+
+		String transferKey = file.toAbsolutePath().normalize().toString();
+
+		if(restart) {
+			projectService.clearTransferProgress(transferKey);
+		}
+
+		long imported = projectService.fetchTransferProgress(transferKey);
+		TransferProgress progress = new TransferProgress("Imported");
+		ExecutorService parsers = Executors.newFixedThreadPool(threads);
+		Deque<Future<ParsedChunk>> parsed = new ArrayDeque<>();
+
+		try(RecordReader reader = new RecordReader(Files.newBufferedReader(file, StandardCharsets.UTF_8), format)) {
+
+			if(imported > 0) {
+				System.out.println("Resuming after " + imported + " projects already imported");
+
+				for(long skipped = 0; skipped < imported; skipped++) {
+					if(Objects.isNull(reader.next())) {
+						throw new IllegalStateException("The file has fewer projects than were imported from it. Use --restart.");
+					}
+				}
+			}
+
+			long recordNumber = imported;
+			List<String> records;
+
+			while(!(records = reader.next(chunkSize)).isEmpty()) {
+				List<String> chunk = records;
+				long firstRecord = recordNumber + 1;
+				recordNumber += chunk.size();
+				parsed.addLast(parsers.submit(() -> parse(chunk, firstRecord)));
+
+				if(parsed.size() >= threads * 2) {
+					insert(parsed.removeFirst(), transferKey, progress);
+				}
+			}
+
+			while(!parsed.isEmpty()) {
+				insert(parsed.removeFirst(), transferKey, progress);
+			}
+
+		} finally {
+			parsers.shutdownNow();
+		}
+
+		projectService.clearTransferProgress(transferKey);
+		System.out.println(progress);
+
+	}
+
+
+	private ParsedChunk parse(List<String> records, long firstRecord) {
+
+		List<Project> projects = new ArrayList<>(records.size());
+		long bytes = 0;
+
+		for(int index = 0; index < records.size(); index++) {
+			String record = records.get(index);
+
+			try {
+				projects.add(format.parse(record));
+			} catch(IllegalArgumentException e) {
+				throw new IllegalArgumentException("Project record " + (firstRecord + index) + ": " + e.getMessage(), e);
+			}
+
+			bytes += record.getBytes(StandardCharsets.UTF_8).length + 1;
+		}
+
+		return new ParsedChunk(projects, bytes, firstRecord + records.size() - 1);
+
+	}
+
+
+	private void insert(Future<ParsedChunk> parsing, String transferKey, TransferProgress progress) {
+
+		ParsedChunk chunk;
+
+		try {
+			chunk = parsing.get();
+		} catch(ExecutionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : new DbException(e.getCause());
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException(e);
+		}
+
+		BatchInsertResult result = projectService.addProjectsForTransfer(transferKey, chunk.lastRecord, chunk.projects, chunkSize);
+		progress.add(result.getProjects(), result.getTotalRows(), chunk.bytes);
+
+	}
+
+
+	/*
+	 * Each page is written and forced to disk before the checkpoint records its end, so on resume everything up to the
+	 * checkpoint is on disk and anything after it is cut off and written again.
+	 */
+	private void exportProjects() throws IOException {
+
+		TransferCheckpoint checkpoint = restart ? TransferCheckpoint.fresh(file, EXPORT) : TransferCheckpoint.load(file, EXPORT);
+		TransferProgress progress = new TransferProgress("Exported");
+
+		if(checkpoint.isResuming()) {
+			System.out.println("Resuming after " + checkpoint.getRecords() + " projects already exported");
+		}
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			channel.truncate(checkpoint.getBytes());
+			channel.position(checkpoint.getBytes());
+
+			OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+			long length = checkpoint.getBytes();
+			CompletableFuture<ExportPage> next = loadPage(checkpoint.getAfterId());
+
+			while(true) {
+				ExportPage page = join(next);
+
+				if(Objects.isNull(page.lastId)) {
+					break;
+				}
+
+				next = loadPage(page.lastId);											// Fetch the next page while this one is written
+
+				StringBuilder text = new StringBuilder(page.projects.size() * 256);
+				long rows = 0;
+
+				for(Project project : page.projects) {
+					format.write(text, project);
+					rows += 1 + project.getMaterials().size() + project.getSteps().size() + project.getCategories().size();
+				}
+
+				byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+				out.write(bytes);
+				out.flush();
+				channel.force(false);
+
+				length += bytes.length;
+				checkpoint.exported(page.projects.size(), length, page.lastId);
+				progress.add(page.projects.size(), rows, bytes.length);
+			}
+		}
+
+		checkpoint.delete();
+		System.out.println(progress);
+
+	}
+
+
+	// One page of IDs after afterId, then the full aggregates for those IDs in one batched load. Projects deleted in between
+	// are missing from the page, but the page still ends at the last ID listed, so paging goes on past them.
+	private CompletableFuture<ExportPage> loadPage(Integer afterId) {
+
+		return CompletableFuture.supplyAsync(() -> {
+			List<Integer> projectIds = projectService.fetchProjectIds(Objects.isNull(afterId) ? 0 : afterId, chunkSize);
+			Integer lastId = projectIds.isEmpty() ? null : projectIds.get(projectIds.size() - 1);
+
+			return new ExportPage(projectService.fetchProjectsByIds(projectIds), lastId);
+		});
+
+	}
+
+
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch(CompletionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : e;
+		}
+	}
+
+
+	private static class ExportPage {
+
+		private final List<Project> projects;
+		private final Integer lastId;													// Null when there are no more projects
+
+		ExportPage(List<Project> projects, Integer lastId) {
+			this.projects = projects;
+			this.lastId = lastId;
+		}
+
+	}
+
+
+	private static class ParsedChunk {
+
+		private final List<Project> projects;
+		private final long bytes;
+		private final long lastRecord;												// Number of the chunk's last record in the file
+
+		ParsedChunk(List<Project> projects, long bytes, long lastRecord) {
+			this.projects = projects;
+			this.bytes = bytes;
+			this.lastRecord = lastRecord;
+		}
+
+	}
+
+}
@@ -0,0 +1,106 @@
+package projects.transfer;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/*
+ * Cuts an input file into raw records for a ProjectFormat without parsing them, so the single reading thread only
+ * scans for line breaks and the parsing can be spread over several threads. Blank lines between records are skipped.
+ */
+class RecordReader implements Closeable {
+
+	private final BufferedReader in;
+	private final ProjectFormat format;
+	private String pending;															// First line of the next record, already read
+	private long lineNumber;
+
+	RecordReader(BufferedReader in, ProjectFormat format) {
+		this.in = in;
+		this.format = format;
+	}
+
+
+	// The next record, or null at the end of the file
+	String next() throws IOException {
+
+		String first = Objects.nonNull(pending) ? pending : readLine();
+		pending = null;
+
+		if(Objects.isNull(first)) {
+			return null;
+		}
+
+		StringBuilder record = new StringBuilder(first);
+		String line;
+
+		while(Objects.nonNull(line = readLine())) {
+			if(format.startsRecord(line)) {
+				pending = line;
+				break;
+			}
+
+			record.append('\n').append(line);
+		}
+
+		return record.toString();
+
+	}
+
+
+	// Up to count records; an empty list at the end of the file
+	List<String> next(int count) throws IOException {
+
+		List<String> records = new ArrayList<>(count);
+		String record;
+
+		while(records.size() < count && Objects.nonNull(record = next())) {
+			records.add(record);
+		}
+
+		return records;
+
+	}
+
+
+	// One logical line: physical lines are joined while a quoted value is still open
+	private String readLine() throws IOException {
+
+		String line;
+
+		do {
+			line = in.readLine();
+			lineNumber++;
+		} while(Objects.nonNull(line) && line.isBlank());
+
+		if(Objects.isNull(line) || format.isLineComplete(line)) {
+			return line;
+		}
+
+		StringBuilder joined = new StringBuilder(line);
+
+		do {
+			String continuation = in.readLine();
+			lineNumber++;
+
+			if(Objects.isNull(continuation)) {
+				throw new IllegalArgumentException("Quoted value left open at the end of the file (line " + lineNumber + ")");
+			}
+
+			joined.append('\n').append(continuation);
+		} while(!format.isLineComplete(joined));
+
+		return joined.toString();
+
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
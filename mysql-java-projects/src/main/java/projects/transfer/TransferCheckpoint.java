@@ -0,0 +1,132 @@
+package projects.transfer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.Properties;
+
+/*
+ * Progress of an export, saved next to the data file as <file>.checkpoint after every written page. Running the same
+ * command again cuts the file back to the bytes already checkpointed and continues after the last project written. The
+ * file is replaced atomically, so a crash leaves either the old checkpoint or the new one. Imports keep their progress
+ * in the database instead, where it commits with the imported records.
+ */
+class TransferCheckpoint {
+
+	private static final String OPERATION = "operation";
+	private static final String RECORDS = "records";
+	private static final String BYTES = "bytes";
+	private static final String AFTER_ID = "afterId";
+
+	private final Path path;
+	private final String operation;
+	private long records;															// Projects written
+	private long bytes;																// Length of the export file up to the last page
+	private Integer afterId;														// ID of the last project exported
+
+	private TransferCheckpoint(Path path, String operation) {
+		this.path = path;
+		this.operation = operation;
+	}
+
+
+	// The saved checkpoint for this file and operation, or a fresh one. A checkpoint left by the other operation is an error.
+	static TransferCheckpoint load(Path dataFile, String operation) throws IOException {
+
+		TransferCheckpoint checkpoint = new TransferCheckpoint(pathFor(dataFile), operation);
+
+		if(!Files.exists(checkpoint.path)) {
+			return checkpoint;
+		}
+
+		Properties saved = new Properties();
+
+		try(Reader in = Files.newBufferedReader(checkpoint.path, StandardCharsets.UTF_8)) {
+			saved.load(in);
+		}
+
+		if(!operation.equals(saved.getProperty(OPERATION))) {
+			throw new IllegalStateException(checkpoint.path + " belongs to an unfinished " + saved.getProperty(OPERATION)
+					+ ". Finish it, or start over with --restart.");
+		}
+
+		checkpoint.records = Long.parseLong(saved.getProperty(RECORDS, "0"));
+		checkpoint.bytes = Long.parseLong(saved.getProperty(BYTES, "0"));
+		checkpoint.afterId = Objects.isNull(saved.getProperty(AFTER_ID)) ? null : Integer.valueOf(saved.getProperty(AFTER_ID));
+		return checkpoint;
+
+	}
+
+
+	// A checkpoint that starts from the beginning, ignoring any saved one
+	static TransferCheckpoint fresh(Path dataFile, String operation) {
+		return new TransferCheckpoint(pathFor(dataFile), operation);
+	}
+
+
+	void exported(int count, long length, Integer lastId) throws IOException {
+		records += count;
+		bytes = length;
+		afterId = lastId;
+		save();
+	}
+
+
+	private void save() throws IOException {
+
+		Properties saved = new Properties();
+		saved.setProperty(OPERATION, operation);
+		saved.setProperty(RECORDS, Long.toString(records));
+		saved.setProperty(BYTES, Long.toString(bytes));
+
+		if(Objects.nonNull(afterId)) {
+			saved.setProperty(AFTER_ID, afterId.toString());
+		}
+
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try(Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			saved.store(out, null);
+		}
+
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+	}
+
+
+	// Called once the whole file is done, so the next run starts over
+	void delete() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+
+	boolean isResuming() {
+		return records > 0;
+	}
+
+
+	long getRecords() {
+		return records;
+	}
+
+
+	long getBytes() {
+		return bytes;
+	}
+
+
+	Integer getAfterId() {
+		return afterId;
+	}
+
+
+	private static Path pathFor(Path dataFile) {
+		return dataFile.resolveSibling(dataFile.getFileName() + ".checkpoint");
+	}
+
+}
@@ -0,0 +1,46 @@
+package projects.transfer;
+
+// Running totals for an import or export, printed every few seconds and once at the end with rates per second
+class TransferProgress {
+
+	private static final long REPORT_INTERVAL_NANOS = 5_000_000_000L;
+
+	private final String verb;															// "Imported" or "Exported"
+	private final long startNanos = System.nanoTime();
+	private long lastReportNanos = startNanos;
+	private long projects;
+	private long rows;																	// Projects plus material, step, and category rows
+	private long bytes;
+
+	TransferProgress(String verb) {
+		this.verb = verb;
+	}
+
+
+	void add(long projectCount, long rowCount, long byteCount) {
+
+		projects += projectCount;
+		rows += rowCount;
+		bytes += byteCount;
+
+		long now = System.nanoTime();
+
+		if(now - lastReportNanos >= REPORT_INTERVAL_NANOS) {
+			lastReportNanos = now;
+			System.out.println(this);
+		}
+
+	}
+
+
+	@Override
+	public String toString() {
+
+		double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1_000_000_000.0;
+
+		return String.format("%s %,d projects (%,d rows, %.1f MB) in %.1f s: %,.0f projects/s, %,.0f rows/s, %.1f MB/s", verb,
+				projects, rows, bytes / 1_000_000.0, seconds, projects / seconds, rows / seconds, bytes / 1_000_000.0 / seconds);
+
+	}
+
+}
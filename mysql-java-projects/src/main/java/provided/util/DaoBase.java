@@ -3,18 +3,13 @@
  */
 package provided.util;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Time;
-import java.sql.Timestamp;
 import java.sql.Types;
-import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.Objects;
 
@@ -25,6 +20,8 @@ import java.util.Objects;
  *
  */
 public abstract class DaoBase {
+  private static final LatencyHistogram EXTRACT_LATENCY = new LatencyHistogram();
+
   /**
    * This starts a MySQL transaction. Normally MySQL starts a transaction before every request and
    * commits it after each request. By turning auto-commit off, the transaction is only committed
@@ -106,6 +103,46 @@ public abstract class DaoBase {
     }
   }
 
+  /**
+   * Binds a primitive int parameter. Unlike {@link #setParameter(PreparedStatement, int, Object, Class)}
+   * the value is never boxed, so binding many rows allocates nothing per value.
+   * 
+   * @param stmt The prepared statement on which to set the parameter.
+   * @param parameterIndex The one-based index of the parameter.
+   * @param value The parameter value. Ignored if isNull is true.
+   * @param isNull True to bind SQL NULL instead of the value.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected void setInt(PreparedStatement stmt, int parameterIndex, int value, boolean isNull)
+      throws SQLException {
+    if(isNull) {
+      stmt.setNull(parameterIndex, Types.INTEGER);
+    }
+    else {
+      stmt.setInt(parameterIndex, value);
+    }
+  }
+
+  /**
+   * Binds a primitive long parameter without boxing. Used for fixed-point values held as scaled
+   * longs; the SQL scales them back, for example "? * 0.01" for hundredths.
+   * 
+   * @param stmt The prepared statement on which to set the parameter.
+   * @param parameterIndex The one-based index of the parameter.
+   * @param value The parameter value. Ignored if isNull is true.
+   * @param isNull True to bind SQL NULL instead of the value.
+   * @throws SQLException Thrown if an error occurs.
+   */
+  protected void setLong(PreparedStatement stmt, int parameterIndex, long value, boolean isNull)
+      throws SQLException {
+    if(isNull) {
+      stmt.setNull(parameterIndex, Types.BIGINT);
+    }
+    else {
+      stmt.setLong(parameterIndex, value);
+    }
+  }
+
   /**
    * Converts from a Java class to a java.sql.Types value.
    * 
@@ -147,7 +184,10 @@ public abstract class DaoBase {
    * @param idName The name of the parent ID field
    * @return The count of the entities attached to the parent plus one
    * @throws SQLException Thrown if an error occurs.
+   * @deprecated Dense numbering breaks after a delete and makes every insert in the middle rewrite
+   *             the rows after it. Use sparse keys instead, as ProjectDao does for step order.
    */
+  @Deprecated
   protected Integer getNextSequenceNumber(Connection conn, Integer id, String tableName,
       String idName) throws SQLException {
     String sql = "SELECT COUNT(*) FROM " + tableName + " WHERE " + idName + " = ?";
@@ -166,20 +206,24 @@ public abstract class DaoBase {
   }
 
   /**
-   * This returns the integer primary key value of the last row inserted into the given table. It
+   * This returns the integer primary key value of the last row inserted on the connection. It
    * allows the ID to be inserted into the entity object after inserting it into the table.
    * 
-   * The other way of doing this is to call {@link Statement#getGeneratedKeys()}, but this returns a
-   * result set that needs to be parsed for the ID. It's not really any easier than this approach
-   * but should be closer to database-agnostic.
+   * LAST_INSERT_ID() is per connection, so the table is not needed in the query. Selecting it FROM
+   * the table, as this method once did, returns one row per row in the table.
    * 
    * @param conn The connection
-   * @param table The name of the table on which to get the last inserted primary key value
+   * @param table Not used. Kept so existing callers still compile.
    * @return The primary key value
    * @throws SQLException Thrown if an error occurs
+   * @deprecated This costs a second round trip after every insert and only returns the first key
+   *             of a multi-row insert. Prepare the insert with
+   *             {@link Statement#RETURN_GENERATED_KEYS} and call
+   *             {@link #getGeneratedKeys(Statement, int)} instead.
    */
+  @Deprecated
   protected Integer getLastInsertId(Connection conn, String table) throws SQLException {
-    String sql = String.format("SELECT LAST_INSERT_ID() FROM %s", table);
+    String sql = "SELECT LAST_INSERT_ID()";
 
     try(Statement stmt = conn.createStatement()) {
       try(ResultSet rs = stmt.executeQuery(sql)) {
@@ -192,17 +236,45 @@ public abstract class DaoBase {
     }
   }
 
+  /**
+   * This reads the generated primary keys after an insert was executed with
+   * {@link Statement#RETURN_GENERATED_KEYS}. For a batch, the driver returns one key per inserted
+   * row in the order the rows were added to the batch. The statement must have been prepared with
+   * {@link Connection#prepareStatement(String, int)} passing {@link Statement#RETURN_GENERATED_KEYS}.
+   * 
+   * @param stmt The statement that performed the insert
+   * @param expectedCount The number of rows inserted
+   * @return The generated keys, in insert order
+   * @throws SQLException Thrown if fewer keys than expected are returned
+   */
+  protected int[] getGeneratedKeys(Statement stmt, int expectedCount) throws SQLException {
+    int[] keys = new int[expectedCount];
+
+    try(ResultSet rs = stmt.getGeneratedKeys()) {
+      for(int index = 0; index < expectedCount; index++) {
+        if(!rs.next()) {
+          throw new SQLException("Expected " + expectedCount + " generated keys but received " + index);
+        }
+
+        keys[index] = rs.getInt(1);
+      }
+    }
+
+    return keys;
+  }
+
   /**
    * This extracts an object of the given type from a result set. The object must have a
-   * zero-argument constructor. It builds an object from a result set using reflection as follows:
+   * zero-argument constructor. The object is built by a {@link RowMapper}, which is created once
+   * per class and result set shape and then cached:
    * <ol>
    * <li>The zero-argument constructor is obtained.</li>
-   * <li>An object of the given class type is created.</li>
    * <li>A list of fields is obtained using reflection.</li>
    * <li>The field name is converted from Java naming to SQL naming conventions (camel case to snake
    * case). Obviously, for this to work, the Java name must match the column name. So, if the Java
    * name is numServings, the column name must be num_servings.</li>
-   * <li>The value is assigned to the field in the object.</li>
+   * <li>For each row, an object of the given class type is created and the value is assigned to
+   * the field in the object.</li>
    * </ol>
    * 
    * Example: if a query returns values for a recipe, a Recipe object is returned. So:
@@ -218,12 +290,16 @@ public abstract class DaoBase {
    * unchanged. So, class Recipe has an instance variable:
    * 
    * <pre>
-   * List<Ingredient> ingredients = new LinkedList<>();
+   * List<Ingredient> ingredients = new ArrayList<>();
    * </pre>
    * 
    * Since the result set does not contain a column named "ingredients", the value is left alone and
    * the list initialization is preserved.
    * 
+   * This method still looks up the cached mapper on every call. When mapping many rows, use
+   * {@link #rowMapper(ResultSet, Class)} instead. The time taken by each call is recorded in
+   * {@link #getExtractLatency()}.
+   * 
    * @param <T> The Generic for the type of object to create and return.
    * @param rs The result set in which to extract values. The result set must be positioned on the
    *        correct row by the caller.
@@ -231,80 +307,51 @@ public abstract class DaoBase {
    * @return A populated class.
    */
   protected <T> T extract(ResultSet rs, Class<T> classType) {
-    try {
-      /* Obtain the constructor and create an object of the correct type. */
-      Constructor<T> con = classType.getConstructor();
-      T obj = con.newInstance();
-
-      /* Get the list of fields and loop through them. */
-      for(Field field : classType.getDeclaredFields()) {
-        String colName = camelCaseToSnakeCase(field.getName());
-        Class<?> fieldType = field.getType();
-
-        /*
-         * Set the field accessible flag which means that we can populate even private fields
-         * without using the setter.
-         */
-        field.setAccessible(true);
-        Object fieldValue = null;
-
-        try {
-          fieldValue = rs.getObject(colName);
-        }
-        catch(SQLException e) {
-          /*
-           * An exception caught here means that the field name isn't in the result set. Don't take
-           * any action.
-           */
-        }
-
-        /*
-         * Only set the value in the object if there is a value with the same name in the result
-         * set. This will preserve instance variables (like lists) that are assigned values when the
-         * object is created.
-         */
-        if(Objects.nonNull(fieldValue)) {
-          /*
-           * Convert the following types: Time -> LocalTime, and Timestamp -> LocalDateTime.
-           */
-          if(fieldValue instanceof Time && fieldType.equals(LocalTime.class)) {
-            fieldValue = ((Time)fieldValue).toLocalTime();
-          }
-          else if(fieldValue instanceof Timestamp && fieldType.equals(LocalDateTime.class)) {
-            fieldValue = ((Timestamp)fieldValue).toLocalDateTime();
-          }
-
-          field.set(obj, fieldValue);
-        }
-      }
-
-      return obj;
+    long start = System.nanoTime();
 
+    try {
+      return RowMapper.forResultSet(rs, classType).map(rs);
     }
-    catch(Exception e) {
+    catch(SQLException e) {
       throw new DaoException("Unable to create object of type " + classType.getName(), e);
     }
+    finally {
+      EXTRACT_LATENCY.record(System.nanoTime() - start);
+    }
   }
 
   /**
-   * This converts a camel case value (rowInsertTime) to snake case (row_insert_time).
+   * This returns the latencies of all {@link #extract(ResultSet, Class)} calls, including the
+   * mapper lookup. Rows mapped through {@link #rowMapper(ResultSet, Class)} are counted by
+   * {@link RowMapper#getRowsMapped()} but not timed, so tight loops stay free of clock reads.
    * 
-   * @param identifier The name in camel case to convert.
-   * @return The name converted to snake case.
+   * @return The shared histogram.
    */
-  private String camelCaseToSnakeCase(String identifier) {
-    StringBuilder nameBuilder = new StringBuilder();
-
-    for(char ch : identifier.toCharArray()) {
-      if(Character.isUpperCase(ch)) {
-        nameBuilder.append('_').append(Character.toLowerCase(ch));
-      }
-      else {
-        nameBuilder.append(ch);
-      }
-    }
+  public static LatencyHistogram getExtractLatency() {
+    return EXTRACT_LATENCY;
+  }
 
-    return nameBuilder.toString();
+  /**
+   * This returns a cached {@link RowMapper} for the given class and the columns in the result set.
+   * Loops over many rows should obtain the mapper once and call {@link RowMapper#map(ResultSet)}
+   * per row, instead of calling {@link #extract(ResultSet, Class)} per row:
+   * 
+   * <pre>
+   * RowMapper&lt;Recipe&gt; mapper = rowMapper(rs, Recipe.class);
+   * 
+   * while(rs.next()) {
+   *   recipes.add(mapper.map(rs));
+   * }
+   * </pre>
+   * 
+   * @param <T> The Generic for the type of object to create and return.
+   * @param rs The result set. Only the metadata is read.
+   * @param classType The actual class type of the objects to create.
+   * @return The mapper.
+   * @throws SQLException Thrown if the result set metadata cannot be read.
+   */
+  protected <T> RowMapper<T> rowMapper(ResultSet rs, Class<T> classType) throws SQLException {
+    return RowMapper.forResultSet(rs, classType);
   }
 
   /**
@@ -0,0 +1,157 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records latencies in nanoseconds into fixed log-linear buckets, in the manner of
+ * HdrHistogram. Every power of two is split into 16 sub-buckets, so any percentile read back is
+ * within about 6% of the true value. Values from 0 to about 36 minutes are tracked; larger values
+ * are counted in the top bucket.
+ *
+ * All buckets are allocated up front, so {@link #record(long)} never allocates and is safe to call
+ * from many threads at once. Reading percentiles while values are being recorded is allowed; the
+ * result may be off by the values recorded during the read.
+ *
+ * <pre>
+ * long start = System.nanoTime();
+ * runQuery();
+ * histogram.record(System.nanoTime() - start);
+ *
+ * long p99 = histogram.getValueAtPercentile(99.0);
+ * </pre>
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+  private static final int MAX_VALUE_BITS = 40;
+  private static final long MAX_TRACKABLE = (1L << (MAX_VALUE_BITS + 1)) - 1;
+  private static final int BUCKET_COUNT = index(MAX_TRACKABLE) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Records one latency. Negative values, which can only come from a clock that went backwards,
+   * are recorded as zero.
+   *
+   * @param nanos The latency in nanoseconds.
+   */
+  public void record(long nanos) {
+    long value = Math.max(nanos, 0);
+
+    counts.incrementAndGet(index(Math.min(value, MAX_TRACKABLE)));
+    totalNanos.add(value);
+
+    long max = maxNanos.get();
+
+    while(value > max && !maxNanos.compareAndSet(max, value)) {
+      max = maxNanos.get();
+    }
+  }
+
+  /**
+   * @return The number of values recorded.
+   */
+  public long getCount() {
+    long count = 0;
+
+    for(int index = 0; index < BUCKET_COUNT; index++) {
+      count += counts.get(index);
+    }
+
+    return count;
+  }
+
+  /**
+   * @return The mean of the values recorded, in nanoseconds, or zero if nothing was recorded.
+   */
+  public double getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : (double)totalNanos.sum() / count;
+  }
+
+  /**
+   * @return The largest value recorded, in nanoseconds.
+   */
+  public long getMax() {
+    return maxNanos.get();
+  }
+
+  /**
+   * Returns the value below which the given percentage of recorded values fall. The value is the
+   * top of the bucket holding that percentile, capped at the largest value recorded.
+   *
+   * @param percentile The percentile, from 0 to 100.
+   * @return The value in nanoseconds, or zero if nothing was recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    long[] snapshot = new long[BUCKET_COUNT];
+    long count = 0;
+
+    for(int index = 0; index < BUCKET_COUNT; index++) {
+      snapshot[index] = counts.get(index);
+      count += snapshot[index];
+    }
+
+    if(count == 0) {
+      return 0;
+    }
+
+    long target = Math.max(1, (long)Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+    long seen = 0;
+
+    for(int index = 0; index < BUCKET_COUNT; index++) {
+      seen += snapshot[index];
+
+      if(seen >= target) {
+        return Math.min(highestValue(index), getMax());
+      }
+    }
+
+    return getMax();
+  }
+
+  /**
+   * Clears all recorded values. Values recorded during the reset may be kept or lost.
+   */
+  public void reset() {
+    for(int index = 0; index < BUCKET_COUNT; index++) {
+      counts.set(index, 0);
+    }
+
+    totalNanos.reset();
+    maxNanos.set(0);
+  }
+
+  /**
+   * Values below 32 get a bucket each. Above that, the highest set bit picks the power of two and
+   * the next four bits pick one of 16 sub-buckets within it.
+   */
+  private static int index(long value) {
+    if(value < 2 * SUB_BUCKET_HALF) {
+      return (int)value;
+    }
+
+    int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+    return shift * SUB_BUCKET_HALF + (int)(value >>> shift);
+  }
+
+  /**
+   * The inverse of {@link #index(long)}: the largest value that lands in the given bucket.
+   */
+  private static long highestValue(int index) {
+    if(index < 2 * SUB_BUCKET_HALF) {
+      return index;
+    }
+
+    int shift = index / SUB_BUCKET_HALF - 1;
+    long subBucket = index % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,269 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This class maps result set rows to objects. It does the same job as {@link DaoBase#extract} but
+ * does all of the reflective work once per (class, result set shape) instead of once per row:
+ * <ol>
+ * <li>The zero-argument constructor is looked up and turned into a method handle.</li>
+ * <li>Each field name is converted to snake case and matched to a column index in the result set
+ * metadata. Fields without a matching column are dropped from the mapper, so no exception is
+ * thrown (and caught) per row for missing columns.</li>
+ * <li>Each matched field gets a setter method handle, so private fields are populated without
+ * calling {@link Field#setAccessible(boolean)} per row.</li>
+ * </ol>
+ *
+ * Mappers are cached, so the cost above is paid the first time a query shape is seen. Typical use
+ * is to obtain the mapper once per result set and call {@link #map(ResultSet)} per row:
+ *
+ * <pre>
+ * RowMapper&lt;Recipe&gt; mapper = RowMapper.forResultSet(rs, Recipe.class);
+ *
+ * while(rs.next()) {
+ *   recipes.add(mapper.map(rs));
+ * }
+ * </pre>
+ *
+ * @param <T> The type of object created for each row.
+ */
+public final class RowMapper<T> {
+  private static final ConcurrentMap<Shape, RowMapper<?>> CACHE = new ConcurrentHashMap<>();
+  private static final LongAdder ROWS_MAPPED = new LongAdder();
+
+  private static final MethodType SETTER_TYPE =
+      MethodType.methodType(void.class, Object.class, Object.class);
+  private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+  private static final byte CONVERT_NONE = 0;
+  private static final byte CONVERT_LOCAL_TIME = 1;
+  private static final byte CONVERT_LOCAL_DATE_TIME = 2;
+
+  private final Class<T> classType;
+  private final MethodHandle constructor;
+  private final int[] columnIndexes;
+  private final MethodHandle[] setters;
+  private final byte[] conversions;
+
+  private RowMapper(Class<T> classType, MethodHandle constructor, int[] columnIndexes,
+      MethodHandle[] setters, byte[] conversions) {
+    this.classType = classType;
+    this.constructor = constructor;
+    this.columnIndexes = columnIndexes;
+    this.setters = setters;
+    this.conversions = conversions;
+  }
+
+  /**
+   * Returns the (possibly cached) mapper for the given class and the columns of the given result
+   * set. Call this once per result set, not once per row.
+   *
+   * @param <T> The type of object to create.
+   * @param rs The result set. Only its metadata is read; the cursor is not moved.
+   * @param classType The class to create for each row. It must have a zero-argument constructor.
+   * @return The mapper.
+   * @throws SQLException Thrown if the result set metadata cannot be read.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> RowMapper<T> forResultSet(ResultSet rs, Class<T> classType)
+      throws SQLException {
+    ResultSetMetaData metaData = rs.getMetaData();
+    String[] labels = new String[metaData.getColumnCount()];
+
+    for(int index = 0; index < labels.length; index++) {
+      labels[index] = metaData.getColumnLabel(index + 1).toLowerCase(Locale.ROOT);
+    }
+
+    return (RowMapper<T>)CACHE.computeIfAbsent(new Shape(classType, labels),
+        shape -> build(classType, labels));
+  }
+
+  /**
+   * Creates an object from the current row of the result set. As with {@link DaoBase#extract},
+   * null column values leave the field at its initial value.
+   *
+   * @param rs The result set, positioned on the row to map by the caller.
+   * @return A populated object.
+   * @throws SQLException Thrown if a column value cannot be read.
+   */
+  @SuppressWarnings("unchecked")
+  public T map(ResultSet rs) throws SQLException {
+    T obj;
+
+    try {
+      obj = (T)constructor.invokeExact();
+    }
+    catch(Throwable e) {
+      throw new DaoException("Unable to create object of type " + classType.getName(), e);
+    }
+
+    for(int index = 0; index < setters.length; index++) {
+      Object value = rs.getObject(columnIndexes[index]);
+
+      if(Objects.nonNull(value)) {
+        if(conversions[index] == CONVERT_LOCAL_TIME && value instanceof Time) {
+          value = ((Time)value).toLocalTime();
+        }
+        else if(conversions[index] == CONVERT_LOCAL_DATE_TIME && value instanceof Timestamp) {
+          value = ((Timestamp)value).toLocalDateTime();
+        }
+
+        try {
+          setters[index].invokeExact((Object)obj, value);
+        }
+        catch(Throwable e) {
+          throw new DaoException("Unable to create object of type " + classType.getName(), e);
+        }
+      }
+    }
+
+    ROWS_MAPPED.increment();
+    return obj;
+  }
+
+  /**
+   * @return The number of rows mapped to objects by all mappers since the program started.
+   */
+  public static long getRowsMapped() {
+    return ROWS_MAPPED.sum();
+  }
+
+  /**
+   * This converts a camel case value (rowInsertTime) to snake case (row_insert_time).
+   *
+   * @param identifier The name in camel case to convert.
+   * @return The name converted to snake case.
+   */
+  public static String camelCaseToSnakeCase(String identifier) {
+    StringBuilder nameBuilder = new StringBuilder(identifier.length() + 4);
+
+    for(int index = 0; index < identifier.length(); index++) {
+      char ch = identifier.charAt(index);
+
+      if(Character.isUpperCase(ch)) {
+        nameBuilder.append('_').append(Character.toLowerCase(ch));
+      }
+      else {
+        nameBuilder.append(ch);
+      }
+    }
+
+    return nameBuilder.toString();
+  }
+
+  /**
+   * Builds a mapper by matching the declared, non-static fields of the class to the column labels.
+   */
+  private static <T> RowMapper<T> build(Class<T> classType, String[] labels) {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(classType, MethodHandles.lookup());
+      MethodHandle constructor =
+          lookup.findConstructor(classType, MethodType.methodType(void.class))
+              .asType(CONSTRUCTOR_TYPE);
+
+      /* The first column with a given label wins, the same as ResultSet.getObject(String). */
+      Map<String, Integer> indexByLabel = new HashMap<>();
+
+      for(int index = labels.length - 1; index >= 0; index--) {
+        indexByLabel.put(labels[index], index + 1);
+      }
+
+      List<Integer> columnIndexes = new ArrayList<>();
+      List<MethodHandle> setters = new ArrayList<>();
+      List<Byte> conversions = new ArrayList<>();
+
+      for(Field field : classType.getDeclaredFields()) {
+        if(Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+          continue;
+        }
+
+        Integer columnIndex = indexByLabel.get(camelCaseToSnakeCase(field.getName()));
+
+        if(Objects.isNull(columnIndex)) {
+          continue;
+        }
+
+        columnIndexes.add(columnIndex);
+        setters.add(lookup.unreflectSetter(field).asType(SETTER_TYPE));
+
+        if(field.getType().equals(LocalTime.class)) {
+          conversions.add(CONVERT_LOCAL_TIME);
+        }
+        else if(field.getType().equals(LocalDateTime.class)) {
+          conversions.add(CONVERT_LOCAL_DATE_TIME);
+        }
+        else {
+          conversions.add(CONVERT_NONE);
+        }
+      }
+
+      byte[] conversionArray = new byte[conversions.size()];
+
+      for(int index = 0; index < conversionArray.length; index++) {
+        conversionArray[index] = conversions.get(index);
+      }
+
+      return new RowMapper<>(classType, constructor,
+          columnIndexes.stream().mapToInt(Integer::intValue).toArray(),
+          setters.toArray(new MethodHandle[0]), conversionArray);
+    }
+    catch(ReflectiveOperationException e) {
+      throw new DaoException("Unable to create object of type " + classType.getName(), e);
+    }
+  }
+
+  /**
+   * Cache key: the target class plus the ordered column labels of the result set.
+   */
+  private static final class Shape {
+    private final Class<?> classType;
+    private final String[] labels;
+    private final int hash;
+
+    private Shape(Class<?> classType, String[] labels) {
+      this.classType = classType;
+      this.labels = labels;
+      this.hash = 31 * classType.hashCode() + Arrays.hashCode(labels);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(!(obj instanceof Shape)) {
+        return false;
+      }
+
+      Shape other = (Shape)obj;
+      return classType.equals(other.classType) && Arrays.equals(labels, other.labels);
+    }
+  }
+}
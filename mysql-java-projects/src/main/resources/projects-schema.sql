@@ -3,6 +3,8 @@ DROP TABLE IF EXISTS step;
 DROP TABLE IF EXISTS project_category;
 DROP TABLE IF EXISTS category;
 DROP TABLE IF EXISTS project;
+DROP TABLE IF EXISTS id_sequence;
+DROP TABLE IF EXISTS transfer_progress;
 
 CREATE TABLE project (
 	project_id INT AUTO_INCREMENT NOT NULL PRIMARY KEY,
@@ -10,7 +12,10 @@ CREATE TABLE project (
 	estimated_hours DECIMAL(7,2),
 	actual_hours DECIMAL(7,2),
 	difficulty INT,
-	notes TEXT
+	notes TEXT,
+	version INT NOT NULL DEFAULT 0,
+	KEY idx_project_name_id (project_name, project_id),
+	FULLTEXT KEY ft_project_name_notes (project_name, notes)
 );
 
 CREATE TABLE category (
@@ -23,7 +28,8 @@ CREATE TABLE project_category (
 	category_id INT NOT NULL,
 	FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE,
 	FOREIGN KEY (category_id) REFERENCES category (category_id) ON DELETE CASCADE,
-	UNIQUE KEY (project_id, category_id)
+	UNIQUE KEY (project_id, category_id),
+	KEY idx_category_project (category_id, project_id)
 );
 
 CREATE TABLE step (
@@ -32,7 +38,9 @@ CREATE TABLE step (
 	step_text TEXT NOT NULL,
 	step_order INT NOT NULL,
 	FOREIGN KEY(project_id) REFERENCES project (project_id)
-		ON DELETE CASCADE
+		ON DELETE CASCADE,
+	KEY idx_step_project_order (project_id, step_order),
+	FULLTEXT KEY ft_step_text (step_text)
 );
 
 CREATE TABLE material (
@@ -42,7 +50,20 @@ CREATE TABLE material (
 	num_required INT,
 	cost DECIMAL(7,2),
     FOREIGN KEY(project_id) REFERENCES project(project_id)
-    	ON DELETE CASCADE
+    	ON DELETE CASCADE,
+	FULLTEXT KEY ft_material_name (material_name)
+);
+
+-- Next unused ID per sequence, read in blocks by IdAllocator when projects are sharded. Lives on the home shard.
+CREATE TABLE id_sequence (
+	sequence_name VARCHAR(40) NOT NULL PRIMARY KEY,
+	next_value INT NOT NULL
+);
+
+-- Records committed by each bulk import, keyed by file, written in the same transaction as the records. Lives on the home shard.
+CREATE TABLE transfer_progress (
+	transfer_key VARCHAR(512) NOT NULL PRIMARY KEY,
+	records BIGINT NOT NULL
 );
 
 INSERT INTO project (project_id, project_name, estimated_hours, actual_hours, difficulty, notes) VALUES 
@@ -53,15 +74,17 @@ INSERT INTO category (category_id, category_name) VALUES (1,'Doors and Windows')
 INSERT INTO material (project_id, material_name, num_required) VALUES (1, '2-inch screws', 20), (2, 'Drain Cleaner',1), (3, 'Gloves', 1);
 
 INSERT INTO step (project_id, step_text, step_order) VALUES 
-(1, 'Screw door hangers on the top, middle, and bottom of one side of the door frame', 1),
-(1, 'Screw door hangers on top, middle, and bottom of door', 2),
-(1, 'Use pin to join hangers on door and hangers on door frame', 3),
-(2, 'Pour half of a bottle of drain cleaner in bathtub drain',1),
-(2, 'Wait 30 minutes to see if drain is unclogged',2),
-(2, 'If drain is not unclogged, pour remaining half of drain cleaner in bathtub drain and wait another 30 minutes',3),
-(2, 'Call plumber if drain is still clogged',4),
-(3, 'Put on gloves to protect hands', 1),
-(3, 'Grab hold of weed as close to the ground as possible', 2),
-(3, 'Pull weed out of ground, trying to pull the roots out as well', 3);
+(1, 'Screw door hangers on the top, middle, and bottom of one side of the door frame', 1024),
+(1, 'Screw door hangers on top, middle, and bottom of door', 2048),
+(1, 'Use pin to join hangers on door and hangers on door frame', 3072),
+(2, 'Pour half of a bottle of drain cleaner in bathtub drain', 1024),
+(2, 'Wait 30 minutes to see if drain is unclogged', 2048),
+(2, 'If drain is not unclogged, pour remaining half of drain cleaner in bathtub drain and wait another 30 minutes', 3072),
+(2, 'Call plumber if drain is still clogged', 4096),
+(3, 'Put on gloves to protect hands', 1024),
+(3, 'Grab hold of weed as close to the ground as possible', 2048),
+(3, 'Pull weed out of ground, trying to pull the roots out as well', 3072);
 
 INSERT INTO project_category (project_id, category_id) VALUES (1, 1), (2, 2), (3, 3);
+
+INSERT INTO id_sequence (sequence_name, next_value) VALUES ('project', 4);
@@ -0,0 +1,280 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Read routing against stand-in databases: a stub JDBC driver serves jdbc:stub: URLs, and a database whose name is in
+ * DOWN refuses connections and fails validation. Each read reports where it went through ConnectionPool.settingsOf, so
+ * no MySQL server is needed.
+ */
+class ReadRouterTest {
+
+	private static final String PRIMARY = "jdbc:stub:primary";
+	private static final String REPLICA_1 = "jdbc:stub:replica1";
+	private static final String REPLICA_2 = "jdbc:stub:replica2";
+	private static final Set<String> DOWN = ConcurrentHashMap.newKeySet();			// URLs of stand-ins that are unreachable
+
+	private ConnectionPool primary;
+	private ReadRouter router;
+
+	@BeforeAll
+	static void registerDriver() throws SQLException {
+		DriverManager.registerDriver(new StubDriver());
+	}
+
+
+	@AfterEach
+	void close() {
+
+		if(Objects.nonNull(router)) {
+			router.close();
+		}
+
+		if(Objects.nonNull(primary)) {
+			primary.close();
+		}
+
+		DOWN.clear();
+
+	}
+
+
+	@Test
+	void readsAlternateBetweenReplicas() {
+
+		start(new ReplicaSettings());
+
+		assertEquals(List.of(REPLICA_1, REPLICA_2, REPLICA_1, REPLICA_2), reads(4));
+
+	}
+
+
+	@Test
+	void readsStayOnThePrimaryAfterAWrite() throws SQLException {
+
+		start(new ReplicaSettings().setReadYourWritesMillis(60 * 1000));
+		write();
+
+		assertEquals(List.of(PRIMARY, PRIMARY), reads(2));
+
+	}
+
+
+	@Test
+	void readsReturnToReplicasOnceTheWriteWindowEnds() throws Exception {
+
+		start(new ReplicaSettings().setReadYourWritesMillis(300));
+		write();
+		Thread.sleep(500);
+
+		assertEquals(List.of(REPLICA_1), reads(1));
+
+	}
+
+
+	@Test
+	void aReplicaThatIsDownIsSkipped() {
+
+		DOWN.add(REPLICA_1);
+		start(new ReplicaSettings());
+
+		assertEquals(List.of(REPLICA_2, REPLICA_2), reads(2));
+		assertEquals(1, router.getHealthyReplicas());
+
+	}
+
+
+	@Test
+	void readsFallBackToThePrimaryWhenEveryReplicaIsDown() {
+
+		DOWN.add(REPLICA_1);
+		DOWN.add(REPLICA_2);
+		start(new ReplicaSettings());
+
+		assertEquals(List.of(PRIMARY, PRIMARY), reads(2));
+		assertEquals(0, router.getHealthyReplicas());
+
+	}
+
+
+	@Test
+	void aReplicaIsUsedAgainOnceAHealthCheckReachesIt() throws Exception {
+
+		DOWN.add(REPLICA_1);
+		start(new ReplicaSettings().setHealthCheckIntervalMillis(50));
+
+		assertEquals(List.of(REPLICA_2), reads(1));									// Finds replica 1 down
+
+		DOWN.remove(REPLICA_1);
+		long deadline = System.currentTimeMillis() + 5 * 1000;
+
+		while(router.getHealthyReplicas() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+
+		assertEquals(2, router.getHealthyReplicas());
+		assertTrue(reads(2).contains(REPLICA_1));
+
+	}
+
+
+	private void start(ReplicaSettings settings) {
+
+		primary = new ConnectionPool(settings(PRIMARY));
+		router = new ReadRouter(primary, settings.addReplica(settings(REPLICA_1)).addReplica(settings(REPLICA_2)));
+
+	}
+
+
+	// No idle connections up front, and a short wait so a refused borrow fails fast
+	private static PoolSettings settings(String jdbcUrl) {
+		return new PoolSettings().setJdbcUrl(jdbcUrl).setMinSize(0).setBorrowTimeoutMillis(500);
+	}
+
+
+	// Commits an UPDATE on the primary, which starts the read-your-writes window
+	private void write() throws SQLException {
+
+		try(Connection conn = primary.borrow()) {
+			conn.setAutoCommit(false);
+
+			try(PreparedStatement stmt = conn.prepareStatement("UPDATE project SET notes = ? WHERE project_id = ?")) {
+				stmt.setString(1, "changed");
+				stmt.setInt(2, 1);
+				stmt.executeUpdate();
+			}
+
+			conn.commit();
+		}
+
+	}
+
+
+	// The database each of count reads was sent to
+	private List<String> reads(int count) {
+
+		List<String> sources = new ArrayList<>(count);
+
+		for(int read = 0; read < count; read++) {
+			try(Connection conn = router.borrowRead()) {
+				sources.add(ConnectionPool.settingsOf(conn).getJdbcUrl());
+			} catch(SQLException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		return sources;
+
+	}
+
+
+	// Connections that accept any statement and return defaults, for URLs not in DOWN
+	private static class StubDriver implements Driver {
+
+		@Override
+		public Connection connect(String url, Properties info) throws SQLException {
+
+			if(!acceptsURL(url)) {
+				return null;
+			}
+
+			if(DOWN.contains(url)) {
+				throw new SQLException("Stand-in " + url + " is down");
+			}
+
+			boolean[] autoCommit = { true };
+
+			return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+					(proxy, method, args) -> {
+						switch(method.getName()) {
+							case "getAutoCommit":
+								return autoCommit[0];
+							case "setAutoCommit":
+								autoCommit[0] = (Boolean)args[0];
+								return null;
+							case "isValid":
+								return !DOWN.contains(url);
+							case "prepareStatement":
+								return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+										new Class<?>[] { PreparedStatement.class },
+										(statement, statementMethod, statementArgs) -> defaultValue(statementMethod.getReturnType()));
+							case "toString":
+								return url;
+							default:
+								return defaultValue(method.getReturnType());
+						}
+					});
+
+		}
+
+		private static Object defaultValue(Class<?> type) {
+
+			if(type == boolean.class) {
+				return false;
+			}
+
+			if(type == int.class) {
+				return 0;
+			}
+
+			if(type == long.class) {
+				return 0L;
+			}
+
+			return null;
+
+		}
+
+		@Override
+		public boolean acceptsURL(String url) {
+			return url.startsWith("jdbc:stub:");
+		}
+
+		@Override
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+			return new DriverPropertyInfo[0];
+		}
+
+		@Override
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		@Override
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		@Override
+		public Logger getParentLogger() {
+			return Logger.getGlobal();
+		}
+
+	}
+
+}